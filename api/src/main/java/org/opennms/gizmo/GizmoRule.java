@@ -19,6 +19,8 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
 
+import org.opennms.gizmo.GizmoStackListener.Phase;
+import org.opennms.gizmo.GizmoStackListeners.PhaseTimer;
 import org.opennms.gizmo.junit.ExternalResourceRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +41,7 @@ public class GizmoRule<T extends GizmoStack<T, U>, U extends GizmoStacker<T>> ex
     private final List<T> stacks;
     private final boolean skipTearDown;
     private final boolean skipTearDownOnFailure;
+    private volatile String name;
 
     public GizmoRule(U stacker, List<T> stacks, boolean skipTearDown, boolean skipTearDownOnFailure) {
         this.stacker = Objects.requireNonNull(stacker);
@@ -49,10 +52,19 @@ public class GizmoRule<T extends GizmoStack<T, U>, U extends GizmoStacker<T>> ex
 
     @Override
     public void before() throws Exception {        
-        stacker.init();
-
-        for (T stack : stacks) {
-            stacker.stack(stack);
+        final GizmoStackListeners listeners = stacker.getListeners();
+        listeners.ruleStarted(getRuleName(), System.nanoTime());
+        try (PhaseTimer before = listeners.time(null, Phase.BEFORE)) {
+            try (PhaseTimer timer = listeners.time(null, Phase.INIT)) {
+                stacker.init();
+                timer.succeeded();
+            }
+            try (PhaseTimer timer = listeners.time(null, Phase.PREFETCH)) {
+                stacker.prefetch(stacks);
+                timer.succeeded();
+            }
+            stacker.stackAll(stacks);
+            before.succeeded();
         }
     };
 
@@ -62,20 +74,44 @@ public class GizmoRule<T extends GizmoStack<T, U>, U extends GizmoStacker<T>> ex
             LOG.warn("One or more tests failed.");
         }
 
-        if (skipTearDown || (didFail && skipTearDownOnFailure)) {
-            LOG.info("Skipping tear down.");
-        } else {
-            LOG.info("Tearing down...");
-            stacker.tearDown();
-        }
+        final GizmoStackListeners listeners = stacker.getListeners();
+        try (PhaseTimer after = listeners.time(null, Phase.AFTER)) {
+            if (skipTearDown || (didFail && skipTearDownOnFailure)) {
+                LOG.info("Skipping tear down.");
+            } else {
+                LOG.info("Tearing down...");
+                try (PhaseTimer timer = listeners.time(null, Phase.TEAR_DOWN)) {
+                    stacker.tearDown();
+                    timer.succeeded();
+                }
+            }
 
-        try {
-            stacker.close();
-        } catch (IOException e) {
-            LOG.error("An error occured while closting the stacker.", e);
+            try {
+                stacker.close();
+                after.succeeded();
+            } catch (IOException e) {
+                LOG.error("An error occured while closting the stacker.", e);
+            }
+        } finally {
+            listeners.ruleEnded(getRuleName(), System.nanoTime(), didFail);
         }
     };
 
+    private String getRuleName() {
+        if (name != null) {
+            return name;
+        }
+        return getDescription() != null ? getDescription().getDisplayName() : getClass().getSimpleName();
+    }
+
+    /**
+     * Sets the name reported to the listeners, for when the rule is not applied
+     * by JUnit 4, and has no description, i.e. when used by a JUnit 5 extension.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
     public U getStacker() {
         return stacker;
     }
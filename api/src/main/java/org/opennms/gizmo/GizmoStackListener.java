@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo;
+
+import java.util.Map;
+
+/**
+ * Notified as the stacker moves through the different phases
+ * of setting up and tearing down stacks.
+ *
+ * Timestamps are taken from {@link System#nanoTime()}. Listeners may be
+ * called concurrently, from different threads, when stacks are stacked
+ * in parallel. Implementations can be registered on the rule builders,
+ * or via the {@link java.util.ServiceLoader}.
+ */
+public interface GizmoStackListener {
+
+    enum Phase {
+        BEFORE,
+        INIT,
+        PREFETCH,
+        STACK,
+        BEFORE_STACK,
+        PULL,
+        CREATE,
+        START,
+        INSPECT,
+        WAITING_RULES,
+        WAITING_RULE,
+        AFTER_STACK,
+        PORT_FORWARD,
+        AFTER,
+        TEAR_DOWN
+    }
+
+    /**
+     * Well-known attributes which may be attached to a phase.
+     */
+    String IMAGE = "image";
+    String NAMESPACE = "namespace";
+    String POD = "pod";
+    String PORT = "port";
+
+    default void ruleStarted(String ruleName, long nanoTime) {
+        // pass
+    }
+
+    /**
+     * @param stack the stack, or null for phases which apply to all of the stacks
+     * @param phase the phase
+     * @param subject what the phase applies to within the stack (i.e. a container alias), or null
+     * @param nanoTime timestamp
+     */
+    default void phaseStarted(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime) {
+        // pass
+    }
+
+    default void phaseEnded(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime) {
+        // pass
+    }
+
+    /**
+     * Delegates to {@link #phaseEnded(GizmoStack, Phase, String, long)} by default,
+     * so that listeners written against it keep working.
+     *
+     * @param succeeded whether the phase completed successfully
+     * @param attributes additional details about the phase, i.e. the {@link #IMAGE}
+     */
+    default void phaseEnded(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime,
+            boolean succeeded, Map<String, String> attributes) {
+        phaseEnded(stack, phase, subject, nanoTime);
+    }
+
+    default void ruleEnded(String ruleName, long nanoTime, boolean didFail) {
+        // pass
+    }
+}
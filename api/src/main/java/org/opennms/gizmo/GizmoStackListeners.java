@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.opennms.gizmo.jfr.JfrSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches to a list of {@link GizmoStackListener}s, isolating
+ * the stacker from any failures in the listeners.
+ */
+public class GizmoStackListeners implements GizmoStackListener {
+    private static final Logger LOG = LoggerFactory.getLogger(GizmoStackListeners.class);
+
+    public static final GizmoStackListeners NONE = new GizmoStackListeners(Collections.emptyList());
+
+    /**
+     * Times a phase. Use with try-with-resources, calling {@link #succeeded()}
+     * at the end of the block, so that phases which throw are reported as failed:
+     *
+     * <pre>
+     * try (PhaseTimer timer = listeners.time(stack, Phase.START, alias)) {
+     *     docker.startContainer(containerId);
+     *     timer.succeeded();
+     * }
+     * </pre>
+     */
+    public class PhaseTimer implements AutoCloseable {
+        private final GizmoStack<?,?> stack;
+        private final Phase phase;
+        private final String subject;
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+        private boolean succeeded = false;
+
+        private PhaseTimer(GizmoStack<?,?> stack, Phase phase, String subject) {
+            this.stack = stack;
+            this.phase = phase;
+            this.subject = subject;
+            phaseStarted(stack, phase, subject, System.nanoTime());
+        }
+
+        public PhaseTimer attribute(String key, Object value) {
+            attributes.put(key, value != null ? value.toString() : null);
+            return this;
+        }
+
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        @Override
+        public void close() {
+            phaseEnded(stack, phase, subject, System.nanoTime(), succeeded, Collections.unmodifiableMap(attributes));
+        }
+    }
+
+    private final List<GizmoStackListener> listeners;
+
+    public GizmoStackListeners(List<GizmoStackListener> listeners) {
+        this.listeners = new ArrayList<>(listeners);
+    }
+
+    /**
+     * Combines the given listeners with those registered via the {@link ServiceLoader},
+     * and with the JFR listener when running on a JVM that supports Flight Recorder events.
+     */
+    public static GizmoStackListeners load(List<GizmoStackListener> listeners) {
+        final List<GizmoStackListener> allListeners = new ArrayList<>(listeners);
+        for (GizmoStackListener listener : ServiceLoader.load(GizmoStackListener.class)) {
+            allListeners.add(listener);
+        }
+        final GizmoStackListener jfrListener = JfrSupport.newListener();
+        if (jfrListener != null) {
+            allListeners.add(jfrListener);
+        }
+        return new GizmoStackListeners(allListeners);
+    }
+
+    public PhaseTimer time(GizmoStack<?,?> stack, Phase phase) {
+        return new PhaseTimer(stack, phase, null);
+    }
+
+    public PhaseTimer time(GizmoStack<?,?> stack, Phase phase, String subject) {
+        return new PhaseTimer(stack, phase, subject);
+    }
+
+    @Override
+    public void ruleStarted(String ruleName, long nanoTime) {
+        for (GizmoStackListener listener : listeners) {
+            try {
+                listener.ruleStarted(ruleName, nanoTime);
+            } catch (RuntimeException e) {
+                LOG.warn("Listener {} failed.", listener, e);
+            }
+        }
+    }
+
+    @Override
+    public void phaseStarted(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime) {
+        for (GizmoStackListener listener : listeners) {
+            try {
+                listener.phaseStarted(stack, phase, subject, nanoTime);
+            } catch (RuntimeException e) {
+                LOG.warn("Listener {} failed.", listener, e);
+            }
+        }
+    }
+
+    @Override
+    public void phaseEnded(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime,
+            boolean succeeded, Map<String, String> attributes) {
+        for (GizmoStackListener listener : listeners) {
+            try {
+                listener.phaseEnded(stack, phase, subject, nanoTime, succeeded, attributes);
+            } catch (RuntimeException e) {
+                LOG.warn("Listener {} failed.", listener, e);
+            }
+        }
+    }
+
+    @Override
+    public void ruleEnded(String ruleName, long nanoTime, boolean didFail) {
+        for (GizmoStackListener listener : listeners) {
+            try {
+                listener.ruleEnded(ruleName, nanoTime, didFail);
+            } catch (RuntimeException e) {
+                LOG.warn("Listener {} failed.", listener, e);
+            }
+        }
+    }
+}
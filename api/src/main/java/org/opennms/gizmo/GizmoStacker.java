@@ -16,6 +16,7 @@
 package org.opennms.gizmo;
 
 import java.io.Closeable;
+import java.util.List;
 
 /**
  * Responsible for setting up and tearing down {@link GizmoStack}s.
@@ -34,6 +35,20 @@ public interface GizmoStacker<T extends GizmoStack<?,?>> extends Closeable {
      */
     void init() throws Exception;
 
+    /**
+     * Starts fetching any resources required by the given stacks and their
+     * dependencies, such as container images, before they are instantiated.
+     *
+     * Implementations should return without waiting for the resources to
+     * be fetched, and only block on them when they are actually needed.
+     *
+     * @param stacks
+     * @throws Exception
+     */
+    default void prefetch(List<T> stacks) throws Exception {
+        // pass
+    }
+
     /**
      * Instantiates the stack.
      *
@@ -42,6 +57,28 @@ public interface GizmoStacker<T extends GizmoStack<?,?>> extends Closeable {
      */
     void stack(T stack) throws Exception;
 
+    /**
+     * Instantiates all of the given stacks.
+     *
+     * Implementations should make sure that dependencies shared by
+     * several stacks are only instantiated once.
+     *
+     * @param stacks
+     * @throws Exception
+     */
+    default void stackAll(List<T> stacks) throws Exception {
+        for (T stack : stacks) {
+            stack(stack);
+        }
+    }
+
     void tearDown();
 
+    /**
+     * @return the listeners notified as the stacks go through the different phases
+     */
+    default GizmoStackListeners getListeners() {
+        return GizmoStackListeners.NONE;
+    }
+
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.opennms.gizmo.GizmoStack;
+
+/**
+ * The dependency graph formed by a set of {@link GizmoStack}s.
+ *
+ * Stacks which are reachable through more than one path are only included
+ * once. Two stacks are considered to be the same if they are equal, so stacks
+ * that want to be shared across separate instances should implement
+ * {@link Object#equals(Object)} and {@link Object#hashCode()}.
+ *
+ * @param <T> type of stack
+ */
+public class StackGraph<T extends GizmoStack<T, ?>> {
+
+    private final List<T> stacks;
+    private final Map<T, Set<T>> dependenciesByStack;
+    private final Map<T, Set<T>> dependentsByStack;
+
+    private StackGraph(List<T> stacks, Map<T, Set<T>> dependenciesByStack) {
+        this.stacks = Collections.unmodifiableList(stacks);
+        this.dependenciesByStack = dependenciesByStack;
+        this.dependentsByStack = new LinkedHashMap<>();
+        for (T stack : stacks) {
+            dependentsByStack.put(stack, new LinkedHashSet<>());
+        }
+        for (T stack : stacks) {
+            for (T dependency : dependenciesByStack.get(stack)) {
+                dependentsByStack.get(dependency).add(stack);
+            }
+        }
+    }
+
+    /**
+     * Builds the graph formed by the given stacks and all of their
+     * transitive dependencies.
+     *
+     * @param roots the stacks to include
+     * @return the graph
+     * @throws IllegalStateException if the dependencies contain a cycle
+     */
+    public static <T extends GizmoStack<T, ?>> StackGraph<T> of(List<T> roots) {
+        final List<T> sorted = new ArrayList<>();
+        final Map<T, Set<T>> dependenciesByStack = new LinkedHashMap<>();
+        final LinkedList<T> path = new LinkedList<>();
+        for (T root : roots) {
+            visit(root, sorted, dependenciesByStack, path);
+        }
+        return new StackGraph<>(sorted, dependenciesByStack);
+    }
+
+    private static <T extends GizmoStack<T, ?>> void visit(T stack, List<T> sorted, Map<T, Set<T>> dependenciesByStack, LinkedList<T> path) {
+        if (path.contains(stack)) {
+            path.add(stack);
+            throw new IllegalStateException("Cyclic stack dependency detected: " + path.stream()
+                    .map(Object::toString)
+                    .collect(Collectors.joining(" -> ")));
+        }
+        if (dependenciesByStack.containsKey(stack)) {
+            // Already visited via another path
+            return;
+        }
+
+        path.add(stack);
+        final Set<T> dependencies = new LinkedHashSet<>(stack.getDependencies());
+        for (T dependency : dependencies) {
+            visit(dependency, sorted, dependenciesByStack, path);
+        }
+        path.removeLast();
+
+        dependenciesByStack.put(stack, dependencies);
+        sorted.add(stack);
+    }
+
+    /**
+     * @return all of the stacks in the graph, ordered so that every stack
+     * appears after its dependencies
+     */
+    public List<T> getStacks() {
+        return stacks;
+    }
+
+    public Set<T> getDependencies(T stack) {
+        return Collections.unmodifiableSet(dependenciesByStack.get(stack));
+    }
+
+    public Set<T> getDependents(T stack) {
+        return Collections.unmodifiableSet(dependentsByStack.get(stack));
+    }
+
+    public int size() {
+        return stacks.size();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.graph;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.opennms.gizmo.GizmoStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies an action to every stack in a {@link StackGraph}, running the
+ * action for independent stacks concurrently.
+ *
+ * A stack is only handed to the action once all of its dependencies have
+ * completed successfully. If the action fails for any stack, no further
+ * stacks are started and the first failure is rethrown once the stacks
+ * which are already in progress complete.
+ */
+public class StackGraphExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(StackGraphExecutor.class);
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    @FunctionalInterface
+    public interface StackAction<T> {
+        void apply(T stack) throws Exception;
+    }
+
+    private final int parallelism;
+
+    public StackGraphExecutor() {
+        this(DEFAULT_PARALLELISM);
+    }
+
+    public StackGraphExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be strictly positive. Got: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public <T extends GizmoStack<T, ?>> void execute(StackGraph<T> graph, StackAction<T> action) throws Exception {
+        execute(graph, action, graph::getDependencies, graph::getDependents, "gizmo-stacker");
+    }
+
+    /**
+     * Applies the action in reverse dependency order, i.e. a stack is only handed
+     * to the action once all of the stacks that depend on it have completed.
+     *
+     * Used for tearing down.
+     */
+    public <T extends GizmoStack<T, ?>> void executeInReverse(StackGraph<T> graph, StackAction<T> action) throws Exception {
+        execute(graph, action, graph::getDependents, graph::getDependencies, "gizmo-teardown");
+    }
+
+    private <T extends GizmoStack<T, ?>> void execute(StackGraph<T> graph, StackAction<T> action,
+            Function<T, Set<T>> prerequisites, Function<T, Set<T>> unblocks, String threadPrefix) throws Exception {
+        if (graph.size() < 1) {
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, graph.size()),
+                newThreadFactory(threadPrefix));
+        try {
+            doExecute(graph, action, prerequisites, unblocks, new ExecutorCompletionService<>(executor));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T extends GizmoStack<T, ?>> void doExecute(StackGraph<T> graph, StackAction<T> action,
+            Function<T, Set<T>> prerequisites, Function<T, Set<T>> unblocks, CompletionService<T> completionService) throws Exception {
+        final Map<T, Integer> pendingDependencies = new HashMap<>();
+        int inFlight = 0;
+        for (T stack : graph.getStacks()) {
+            final int numDependencies = prerequisites.apply(stack).size();
+            pendingDependencies.put(stack, numDependencies);
+            if (numDependencies == 0) {
+                submit(completionService, action, stack);
+                inFlight++;
+            }
+        }
+
+        Throwable failure = null;
+        while (inFlight > 0) {
+            final Future<T> future = completionService.take();
+            inFlight--;
+
+            final T stack;
+            try {
+                stack = future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                } else {
+                    LOG.warn("Additional stack failed while waiting for in-progress stacks to complete.", e.getCause());
+                }
+                continue;
+            }
+
+            if (failure != null) {
+                // Don't start anything new once a stack has failed
+                continue;
+            }
+
+            for (T dependent : unblocks.apply(stack)) {
+                final int remaining = pendingDependencies.get(dependent) - 1;
+                pendingDependencies.put(dependent, remaining);
+                if (remaining == 0) {
+                    submit(completionService, action, dependent);
+                    inFlight++;
+                }
+            }
+        }
+
+        if (failure instanceof Exception) {
+            throw (Exception)failure;
+        } else if (failure instanceof Error) {
+            throw (Error)failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private static <T> void submit(CompletionService<T> completionService, StackAction<T> action, T stack) {
+        completionService.submit(() -> {
+            action.apply(stack);
+            return stack;
+        });
+    }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            final Thread thread = new Thread(r, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.jfr;
+
+import java.util.Map;
+
+import org.opennms.gizmo.GizmoStackListener;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.opennms.gizmo.Container")
+@Label("Gizmo Container")
+@Description("Pull, creation, start and inspection of a container")
+class ContainerEvent extends GizmoEvent {
+
+    @Label("Image")
+    String image;
+
+    @Override
+    void setAttributes(Map<String, String> attributes) {
+        super.setAttributes(attributes);
+        image = attributes.get(GizmoStackListener.IMAGE);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.jfr;
+
+import java.util.Map;
+
+import org.opennms.gizmo.GizmoStackListener;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base class for the Flight Recorder events.
+ */
+@Category("Gizmo")
+@StackTrace(false)
+abstract class GizmoEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Stack")
+    String stack;
+
+    @Label("Subject")
+    String subject;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Namespace")
+    String namespace;
+
+    /**
+     * Only the attributes relevant to the event type are recorded.
+     */
+    void setAttributes(Map<String, String> attributes) {
+        namespace = attributes.get(GizmoStackListener.NAMESPACE);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.jfr;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opennms.gizmo.GizmoStack;
+import org.opennms.gizmo.GizmoStackListener;
+
+/**
+ * Emits a Flight Recorder event for every phase, so that gizmo's work can be
+ * lined up with the CPU, GC and socket activity of the same recording.
+ *
+ * Do not reference this class directly, use {@link JfrSupport#newListener()}.
+ */
+public class JfrStackListener implements GizmoStackListener {
+
+    private final Map<List<Object>, GizmoEvent> pendingEvents = new ConcurrentHashMap<>();
+
+    @Override
+    public void phaseStarted(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime) {
+        final GizmoEvent event = newEvent(phase);
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.phase = phase.name();
+        event.stack = stack != null ? stack.getClass().getName() : null;
+        event.subject = subject;
+        event.begin();
+        pendingEvents.put(getKey(stack, phase, subject), event);
+    }
+
+    @Override
+    public void phaseEnded(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime,
+            boolean succeeded, Map<String, String> attributes) {
+        final GizmoEvent event = pendingEvents.remove(getKey(stack, phase, subject));
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = succeeded ? "SUCCEEDED" : "FAILED";
+            event.setAttributes(attributes);
+            event.commit();
+        }
+    }
+
+    private static GizmoEvent newEvent(Phase phase) {
+        switch (phase) {
+            case PULL:
+            case CREATE:
+            case START:
+            case INSPECT:
+                return new ContainerEvent();
+            case WAITING_RULES:
+            case WAITING_RULE:
+                return new WaitingEvent();
+            case PORT_FORWARD:
+                return new PortForwardEvent();
+            case BEFORE:
+            case INIT:
+            case PREFETCH:
+            case AFTER:
+            case TEAR_DOWN:
+                return new RuleEvent();
+            default:
+                return new StackEvent();
+        }
+    }
+
+    private static List<Object> getKey(GizmoStack<?,?> stack, Phase phase, String subject) {
+        // Phases are started and ended on the same thread
+        return Arrays.asList(Thread.currentThread().getId(), stack != null ? System.identityHashCode(stack) : null, phase, subject);
+    }
+}
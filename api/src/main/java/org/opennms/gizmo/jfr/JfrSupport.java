@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.jfr;
+
+import org.opennms.gizmo.GizmoStackListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Capability check for Flight Recorder events.
+ *
+ * The event classes reference jdk.jfr, which is not available on all JVMs,
+ * so they are only ever loaded through this class, once we know they can be.
+ */
+public class JfrSupport {
+    private static final Logger LOG = LoggerFactory.getLogger(JfrSupport.class);
+
+    public static final String DISABLE_PROPERTY = "gizmo.jfr.disabled";
+
+    private static final String LISTENER_CLASS = "org.opennms.gizmo.jfr.JfrStackListener";
+
+    public static boolean isAvailable() {
+        if (Boolean.getBoolean(DISABLE_PROPERTY)) {
+            return false;
+        }
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return a listener that emits JFR events, or null if JFR is not available
+     */
+    public static GizmoStackListener newListener() {
+        if (!isAvailable()) {
+            return null;
+        }
+        try {
+            return (GizmoStackListener)Class.forName(LISTENER_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.debug("Failed to load the JFR listener. JFR events will not be emitted.", e);
+            return null;
+        }
+    }
+}
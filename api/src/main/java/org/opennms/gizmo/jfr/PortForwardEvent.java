@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.jfr;
+
+import java.util.Map;
+
+import org.opennms.gizmo.GizmoStackListener;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.opennms.gizmo.PortForward")
+@Label("Gizmo Port Forward")
+@Description("Port forward to a pod")
+class PortForwardEvent extends GizmoEvent {
+
+    @Label("Pod")
+    String pod;
+
+    @Label("Port")
+    String port;
+
+    @Override
+    void setAttributes(Map<String, String> attributes) {
+        super.setAttributes(attributes);
+        pod = attributes.get(GizmoStackListener.POD);
+        port = attributes.get(GizmoStackListener.PORT);
+    }
+}
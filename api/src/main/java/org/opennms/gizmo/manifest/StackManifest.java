@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.manifest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records what was stacked, i.e. container ids, service addresses and
+ * forwarded ports, so that a later JVM can attach to the same stacks
+ * without having to rediscover everything.
+ *
+ * Manifests are stored as properties files. The keys are defined by the stackers.
+ */
+public class StackManifest {
+    private static final Logger LOG = LoggerFactory.getLogger(StackManifest.class);
+
+    private final Properties properties = new Properties();
+
+    /**
+     * Loads the manifest at the given path.
+     *
+     * @return the manifest, or null if there is no manifest or it can't be read
+     */
+    public static StackManifest load(Path path) {
+        final StackManifest manifest = new StackManifest();
+        try (InputStream is = Files.newInputStream(path)) {
+            manifest.properties.load(is);
+            return manifest;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Failed to read manifest: {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the manifest at the given path, replacing any existing manifest.
+     *
+     * Failures are logged, but otherwise ignored, since the manifest is only an optimization.
+     */
+    public synchronized void store(Path path) {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (OutputStream os = Files.newOutputStream(path)) {
+                properties.store(os, "gizmo stack manifest");
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to write manifest: {}", path, e);
+        }
+    }
+
+    /**
+     * Removes the manifest at the given path, if any.
+     */
+    public static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete manifest: {}", path, e);
+        }
+    }
+
+    public synchronized String get(String key) {
+        return properties.getProperty(key);
+    }
+
+    public synchronized StackManifest put(String key, String value) {
+        properties.setProperty(key, value);
+        return this;
+    }
+
+    public synchronized StackManifest put(String key, InetSocketAddress addr) {
+        return put(key, addr.getHostString() + ":" + addr.getPort());
+    }
+
+    public InetSocketAddress getAddress(String key) {
+        final String value = get(key);
+        if (value == null) {
+            return null;
+        }
+        final int idx = value.lastIndexOf(':');
+        return new InetSocketAddress(value.substring(0, idx), Integer.parseInt(value.substring(idx + 1)));
+    }
+
+    /**
+     * Retrieves all of the entries whose keys start with the given prefix.
+     *
+     * @return the values, keyed by the remainder of the key
+     */
+    public synchronized Map<String, String> getWithPrefix(String prefix) {
+        final Map<String, String> valuesByKey = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                valuesByKey.put(key.substring(prefix.length()), properties.getProperty(key));
+            }
+        }
+        return valuesByKey;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.readiness;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays between consecutive readiness checks.
+ *
+ * The first few checks are made at a short, fixed interval to quickly
+ * detect services that come up fast. After that, the delay grows
+ * exponentially up to a maximum, and is randomized by a jitter factor
+ * so that many rules don't all probe in lock-step.
+ */
+public class Backoff {
+
+    public static final Backoff DEFAULT = builder().build();
+
+    private final long fastIntervalMs;
+    private final int fastAttempts;
+    private final long initialDelayMs;
+    private final double multiplier;
+    private final long maxDelayMs;
+    private final double jitter;
+
+    public static class Builder {
+        private long fastIntervalMs = 100;
+        private int fastAttempts = 5;
+        private long initialDelayMs = 250;
+        private double multiplier = 2.0;
+        private long maxDelayMs = TimeUnit.SECONDS.toMillis(10);
+        private double jitter = 0.2;
+
+        public Builder withFastPhase(int attempts, long interval, TimeUnit unit) {
+            this.fastAttempts = attempts;
+            this.fastIntervalMs = unit.toMillis(interval);
+            return this;
+        }
+
+        public Builder withInitialDelay(long delay, TimeUnit unit) {
+            this.initialDelayMs = unit.toMillis(delay);
+            return this;
+        }
+
+        public Builder withMultiplier(double multiplier) {
+            if (multiplier < 1.0) {
+                throw new IllegalArgumentException("Multiplier must be >= 1. Got: " + multiplier);
+            }
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        public Builder withMaxDelay(long delay, TimeUnit unit) {
+            this.maxDelayMs = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * @param jitter fraction of the delay, between 0 and 1, by which the delay is randomly varied
+         */
+        public Builder withJitter(double jitter) {
+            if (jitter < 0.0 || jitter > 1.0) {
+                throw new IllegalArgumentException("Jitter must be between 0 and 1. Got: " + jitter);
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        public Backoff build() {
+            return new Backoff(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private Backoff(Builder builder) {
+        fastIntervalMs = builder.fastIntervalMs;
+        fastAttempts = builder.fastAttempts;
+        initialDelayMs = builder.initialDelayMs;
+        multiplier = builder.multiplier;
+        maxDelayMs = builder.maxDelayMs;
+        jitter = builder.jitter;
+    }
+
+    /**
+     * @param attempt number of checks that have been made so far, starting at 1
+     * @return the delay in milliseconds before the next check
+     */
+    public long getDelayMs(int attempt) {
+        if (attempt <= fastAttempts) {
+            return fastIntervalMs;
+        }
+        final double exponential = initialDelayMs * Math.pow(multiplier, attempt - fastAttempts - 1);
+        final double delay = Math.min(maxDelayMs, exponential);
+        final double randomized = delay * (1.0 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1.0));
+        return Math.max(0L, Math.min(maxDelayMs, Math.round(randomized)));
+    }
+}
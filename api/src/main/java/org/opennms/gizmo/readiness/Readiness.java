@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.readiness;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Readiness DSL for waiting rules.
+ *
+ * <pre>
+ * Readiness.await("OpenNMS REST API")
+ *     .withBackoff(Backoff.DEFAULT)
+ *     .until(() -&gt; HttpUtils.get(addr, "/opennms/rest/info") != null);
+ * </pre>
+ *
+ * The wait is bounded by the deadline of the stack (see {@link Deadline#current()}),
+ * which is shared by all of the waiting rules of the stack, and optionally by the
+ * rule's own {@link #atMost(long, TimeUnit)}. If neither is set,
+ * {@link #DEFAULT_TIMEOUT_MS} is used.
+ */
+public class Readiness {
+    private static final Logger LOG = LoggerFactory.getLogger(Readiness.class);
+
+    public static final long DEFAULT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final String description;
+    private Backoff backoff = Backoff.DEFAULT;
+    private Deadline deadline;
+
+    private Readiness(String description) {
+        this.description = Objects.requireNonNull(description);
+    }
+
+    public static Readiness await(String description) {
+        return new Readiness(description);
+    }
+
+    public Readiness withBackoff(Backoff backoff) {
+        this.backoff = Objects.requireNonNull(backoff);
+        return this;
+    }
+
+    public Readiness atMost(long timeout, TimeUnit unit) {
+        this.deadline = Deadline.after(timeout, unit);
+        return this;
+    }
+
+    /**
+     * Blocks until the condition returns true.
+     *
+     * Exceptions thrown by the condition are treated as the
+     * condition not being met.
+     *
+     * @throws IllegalStateException if the deadline expires first
+     */
+    public void until(Callable<Boolean> condition) {
+        Deadline effectiveDeadline = Deadline.earliest(deadline, Deadline.current());
+        if (effectiveDeadline == null) {
+            effectiveDeadline = Deadline.after(DEFAULT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        final long start = System.nanoTime();
+        Exception lastException = null;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (Boolean.TRUE.equals(condition.call())) {
+                    LOG.info("{} is ready after {} attempt(s) and {}ms.", description, attempt,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    return;
+                }
+                lastException = null;
+            } catch (Exception e) {
+                LOG.debug("Readiness check for {} failed.", description, e);
+                lastException = e;
+            }
+
+            if (effectiveDeadline.isExpired()) {
+                throw new IllegalStateException(String.format("%s was not ready after %d attempt(s) and %dms.",
+                        description, attempt, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)), lastException);
+            }
+
+            final long delayMs = Math.min(backoff.getDelayMs(attempt), effectiveDeadline.remaining(TimeUnit.MILLISECONDS));
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + description, e);
+            }
+        }
+    }
+}
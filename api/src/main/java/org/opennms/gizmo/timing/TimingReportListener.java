@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.timing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.gizmo.GizmoStack;
+import org.opennms.gizmo.GizmoStackListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the duration of every phase and writes them to a JSON report
+ * once the rule completes, so that startup times can be tracked across builds.
+ *
+ * Reports are written to target/gizmo-reports by default, regardless of whether
+ * the tests run under surefire or failsafe, which can be overridden using the
+ * {@value #REPORT_DIR_PROPERTY} system property.
+ */
+public class TimingReportListener implements GizmoStackListener {
+    private static final Logger LOG = LoggerFactory.getLogger(TimingReportListener.class);
+
+    public static final String REPORT_DIR_PROPERTY = "gizmo.timing.report.dir";
+    public static final String DEFAULT_REPORT_DIR = "target/gizmo-reports";
+
+    private static class Timing {
+        private final String stack;
+        private final Phase phase;
+        private final String subject;
+        private final long startNanos;
+        private long endNanos = -1;
+        private boolean succeeded;
+
+        private Timing(String stack, Phase phase, String subject, long startNanos) {
+            this.stack = stack;
+            this.phase = phase;
+            this.subject = subject;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private final Path reportDir;
+    private final List<Timing> timings = new ArrayList<>();
+    private final Map<List<Object>, Timing> pendingTimings = new HashMap<>();
+    private long ruleStartNanos;
+
+    public TimingReportListener() {
+        this(Paths.get(System.getProperty(REPORT_DIR_PROPERTY, DEFAULT_REPORT_DIR)));
+    }
+
+    public TimingReportListener(Path reportDir) {
+        this.reportDir = Objects.requireNonNull(reportDir);
+    }
+
+    @Override
+    public synchronized void ruleStarted(String ruleName, long nanoTime) {
+        ruleStartNanos = nanoTime;
+        timings.clear();
+        pendingTimings.clear();
+    }
+
+    @Override
+    public synchronized void phaseStarted(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime) {
+        final Timing timing = new Timing(getName(stack), phase, subject, nanoTime);
+        timings.add(timing);
+        pendingTimings.put(getKey(stack, phase, subject), timing);
+    }
+
+    @Override
+    public synchronized void phaseEnded(GizmoStack<?,?> stack, Phase phase, String subject, long nanoTime,
+            boolean succeeded, Map<String, String> attributes) {
+        final Timing timing = pendingTimings.remove(getKey(stack, phase, subject));
+        if (timing != null) {
+            timing.endNanos = nanoTime;
+            timing.succeeded = succeeded;
+        }
+    }
+
+    @Override
+    public synchronized void ruleEnded(String ruleName, long nanoTime, boolean didFail) {
+        final Path report = reportDir.resolve("gizmo-timings-" + ruleName.replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+        try {
+            Files.createDirectories(reportDir);
+            try (Writer writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                writer.write(toJson(ruleName, nanoTime, didFail));
+            }
+            LOG.info("Wrote timing report to: {}", report);
+        } catch (IOException e) {
+            LOG.warn("Failed to write timing report to: {}", report, e);
+        }
+    }
+
+    private String toJson(String ruleName, long ruleEndNanos, boolean didFail) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"rule\": ").append(quote(ruleName)).append(",\n");
+        sb.append("  \"failed\": ").append(didFail).append(",\n");
+        sb.append("  \"durationMs\": ").append(toMillis(ruleEndNanos - ruleStartNanos)).append(",\n");
+        sb.append("  \"phases\": [");
+        for (int i = 0; i < timings.size(); i++) {
+            final Timing timing = timings.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"stack\": ").append(quote(timing.stack))
+                .append(", \"phase\": ").append(quote(timing.phase.name()))
+                .append(", \"subject\": ").append(quote(timing.subject))
+                .append(", \"startMs\": ").append(toMillis(timing.startNanos - ruleStartNanos))
+                .append(", \"durationMs\": ").append(timing.endNanos >= 0 ? toMillis(timing.endNanos - timing.startNanos) : "null")
+                .append(", \"succeeded\": ").append(timing.endNanos >= 0 ? timing.succeeded : "null")
+                .append("}");
+        }
+        sb.append(timings.isEmpty() ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static List<Object> getKey(GizmoStack<?,?> stack, Phase phase, String subject) {
+        final List<Object> key = new ArrayList<>(3);
+        key.add(stack != null ? System.identityHashCode(stack) : null);
+        key.add(phase);
+        key.add(subject);
+        return key;
+    }
+
+    private static String getName(GizmoStack<?,?> stack) {
+        if (stack == null) {
+            return null;
+        }
+        final String simpleName = stack.getClass().getSimpleName();
+        return simpleName.isEmpty() ? stack.getClass().getName() : simpleName;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        final StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int)c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class GizmoRuleTest {
+
+    @Test
+    public void canEndRuleWhenTearDownFails() {
+        final List<String> endedRules = new ArrayList<>();
+        final FailingStacker stacker = new FailingStacker(new GizmoStackListeners(Collections.singletonList(new GizmoStackListener() {
+            @Override
+            public void ruleEnded(String ruleName, long nanoTime, boolean didFail) {
+                endedRules.add(ruleName);
+            }
+        })));
+        final GizmoRule<TestStack, FailingStacker> rule = new GizmoRule<>(stacker, Collections.emptyList(), false, false);
+
+        try {
+            rule.after(false);
+            fail("The tear down failure should be propagated.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(Collections.singletonList("GizmoRule"), endedRules);
+    }
+
+    private interface TestStack extends GizmoStack<TestStack, FailingStacker> {
+    }
+
+    private static class FailingStacker implements GizmoStacker<TestStack> {
+        private final GizmoStackListeners listeners;
+
+        private FailingStacker(GizmoStackListeners listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void init() {
+            // pass
+        }
+
+        @Override
+        public void stack(TestStack stack) {
+            // pass
+        }
+
+        @Override
+        public void tearDown() {
+            throw new IllegalStateException("Tear down failed.");
+        }
+
+        @Override
+        public GizmoStackListeners getListeners() {
+            return listeners;
+        }
+
+        @Override
+        public void close() {
+            // pass
+        }
+    }
+}
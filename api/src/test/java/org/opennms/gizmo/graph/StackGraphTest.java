@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+import org.opennms.gizmo.GizmoStack;
+import org.opennms.gizmo.GizmoStacker;
+
+public class StackGraphTest {
+
+    @Test
+    public void canDeduplicateSharedDependencies() throws Exception {
+        // Diamond: app -> (kafka, cassandra) -> postgres
+        final TestStack postgres = new TestStack("postgres");
+        final TestStack kafka = new TestStack("kafka", postgres);
+        final TestStack cassandra = new TestStack("cassandra", postgres);
+        final TestStack app = new TestStack("app", kafka, cassandra);
+
+        final StackGraph<TestStack> graph = StackGraph.of(Collections.singletonList(app));
+        assertEquals(Arrays.asList(postgres, kafka, cassandra, app), graph.getStacks());
+
+        final List<TestStack> stacked = Collections.synchronizedList(new ArrayList<>());
+        new StackGraphExecutor().execute(graph, stacked::add);
+        assertEquals(4, stacked.size());
+        assertEquals(postgres, stacked.get(0));
+        assertEquals(app, stacked.get(3));
+    }
+
+    @Test
+    public void canExecuteInReverse() throws Exception {
+        final TestStack postgres = new TestStack("postgres");
+        final TestStack kafka = new TestStack("kafka", postgres);
+        final TestStack cassandra = new TestStack("cassandra", postgres);
+        final TestStack app = new TestStack("app", kafka, cassandra);
+
+        final StackGraph<TestStack> graph = StackGraph.of(Collections.singletonList(app));
+        final List<TestStack> tornDown = Collections.synchronizedList(new ArrayList<>());
+        new StackGraphExecutor().executeInReverse(graph, tornDown::add);
+        assertEquals(4, tornDown.size());
+        assertEquals(app, tornDown.get(0));
+        assertEquals(postgres, tornDown.get(3));
+    }
+
+    @Test
+    public void canDetectCycles() {
+        final TestStack a = new TestStack("a");
+        final TestStack b = new TestStack("b", a);
+        a.dependencies.add(b);
+        try {
+            StackGraph.of(Collections.singletonList(a));
+            fail("Cycle should have been detected.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("a -> b -> a"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void canStackIndependentStacksConcurrently() throws Exception {
+        final TestStack postgres = new TestStack("postgres");
+        final TestStack kafka = new TestStack("kafka");
+        final StackGraph<TestStack> graph = StackGraph.of(Arrays.asList(postgres, kafka));
+
+        // Each action blocks until both have started, which can only happen if they run at the same time
+        final CountDownLatch started = new CountDownLatch(2);
+        new StackGraphExecutor(2).execute(graph, stack -> {
+            started.countDown();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        });
+    }
+
+    @Test
+    public void doesNotStackDependentsOfFailedStacks() throws Exception {
+        final TestStack postgres = new TestStack("postgres");
+        final TestStack app = new TestStack("app", postgres);
+        final StackGraph<TestStack> graph = StackGraph.of(Collections.singletonList(app));
+
+        final List<TestStack> stacked = Collections.synchronizedList(new ArrayList<>());
+        try {
+            new StackGraphExecutor().execute(graph, stack -> {
+                stacked.add(stack);
+                throw new IllegalStateException("Failed to stack " + stack);
+            });
+            fail("Failure should have been propagated.");
+        } catch (IllegalStateException e) {
+            assertEquals("Failed to stack postgres", e.getMessage());
+        }
+        assertEquals(Collections.singletonList(postgres), stacked);
+    }
+
+    private static class TestStack implements GizmoStack<TestStack, GizmoStacker<TestStack>> {
+        private final String name;
+        private final List<TestStack> dependencies = new LinkedList<>();
+
+        private TestStack(String name, TestStack... dependencies) {
+            this.name = name;
+            this.dependencies.addAll(Arrays.asList(dependencies));
+        }
+
+        @Override
+        public List<TestStack> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public List<Consumer<GizmoStacker<TestStack>>> getWaitingRules() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
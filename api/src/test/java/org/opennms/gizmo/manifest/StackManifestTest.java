@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.manifest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StackManifestTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canStoreAndLoad() throws Exception {
+        final Path path = temporaryFolder.getRoot().toPath().resolve("nested").resolve("manifest.properties");
+        assertNull(StackManifest.load(path));
+
+        new StackManifest()
+            .put("container.postgres.id", "abc")
+            .put("container.postgres.address.5432/tcp", new InetSocketAddress("127.0.0.1", 32768))
+            .store(path);
+
+        final StackManifest manifest = StackManifest.load(path);
+        assertEquals("abc", manifest.get("container.postgres.id"));
+        assertEquals(new InetSocketAddress("127.0.0.1", 32768), manifest.getAddress("container.postgres.address.5432/tcp"));
+        assertEquals(Collections.singletonMap("5432/tcp", "127.0.0.1:32768"), manifest.getWithPrefix("container.postgres.address."));
+
+        StackManifest.delete(path);
+        assertNull(StackManifest.load(path));
+    }
+}
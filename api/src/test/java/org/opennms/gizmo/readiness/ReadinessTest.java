@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.readiness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ReadinessTest {
+
+    @Test
+    public void canBackoffExponentiallyAfterFastPhase() {
+        final Backoff backoff = Backoff.builder()
+                .withFastPhase(2, 10, TimeUnit.MILLISECONDS)
+                .withInitialDelay(100, TimeUnit.MILLISECONDS)
+                .withMultiplier(2)
+                .withMaxDelay(1, TimeUnit.SECONDS)
+                .withJitter(0.1)
+                .build();
+        assertEquals(10, backoff.getDelayMs(1));
+        assertEquals(10, backoff.getDelayMs(2));
+        assertBetween(90, 110, backoff.getDelayMs(3));
+        assertBetween(180, 220, backoff.getDelayMs(4));
+        assertBetween(360, 440, backoff.getDelayMs(5));
+        assertBetween(900, 1000, backoff.getDelayMs(100));
+    }
+
+    @Test(timeout = 10000)
+    public void canWaitUntilReady() {
+        final AtomicInteger attempts = new AtomicInteger();
+        Readiness.await("test").until(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("Not yet.");
+            }
+            return true;
+        });
+        assertEquals(3, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void canShareDeadlineBetweenRules() {
+        final AtomicInteger attempts = new AtomicInteger();
+        Deadline.runWithin(Deadline.after(500, TimeUnit.MILLISECONDS), () -> {
+            // The first rule consumes the budget
+            try {
+                Readiness.await("first").atMost(1, TimeUnit.MINUTES).until(() -> false);
+                fail("Should have timed out.");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("first was not ready"));
+            }
+            // Leaving the second one with a single attempt
+            try {
+                Readiness.await("second").until(() -> attempts.incrementAndGet() < 0);
+                fail("Should have timed out.");
+            } catch (IllegalStateException e) {
+                assertEquals(1, attempts.get());
+            }
+        });
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(String.format("Expected %d to be between %d and %d.", actual, min, max), actual >= min && actual <= max);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.timing;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.gizmo.GizmoStackListener.Phase;
+import org.opennms.gizmo.GizmoStackListeners;
+import org.opennms.gizmo.GizmoStackListeners.PhaseTimer;
+
+public class TimingReportListenerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void canWriteReport() throws Exception {
+        final Path reportDir = tempFolder.getRoot().toPath();
+        final GizmoStackListeners listeners = new GizmoStackListeners(Collections.singletonList(new TimingReportListener(reportDir)));
+
+        listeners.ruleStarted("canDoStuff(org.opennms.SomeIT)", System.nanoTime());
+        try (PhaseTimer timer = listeners.time(null, Phase.PULL, "my \"alias\"")) {
+            Thread.sleep(10);
+            timer.succeeded();
+        }
+        listeners.ruleEnded("canDoStuff(org.opennms.SomeIT)", System.nanoTime(), false);
+
+        final Path report = reportDir.resolve("gizmo-timings-canDoStuff_org.opennms.SomeIT_.json");
+        final String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        assertTrue(json, json.contains("\"rule\": \"canDoStuff(org.opennms.SomeIT)\""));
+        assertTrue(json, json.contains("\"phase\": \"PULL\", \"subject\": \"my \\\"alias\\\"\""));
+        assertTrue(json, json.contains("\"succeeded\": true"));
+        assertTrue(json, json.contains("\"failed\": false"));
+    }
+}
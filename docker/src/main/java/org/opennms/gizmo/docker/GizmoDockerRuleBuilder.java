@@ -15,28 +15,59 @@
  */
 package org.opennms.gizmo.docker;
 
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.opennms.gizmo.GizmoStackListener;
+import org.opennms.gizmo.docker.logs.ContainerLogFollower;
+import org.opennms.gizmo.docker.pool.StackPool;
+import org.opennms.gizmo.docker.reaper.GizmoSession;
+import org.opennms.gizmo.docker.snapshot.SnapshotCache;
+import org.opennms.gizmo.graph.StackGraphExecutor;
 
 import com.google.common.collect.ImmutableMap;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.ProgressHandler;
 import com.spotify.docker.client.messages.ContainerConfig;
 
 import jersey.repackaged.com.google.common.collect.ImmutableList;
 
 public class GizmoDockerRuleBuilder {
     protected DockerClient docker;
+    protected Supplier<DockerClient> dockerSupplier;
     protected final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = new LinkedHashMap<>();
     protected final List<Consumer<GizmoDockerStacker>> waitingRules = new LinkedList<>();
     protected boolean skipPull = false;
     protected boolean skipTearDown = false;
     protected boolean skipTearDownOnFailure = false;
     protected boolean useExistingStacks = false;
+    protected int stackingParallelism = StackGraphExecutor.DEFAULT_PARALLELISM;
+    protected int tearDownParallelism = 8;
+    protected boolean asyncTearDown = false;
+    protected boolean reaper = false;
+    protected long reaperStaleAfterMs = GizmoSession.getDefaultStaleAfterMs();
+    protected Path manifestPath;
+    protected boolean useNetwork = true;
+    protected boolean followLogs = false;
+    protected int logBufferSize = ContainerLogFollower.DEFAULT_BUFFER_SIZE;
+    protected long waitingBudgetMs = 0;
+    protected final List<GizmoStackListener> listeners = new LinkedList<>();
+    protected boolean timingReport = false;
+    protected boolean concurrentContainerCreation = false;
+    protected int pullParallelism = 4;
+    protected ProgressHandler progressHandler;
+    protected boolean useStackPool = false;
+    protected long stackPoolIdleTtlMs = StackPool.DEFAULT_IDLE_TTL_MS;
+    protected long snapshotCacheMaxBytes = SnapshotCache.DEFAULT_MAX_SIZE_BYTES;
+    protected Path snapshotIndex = SnapshotCache.DEFAULT_INDEX;
     protected List<GizmoDockerStack> stacks = new LinkedList<>();
 
     public GizmoDockerRuleBuilder withDockerClient(DockerClient docker) {
@@ -44,6 +75,17 @@ public class GizmoDockerRuleBuilder {
         return this;
     }
 
+    /**
+     * Sets the supplier used to create Docker clients, instead of using the environment.
+     *
+     * Required to use the {@link #useStackPool(boolean)} with a configured client, since
+     * pooled stacks outlive the rule, and are torn down using new clients.
+     */
+    public GizmoDockerRuleBuilder withDockerClientSupplier(Supplier<DockerClient> dockerSupplier) {
+        this.dockerSupplier = dockerSupplier;
+        return this;
+    }
+
     public GizmoDockerRuleBuilder withContainer(String alias, Function<GizmoDockerStacker, ContainerConfig> container) {
         containersByAlias.put(alias, container);
         return this;
@@ -79,7 +121,214 @@ public class GizmoDockerRuleBuilder {
         return this;
     }
 
+    /**
+     * Sets the maximum number of independent stacks that can be stacked
+     * at the same time.
+     */
+    public GizmoDockerRuleBuilder withStackingParallelism(int stackingParallelism) {
+        this.stackingParallelism = stackingParallelism;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of containers that can be removed at the same time.
+     */
+    public GizmoDockerRuleBuilder withTearDownParallelism(int tearDownParallelism) {
+        this.tearDownParallelism = tearDownParallelism;
+        return this;
+    }
+
+    /**
+     * When enabled, the tear down returns immediately and the containers are removed
+     * in the background. The JVM waits for any outstanding removals before exiting.
+     */
+    public GizmoDockerRuleBuilder withAsyncTearDown(boolean asyncTearDown) {
+        this.asyncTearDown = asyncTearDown;
+        return this;
+    }
+
+    /**
+     * Enables or disables the out-of-process reaper, disabled by default.
+     *
+     * The reaper runs in its own JVM, and removes the containers created by this JVM
+     * if it dies without tearing them down. It can also be disabled JVM-wide using
+     * the {@value org.opennms.gizmo.docker.reaper.GizmoSession#DISABLE_REAPER_PROPERTY} system property.
+     */
+    public GizmoDockerRuleBuilder withReaper(boolean reaper) {
+        this.reaper = reaper;
+        return this;
+    }
+
+    /**
+     * Sets the time without heartbeat after which the reaper considers this JVM dead,
+     * defaults to the {@value org.opennms.gizmo.docker.reaper.GizmoSession#STALE_AFTER_PROPERTY}
+     * system property, or 30 seconds.
+     *
+     * Increase this when the JVM may pause for longer, i.e. while debugging.
+     */
+    public GizmoDockerRuleBuilder withReaperStaleAfter(long staleAfter, TimeUnit unit) {
+        this.reaperStaleAfterMs = unit.toMillis(staleAfter);
+        return this;
+    }
+
+    /**
+     * When enabled, the default, every container is attached to a user-defined network
+     * created for the rule, using its alias as DNS name. Containers can then reach each
+     * other by alias, without links, and regardless of the order in which they are created.
+     *
+     * @see GizmoDockerStacker#withNetworkAliases(String...)
+     */
+    public GizmoDockerRuleBuilder useNetwork(boolean useNetwork) {
+        this.useNetwork = useNetwork;
+        return this;
+    }
+
+    /**
+     * When enabled, the stdout and stderr of every container are streamed to
+     * a logger named {@value org.opennms.gizmo.docker.logs.ContainerLogFollower#LOGGER_PREFIX}
+     * followed by the container's alias. Disabled by default.
+     */
+    public GizmoDockerRuleBuilder followLogs(boolean followLogs) {
+        this.followLogs = followLogs;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of log lines, per container, buffered before they are logged.
+     * Lines are dropped when the buffer is full.
+     */
+    public GizmoDockerRuleBuilder withLogBufferSize(int logBufferSize) {
+        this.logBufferSize = logBufferSize;
+        return this;
+    }
+
+    /**
+     * Sets the path of the stack manifest.
+     *
+     * Once stacked, the container ids, service addresses and stack fingerprints are written
+     * to the manifest. If a manifest is already present, all of the containers it lists are
+     * still running, and the configuration of the stacks did not change, the rule attaches
+     * to these instead of stacking, e.g. after a previous
+     * run that used {@link #skipTearDown(boolean)}. The manifest is removed along with
+     * the containers on tear down.
+     *
+     * Not supported in combination with {@link #useStackPool(boolean)}.
+     */
+    public GizmoDockerRuleBuilder withManifest(Path manifestPath) {
+        this.manifestPath = manifestPath;
+        return this;
+    }
+
+    /**
+     * Sets the overall time budget shared by all of the waiting rules of a stack.
+     *
+     * Rules using {@link org.opennms.gizmo.readiness.Readiness} fail once the budget is spent.
+     */
+    public GizmoDockerRuleBuilder withWaitingBudget(long budget, TimeUnit unit) {
+        this.waitingBudgetMs = unit.toMillis(budget);
+        return this;
+    }
+
+    /**
+     * When enabled, all of the containers in a stack are pulled, created and started
+     * at the same time. Containers that look up another container of the same stack
+     * using {@link GizmoDockerStacker#getContainerInfo(String)}, e.g. for links,
+     * wait until that container is available.
+     */
+    public GizmoDockerRuleBuilder withConcurrentContainerCreation(boolean concurrentContainerCreation) {
+        this.concurrentContainerCreation = concurrentContainerCreation;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of images that can be pulled at the same time.
+     */
+    public GizmoDockerRuleBuilder withPullParallelism(int pullParallelism) {
+        this.pullParallelism = pullParallelism;
+        return this;
+    }
+
+    /**
+     * Sets the handler used to report the progress of image pulls. By default,
+     * the progress is logged using a {@link LoggingProgressHandler}.
+     */
+    public GizmoDockerRuleBuilder withProgressHandler(ProgressHandler progressHandler) {
+        this.progressHandler = progressHandler;
+        return this;
+    }
+
+    /**
+     * When enabled, stacks are leased from a JVM-wide pool of warm stacks instead
+     * of being created from scratch by every rule. Stacks are matched using the
+     * fingerprint of their container configurations, and are kept alive until
+     * they have been idle for the configured TTL, or until the JVM exits.
+     */
+    public GizmoDockerRuleBuilder useStackPool(boolean useStackPool) {
+        this.useStackPool = useStackPool;
+        return this;
+    }
+
+    public GizmoDockerRuleBuilder withStackPoolIdleTtl(long duration, TimeUnit unit) {
+        this.stackPoolIdleTtlMs = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Sets the maximum total size of the snapshot images kept for stacks
+     * that enable {@link GizmoDockerStack#isSnapshotEnabled()}.
+     */
+    public GizmoDockerRuleBuilder withSnapshotCacheSize(long maxSizeBytes) {
+        this.snapshotCacheMaxBytes = maxSizeBytes;
+        return this;
+    }
+
+    /**
+     * Sets the file used to keep track of when each snapshot was last used.
+     */
+    public GizmoDockerRuleBuilder withSnapshotIndex(Path snapshotIndex) {
+        this.snapshotIndex = snapshotIndex;
+        return this;
+    }
+
+    /**
+     * Registers a listener that is notified as the stacks go through the different phases.
+     */
+    public GizmoDockerRuleBuilder withListener(GizmoStackListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Enables or disables the JSON timing report, disabled by default.
+     *
+     * @see org.opennms.gizmo.timing.TimingReportListener
+     */
+    public GizmoDockerRuleBuilder withTimingReport(boolean timingReport) {
+        this.timingReport = timingReport;
+        return this;
+    }
+
     public GizmoDockerRule build() {
+        if (stackingParallelism <= 0) {
+            throw new IllegalStateException("The stacking parallelism must be greater than 0. Got: " + stackingParallelism);
+        }
+        if (pullParallelism <= 0) {
+            throw new IllegalStateException("The pull parallelism must be greater than 0. Got: " + pullParallelism);
+        }
+        if (tearDownParallelism <= 0) {
+            throw new IllegalStateException("The tear down parallelism must be greater than 0. Got: " + tearDownParallelism);
+        }
+        if (reaperStaleAfterMs <= GizmoSession.HEARTBEAT_INTERVAL_MS) {
+            throw new IllegalStateException(String.format("The reaper staleness must be greater than the heartbeat interval of %dms.",
+                    GizmoSession.HEARTBEAT_INTERVAL_MS));
+        }
+        if (logBufferSize <= 0) {
+            throw new IllegalStateException("The log buffer size must be greater than 0. Got: " + logBufferSize);
+        }
+        if (useStackPool && docker != null && dockerSupplier == null) {
+            throw new IllegalStateException("Pooled stacks outlive the client set with withDockerClient(). "
+                    + "Use withDockerClientSupplier() instead.");
+        }
         if (containersByAlias.size() > 0) {
             final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containers = ImmutableMap.copyOf(containersByAlias);
             final List<Consumer<GizmoDockerStacker>> rules = ImmutableList.copyOf(waitingRules);
@@ -35,4 +35,23 @@ public interface GizmoDockerStack extends GizmoStack<GizmoDockerStack, GizmoDock
 
     void afterStack(GizmoDockerStacker stacker);
 
+    /**
+     * Opt-in to snapshots. When enabled, the containers are committed to images
+     * once the stack is successfully stacked, and these images are used to start
+     * the same containers on subsequent runs, skipping any first-boot initialization.
+     *
+     * @see org.opennms.gizmo.docker.snapshot.SnapshotCache
+     */
+    default boolean isSnapshotEnabled() {
+        return false;
+    }
+
+    /**
+     * Name used to label the containers of this stack, and to find them again
+     * when using existing stacks.
+     */
+    default String getName() {
+        return getClass().getName();
+    }
+
 }
@@ -16,161 +16,1225 @@
 package org.opennms.gizmo.docker;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.ProgressHandler;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.exceptions.ImageNotFoundException;
 import com.spotify.docker.client.messages.Container;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
 import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.EndpointConfig;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.NetworkConfig;
 import com.spotify.docker.client.messages.PortBinding;
+import org.opennms.gizmo.GizmoStackListener;
+import org.opennms.gizmo.GizmoStackListener.Phase;
+import org.opennms.gizmo.GizmoStackListeners;
+import org.opennms.gizmo.GizmoStackListeners.PhaseTimer;
 import org.opennms.gizmo.GizmoStacker;
+import org.opennms.gizmo.docker.events.ContainerEventBus;
+import org.opennms.gizmo.docker.logs.ContainerLogFollower;
+import org.opennms.gizmo.docker.pool.PooledStack;
+import org.opennms.gizmo.docker.pool.StackLease;
+import org.opennms.gizmo.docker.pool.StackPool;
+import org.opennms.gizmo.docker.reaper.GizmoSession;
+import org.opennms.gizmo.docker.snapshot.SnapshotCache;
+import org.opennms.gizmo.graph.StackGraph;
+import org.opennms.gizmo.graph.StackGraphExecutor;
+import org.opennms.gizmo.manifest.StackManifest;
+import org.opennms.gizmo.readiness.Deadline;
+import org.opennms.gizmo.timing.TimingReportListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class GizmoDockerStacker implements GizmoStacker<GizmoDockerStack> {
     private static final Logger LOG = LoggerFactory.getLogger(GizmoDockerStacker.class);
 
+    /**
+     * Number of log lines to include when reporting a container that died.
+     */
+    private static final int NUM_LOG_LINES_ON_FAILURE = 50;
+
+    /**
+     * Maximum amount of time to wait for background tear downs when the JVM exits.
+     */
+    private static final long MAX_TEAR_DOWN_WAIT_ON_EXIT_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private static final String MANIFEST_CONTAINER = "container.";
+    private static final String MANIFEST_NETWORK = "network";
+    private static final String MANIFEST_STACK = "stack.";
+
+    private static final Comparator<Container> NEWEST_FIRST = Comparator.comparing(
+            (Container c) -> c.created() != null ? c.created() : 0L).reversed();
+
+    /**
+     * Placeholder for the name of the stacker's network, which can be used as a key
+     * in a container's networking configuration to declare additional DNS aliases.
+     *
+     * @see #withNetworkAliases(String...)
+     */
+    public static final String NETWORK = "gizmo";
+
     private DockerClient docker;
+    private final Supplier<DockerClient> dockerSupplier;
     private final boolean skipPull;
     private final boolean useExistingStacks;
+    private final int stackingParallelism;
+    private final int tearDownParallelism;
+    private final boolean asyncTearDown;
+    private final boolean reaper;
+    private final long reaperStaleAfterMs;
+    private final boolean concurrentContainerCreation;
+    private final long waitingBudgetMs;
+    private final GizmoStackListeners listeners;
 
     /**
      * Keeps track of the IDs for all the created containers so we can
      * (possibly) tear them down later.
      */
-    private final Set<String> createdContainerIds = new LinkedHashSet<>();
+    private final Map<GizmoDockerStack, Set<String>> createdContainerIdsByStack = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Tear downs running in the background, which must complete before the JVM exits.
+     */
+    private static final Set<CompletableFuture<Void>> pendingTearDowns = ConcurrentHashMap.newKeySet();
+    private static boolean shutdownHookRegistered = false;
+    private CompletableFuture<Void> asyncTearDownFuture;
+
+    /**
+     * Leases on the warm stacks we're using from the pool.
+     */
+    private final List<StackLease> stackLeases = Collections.synchronizedList(new ArrayList<>());
+    private final boolean useStackPool;
+    private final long stackPoolIdleTtlMs;
+
+    /**
+     * Snapshot images, used by stacks that opt-in.
+     */
+    private SnapshotCache snapshots;
+    private final long snapshotCacheMaxBytes;
+    private final Path snapshotIndex;
+    private final Map<String, ContainerConfig> resolvedConfigByAlias = new ConcurrentHashMap<>();
+    private final Set<String> aliasesFromSnapshots = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Running containers, indexed by stack name and alias, used when attaching to existing stacks.
+     */
+    private final Map<String, Map<String, List<Container>>> existingContainersByStackName = new HashMap<>();
+    private List<Container> unlabeledRunningContainers;
+    private final Set<String> attachedContainerIds = new HashSet<>();
+
+    /**
+     * User-defined network to which all of the containers are attached, using their
+     * alias as DNS name. The network is owned by the stacker, unless the stacks are pooled.
+     */
+    private final boolean useNetwork;
+    private String networkName;
+    private boolean ownsNetwork = false;
+
+    /**
+     * Manifest used to attach to the containers of a previous run.
+     */
+    private final Path manifestPath;
+    private final Map<String, String> manifestContainerIdsByAlias = new ConcurrentHashMap<>();
+    private final Map<String, InetSocketAddress> manifestAddressesByKey = new ConcurrentHashMap<>();
 
     /**
      * Keeps track of container meta-data.
      */
-    private final Map<String, ContainerInfo> containerInfoByAlias = new HashMap<>();
+    private final Map<String, ContainerInfo> containerInfoByAlias = new ConcurrentHashMap<>();
+
+    /**
+     * Containers which are being created concurrently, and the
+     * alias (if any) each one of them is currently waiting on.
+     */
+    private final Map<String, CompletableFuture<ContainerInfo>> pendingContainersByAlias = new ConcurrentHashMap<>();
+    private final Map<String, String> awaitedAliasByAlias = new ConcurrentHashMap<>();
+    private final ThreadLocal<String> creatingAlias = new ThreadLocal<>();
+
+    /**
+     * Image pulls, which may have been started before stacking.
+     */
+    private final Map<String, CompletableFuture<Void>> imagePullsByImage = new ConcurrentHashMap<>();
+    private final int pullParallelism;
+    private final ProgressHandler progressHandler;
+    private ExecutorService pullExecutor;
+
+    /**
+     * Follows the logs of the containers we started.
+     */
+    private final boolean followLogs;
+    private final int logBufferSize;
+    private final List<ContainerLogFollower> logFollowers = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Container events, used to wait on containers without polling.
+     */
+    private ContainerEventBus events;
 
     public GizmoDockerStacker(GizmoDockerRuleBuilder builder) {
         docker = builder.docker;
+        dockerSupplier = builder.dockerSupplier != null ? builder.dockerSupplier : GizmoDockerStacker::newDefaultClient;
         skipPull = builder.skipPull;
         useExistingStacks = builder.useExistingStacks;
+        stackingParallelism = builder.stackingParallelism;
+        tearDownParallelism = builder.tearDownParallelism;
+        asyncTearDown = builder.asyncTearDown;
+        reaper = builder.reaper;
+        reaperStaleAfterMs = builder.reaperStaleAfterMs;
+        manifestPath = builder.manifestPath;
+        useNetwork = builder.useNetwork;
+        followLogs = builder.followLogs;
+        logBufferSize = builder.logBufferSize;
+        concurrentContainerCreation = builder.concurrentContainerCreation;
+        waitingBudgetMs = builder.waitingBudgetMs;
+        pullParallelism = builder.pullParallelism;
+        progressHandler = builder.progressHandler;
+        useStackPool = builder.useStackPool;
+        stackPoolIdleTtlMs = builder.stackPoolIdleTtlMs;
+        snapshotCacheMaxBytes = builder.snapshotCacheMaxBytes;
+        snapshotIndex = builder.snapshotIndex;
+        final List<GizmoStackListener> allListeners = new ArrayList<>(builder.listeners);
+        if (builder.timingReport) {
+            allListeners.add(new TimingReportListener());
+        }
+        listeners = GizmoStackListeners.load(allListeners);
     }
 
     @Override
     public void init() throws DockerCertificateException {
         if (docker == null) {
-            // Initialize the default client
-            docker = DefaultDockerClient.fromEnv().build();
+            docker = dockerSupplier.get();
+        }
+        snapshots = new SnapshotCache(docker, snapshotCacheMaxBytes, snapshotIndex);
+    }
+
+    /**
+     * Pulls the images for all of the containers in the given stacks, and their
+     * dependencies, that are not already present.
+     *
+     * The pulls are performed in the background, and the creation of a container
+     * only blocks on the pull of its own image. Images that can't be determined
+     * ahead of time, i.e. when the container configuration references other
+     * containers, are pulled when the container is created.
+     */
+    @Override
+    public void prefetch(List<GizmoDockerStack> stacks) {
+        if (skipPull || useExistingStacks) {
+            return;
+        }
+
+        for (GizmoDockerStack stack : StackGraph.of(stacks).getStacks()) {
+            for (Entry<String, Function<GizmoDockerStacker, ContainerConfig>> entry : stack.getContainersByAlias().entrySet()) {
+                final String image;
+                try {
+                    image = entry.getValue().apply(this).image();
+                } catch (RuntimeException e) {
+                    LOG.debug("Image for {} cannot be determined before stacking. It will be pulled when the container is created.",
+                            entry.getKey(), e);
+                    continue;
+                }
+                if (image != null) {
+                    pullImage(image);
+                }
+            }
         }
     }
 
     @Override
-    public void stack(GizmoDockerStack stack) throws DockerException, InterruptedException {
-        for (GizmoDockerStack dependency : stack.getDependencies()) {
-            LOG.info("Stacking dependency: {}", dependency);
-            stack(dependency);
+    public void stack(GizmoDockerStack stack) throws Exception {
+        stackAll(Collections.singletonList(stack));
+    }
+
+    /**
+     * Stacks the given stacks along with all of their dependencies.
+     *
+     * Shared dependencies are only stacked once, and stacks that do not
+     * depend on one another are stacked concurrently.
+     */
+    @Override
+    public void stackAll(List<GizmoDockerStack> stacks) throws Exception {
+        final StackGraph<GizmoDockerStack> graph = StackGraph.of(stacks);
+        if (manifestPath != null && attach(graph)) {
+            return;
+        }
+        new StackGraphExecutor(stackingParallelism).execute(graph, this::doStack);
+        if (manifestPath != null && !useStackPool) {
+            writeManifest(graph);
+        }
+    }
+
+    /**
+     * Attaches to the containers listed in the manifest, if all of the
+     * containers of all the stacks are listed and still running, and the
+     * fingerprints of the stacks match those they were created with.
+     *
+     * @return true if attached, false if the stacks need to be stacked
+     */
+    private boolean attach(StackGraph<GizmoDockerStack> graph) throws DockerException, InterruptedException {
+        final StackManifest manifest = StackManifest.load(manifestPath);
+        if (manifest == null) {
+            return false;
         }
 
-        stack.beforeStack(this);
+        final Set<String> runningContainerIds = docker.listContainers(DockerClient.ListContainersParam.withStatusRunning()).stream()
+                .map(Container::id)
+                .collect(Collectors.toSet());
+        final Map<GizmoDockerStack, Map<String, String>> containerIdsByAliasByStack = new LinkedHashMap<>();
+        for (GizmoDockerStack stack : graph.getStacks()) {
+            final Map<String, String> containerIdsByAlias = new LinkedHashMap<>();
+            for (String alias : stack.getContainersByAlias().keySet()) {
+                final String containerId = manifest.get(MANIFEST_CONTAINER + alias + ".id");
+                if (containerId == null || !runningContainerIds.contains(containerId)) {
+                    LOG.info("Container for {} in manifest {} is missing or not running. Stacking from scratch.", alias, manifestPath);
+                    return false;
+                }
+                containerIdsByAlias.put(alias, containerId);
+            }
+            containerIdsByAliasByStack.put(stack, containerIdsByAlias);
+        }
 
-        for (Entry<String, Function<GizmoDockerStacker, ContainerConfig>> entry : stack.getContainersByAlias().entrySet()) {
-            final String alias = entry.getKey();
-            final Function<GizmoDockerStacker, ContainerConfig> containerFunc = entry.getValue();
+        // Configurations that reference other containers resolve against the attached containers
+        containerIdsByAliasByStack.values().forEach(manifestContainerIdsByAlias::putAll);
+        for (GizmoDockerStack stack : graph.getStacks()) {
+            final String fingerprint = manifest.get(MANIFEST_STACK + stack.getName() + ".fingerprint");
+            if (!Objects.equals(fingerprint, StackFingerprint.of(stack, this))) {
+                LOG.info("Configuration of {} changed since manifest {} was written. Stacking from scratch.", stack, manifestPath);
+                manifestContainerIdsByAlias.clear();
+                containerInfoByAlias.clear();
+                return false;
+            }
+        }
 
-            ContainerConfig container = containerFunc.apply(this);
+        for (Entry<GizmoDockerStack, Map<String, String>> entry : containerIdsByAliasByStack.entrySet()) {
+            // We own these now, so tear them down unless told otherwise
+            createdContainerIdsByStack.computeIfAbsent(entry.getKey(), s -> Collections.synchronizedSet(new LinkedHashSet<>()))
+                .addAll(entry.getValue().values());
+            for (String alias : entry.getValue().keySet()) {
+                final String prefix = MANIFEST_CONTAINER + alias + ".address.";
+                for (String portKey : manifest.getWithPrefix(prefix).keySet()) {
+                    manifestAddressesByKey.put(alias + ":" + portKey, manifest.getAddress(prefix + portKey));
+                }
+            }
+        }
+        final String manifestNetwork = manifest.get(MANIFEST_NETWORK);
+        if (manifestNetwork != null) {
+            synchronized (this) {
+                networkName = manifestNetwork;
+                ownsNetwork = true;
+            }
+        }
+        LOG.info("Attached to {} containers using manifest: {}", manifestContainerIdsByAlias.size(), manifestPath);
+        return true;
+    }
 
-            if (!skipPull) {
+    private void writeManifest(StackGraph<GizmoDockerStack> graph) {
+        final StackManifest manifest = new StackManifest();
+        for (GizmoDockerStack stack : graph.getStacks()) {
+            final String fingerprint = StackFingerprint.of(stack, this);
+            if (fingerprint != null) {
+                manifest.put(MANIFEST_STACK + stack.getName() + ".fingerprint", fingerprint);
+            }
+            for (String alias : stack.getContainersByAlias().keySet()) {
+                final ContainerInfo info = containerInfoByAlias.get(alias);
+                if (info == null) {
+                    continue;
+                }
+                final String prefix = MANIFEST_CONTAINER + alias;
+                manifest.put(prefix + ".id", info.id())
+                    .put(prefix + ".name", info.name())
+                    .put(prefix + ".stack", stack.getName());
+                if (info.networkSettings() == null || info.networkSettings().ports() == null) {
+                    continue;
+                }
+                for (Entry<String, List<PortBinding>> port : info.networkSettings().ports().entrySet()) {
+                    if (port.getValue() != null && !port.getValue().isEmpty()) {
+                        manifest.put(prefix + ".address." + port.getKey(), toServiceAddress(port.getValue().iterator().next()));
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            if (networkName != null && ownsNetwork) {
+                manifest.put(MANIFEST_NETWORK, networkName);
+            }
+        }
+        manifest.store(manifestPath);
+        LOG.info("Wrote manifest to: {}", manifestPath);
+    }
+
+    private void doStack(GizmoDockerStack stack) throws Exception {
+        LOG.info("Stacking: {}", stack);
+        try (PhaseTimer timer = listeners.time(stack, Phase.STACK)) {
+            if (useStackPool && !useExistingStacks) {
+                leaseStack(stack);
+            } else {
+                createStack(stack);
+            }
+            timer.succeeded();
+        }
+    }
+
+    /**
+     * Leases a warm copy of the stack from the JVM-wide pool, creating it
+     * if no stack with the same fingerprint is available.
+     *
+     * Warm stacks have already passed their waiting rules and afterStack(),
+     * so these are not called again when the stack is reused.
+     */
+    private void leaseStack(GizmoDockerStack stack) throws Exception {
+        final String fingerprint = StackFingerprint.of(stack, this);
+        if (fingerprint == null) {
+            LOG.info("{} references other containers in its configuration, and can't be pooled. Stacking it instead.", stack);
+            createStack(stack);
+            return;
+        }
+        final StackLease lease = StackPool.getInstance().lease(fingerprint, stackPoolIdleTtlMs, dockerSupplier, () -> {
+            createStack(stack);
+            // The pool now owns the containers, so we shouldn't tear them down ourselves
+            final Set<String> containerIds = createdContainerIdsByStack.remove(stack);
+            final Map<String, ContainerInfo> containerInfos = new LinkedHashMap<>();
+            for (String alias : stack.getContainersByAlias().keySet()) {
+                containerInfos.put(alias, containerInfoByAlias.get(alias));
+            }
+            return new PooledStack(fingerprint, containerIds != null ? containerIds : Collections.emptySet(), containerInfos);
+        });
+        stackLeases.add(lease);
+        containerInfoByAlias.putAll(lease.getStack().getContainerInfoByAlias());
+    }
+
+    private void createStack(GizmoDockerStack stack) throws DockerException, InterruptedException {
+        try (PhaseTimer timer = listeners.time(stack, Phase.BEFORE_STACK)) {
+            stack.beforeStack(this);
+            timer.succeeded();
+        }
+
+        final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = stack.getContainersByAlias();
+        if (concurrentContainerCreation && containersByAlias.size() > 1) {
+            createContainersConcurrently(stack, containersByAlias);
+        } else {
+            for (Entry<String, Function<GizmoDockerStacker, ContainerConfig>> entry : containersByAlias.entrySet()) {
+                createContainer(stack, entry.getKey(), entry.getValue());
+            }
+        }
+
+        try (PhaseTimer timer = listeners.time(stack, Phase.WAITING_RULES)) {
+            runWaitingRules(stack);
+            timer.succeeded();
+        }
+
+        try (PhaseTimer timer = listeners.time(stack, Phase.AFTER_STACK)) {
+            stack.afterStack(this);
+            timer.succeeded();
+        }
+
+        if (stack.isSnapshotEnabled() && !useExistingStacks) {
+            snapshot(stack);
+        }
+    }
+
+    /**
+     * Runs the waiting rules of the stack, failing fast if any of
+     * the stack's containers exits with a non-zero exit code in the meantime,
+     * i.e. when it crashes or is OOM killed. Containers that complete
+     * successfully, such as one-off initialization containers, are not fatal.
+     *
+     * The rules are run on a separate thread, which is interrupted
+     * when a container fails. If a waiting budget is set, the rules share
+     * the same {@link Deadline}.
+     */
+    private void runWaitingRules(GizmoDockerStack stack) throws DockerException, InterruptedException {
+        final List<Consumer<GizmoDockerStacker>> waitingRules = stack.getWaitingRules();
+        if (waitingRules.isEmpty()) {
+            return;
+        }
+
+        final CompletableFuture<String> deadAlias = new CompletableFuture<>();
+        final Map<String, String> exitCodesByAlias = new ConcurrentHashMap<>();
+        final List<ContainerEventBus.Subscription> subscriptions = new ArrayList<>();
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("gizmo-waiting-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            for (String alias : stack.getContainersByAlias().keySet()) {
+                final String containerId = getContainerInfo(alias).id();
+                subscriptions.add(getEvents().subscribe(containerId, event -> {
+                    if (ContainerEventBus.OOM.equals(event.action())) {
+                        // The container only dies if the OOM killer hit its main process, in which case a die event follows
+                        LOG.warn("A process in the {} container was OOM killed.", alias);
+                    } else if (ContainerEventBus.DIE.equals(event.action())) {
+                        final String exitCode = event.actor() != null && event.actor().attributes() != null
+                                ? event.actor().attributes().get("exitCode") : null;
+                        if ("0".equals(exitCode)) {
+                            LOG.info("The {} container exited successfully.", alias);
+                            return;
+                        }
+                        if (exitCode != null) {
+                            exitCodesByAlias.put(alias, exitCode);
+                        }
+                        deadAlias.complete(alias);
+                    }
+                }));
+                // The container may have died before we subscribed
+                if (hasFailed(alias, containerId, exitCodesByAlias)) {
+                    deadAlias.complete(alias);
+                }
+            }
+
+            final Deadline deadline = waitingBudgetMs > 0 ? Deadline.after(waitingBudgetMs, TimeUnit.MILLISECONDS) : null;
+            final CompletableFuture<Void> rules = CompletableFuture.runAsync(() -> Deadline.runWithin(deadline, () -> {
+                for (int i = 0; i < waitingRules.size(); i++) {
+                    try (PhaseTimer timer = listeners.time(stack, Phase.WAITING_RULE, "rule-" + i)) {
+                        waitingRules.get(i).accept(this);
+                        timer.succeeded();
+                    }
+                }
+            }), executor);
+            try {
+                CompletableFuture.anyOf(rules, deadAlias).get();
+            } catch (ExecutionException e) {
+                // Handled below
+            }
+
+            if (deadAlias.isDone()) {
+                final String alias = deadAlias.getNow(null);
+                throw new IllegalStateException(describeDeadContainer(alias, exitCodesByAlias.get(alias)));
+            }
+            try {
+                rules.get();
+            } catch (ExecutionException e) {
+                LOG.error("waitFor() rule failed. Tearing down.", e.getCause());
+                throw Throwables.propagate(e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+            subscriptions.forEach(ContainerEventBus.Subscription::close);
+        }
+    }
+
+    /**
+     * @return true if the container exited with a non-zero exit code, or is gone
+     * without having been removed automatically after exiting successfully
+     */
+    private boolean hasFailed(String alias, String containerId, Map<String, String> exitCodesByAlias) throws DockerException, InterruptedException {
+        final ContainerState state;
+        try {
+            state = docker.inspectContainer(containerId).state();
+        } catch (ContainerNotFoundException e) {
+            if (exitCodesByAlias.containsKey(alias)) {
+                return true;
+            }
+            final HostConfig hostConfig = getContainerInfo(alias).hostConfig();
+            if (hostConfig != null && Boolean.TRUE.equals(hostConfig.autoRemove())) {
+                LOG.info("The {} container was removed automatically after exiting.", alias);
+                return false;
+            }
+            return true;
+        }
+        return !Boolean.TRUE.equals(state.running()) && !Long.valueOf(0).equals(state.exitCode());
+    }
+
+    private String describeDeadContainer(String alias, String exitCodeFromEvent) throws InterruptedException {
+        final String containerId = getContainerInfo(alias).id();
+        final StringBuilder sb = new StringBuilder(String.format("The %s container (%s) died before the stack was ready.",
+                alias, containerId));
+        try {
+            final ContainerState state = docker.inspectContainer(containerId).state();
+            sb.append(String.format(" Exit code: %s, OOM killed: %s.", state.exitCode(), state.oomKilled()));
+        } catch (DockerException e) {
+            // The container may have been removed if autoRemove is set
+            sb.append(String.format(" Exit code: %s.", exitCodeFromEvent));
+        }
+        try (LogStream logs = docker.logs(containerId, DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr(),
+                DockerClient.LogsParam.tail(NUM_LOG_LINES_ON_FAILURE))) {
+            sb.append(String.format(" Last %d log lines:%n", NUM_LOG_LINES_ON_FAILURE)).append(logs.readFully());
+        } catch (DockerException e) {
+            sb.append(" Logs are not available.");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Commits the containers that were not already started from a snapshot.
+     *
+     * Snapshots are an optimization, so failures are logged, but otherwise ignored.
+     */
+    private void snapshot(GizmoDockerStack stack) throws InterruptedException {
+        for (String alias : stack.getContainersByAlias().keySet()) {
+            if (aliasesFromSnapshots.contains(alias)) {
+                continue;
+            }
+            try {
+                snapshots.commit(getContainerInfo(alias).id(), alias, resolvedConfigByAlias.get(alias));
+            } catch (DockerException e) {
+                LOG.warn("Failed to snapshot container for alias: {}", alias, e);
+            }
+        }
+    }
+
+    /**
+     * Creates all of the containers at once, using a thread per alias.
+     *
+     * Containers whose configuration references another container of the
+     * same stack via {@link #getContainerInfo(String)} will block until
+     * that container is up.
+     */
+    private void createContainersConcurrently(GizmoDockerStack stack, Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias)
+            throws DockerException, InterruptedException {
+        final Map<String, CompletableFuture<ContainerInfo>> futuresByAlias = new LinkedHashMap<>();
+        for (String alias : containersByAlias.keySet()) {
+            final CompletableFuture<ContainerInfo> future = new CompletableFuture<>();
+            futuresByAlias.put(alias, future);
+            pendingContainersByAlias.put(alias, future);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(containersByAlias.size(), new ThreadFactoryBuilder()
+                .setNameFormat("gizmo-container-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            for (Entry<String, Function<GizmoDockerStacker, ContainerConfig>> entry : containersByAlias.entrySet()) {
+                final String alias = entry.getKey();
+                final CompletableFuture<ContainerInfo> future = futuresByAlias.get(alias);
+                executor.execute(() -> {
+                    creatingAlias.set(alias);
+                    try {
+                        future.complete(createContainer(stack, alias, entry.getValue()));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        creatingAlias.remove();
+                    }
+                });
+            }
+
+            // Failed containers complete their future exceptionally, which in turn
+            // fails any container waiting on them, so this never blocks indefinitely
+            Throwable failure = null;
+            for (Entry<String, CompletableFuture<ContainerInfo>> entry : futuresByAlias.entrySet()) {
                 try {
-                    docker.inspectImage(container.image());
-                } catch (ImageNotFoundException infe) {
-                    LOG.info("Pulling image for alias {}: {}", alias, container.image());
-                    docker.pull(container.image());
-                    LOG.info("Done pulling image.");
+                    entry.getValue().get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        LOG.debug("Creation of {} also failed.", entry.getKey(), e.getCause());
+                    }
                 }
             }
+            if (failure != null) {
+                Throwables.propagateIfPossible(failure, DockerException.class, InterruptedException.class);
+                throw Throwables.propagate(failure);
+            }
+        } finally {
+            executor.shutdownNow();
+            pendingContainersByAlias.keySet().removeAll(containersByAlias.keySet());
+        }
+    }
+
+    private ContainerInfo createContainer(GizmoDockerStack stack, String alias, Function<GizmoDockerStacker, ContainerConfig> containerFunc)
+            throws DockerException, InterruptedException {
+        final ContainerConfig resolvedContainer = containerFunc.apply(this);
+
+        if (!skipPull) {
+            try (PhaseTimer timer = listeners.time(stack, Phase.PULL, alias).attribute(GizmoStackListener.IMAGE, resolvedContainer.image())) {
+                awaitImage(alias, resolvedContainer.image());
+                timer.succeeded();
+            }
+        }
+
+        final ContainerConfig container;
+        final String snapshot = stack.isSnapshotEnabled() && !useExistingStacks ?
+                snapshots.lookup(alias, resolvedContainer) : null;
+        if (snapshot != null) {
+            container = resolvedContainer.toBuilder().image(snapshot).build();
+            aliasesFromSnapshots.add(alias);
+        } else {
+            container = resolvedContainer;
+        }
+        resolvedConfigByAlias.put(alias, resolvedContainer);
 
-            final String containerId;
-            if (!useExistingStacks) {
-                final ContainerCreation containerCreation = docker.createContainer(container);
+        final String containerId;
+        if (!useExistingStacks) {
+            try (PhaseTimer timer = listeners.time(stack, Phase.CREATE, alias).attribute(GizmoStackListener.IMAGE, container.image())) {
+                final ContainerCreation containerCreation = docker.createContainer(withNetwork(alias, withLabels(stack, alias, container)));
                 containerId = containerCreation.id();
-                createdContainerIds.add(containerId);
+                createdContainerIdsByStack.computeIfAbsent(stack, s -> Collections.synchronizedSet(new LinkedHashSet<>()))
+                    .add(containerId);
+                timer.succeeded();
+            }
 
+            try (PhaseTimer timer = listeners.time(stack, Phase.START, alias).attribute(GizmoStackListener.IMAGE, container.image())) {
                 docker.startContainer(containerId);
-            } else {
-                containerId = docker.listContainers(DockerClient.ListContainersParam.withStatusRunning()).stream()
-                        .filter(c -> Objects.equals(container.image(), c.image()))
-                        .findFirst()
-                        .orElseThrow(() -> new IllegalStateException("Could not find runnign container with image: "
-                                + container.image()))
-                        .id();
+                timer.succeeded();
             }
 
-            final ContainerInfo containerInfo = docker.inspectContainer(containerId);
-            LOG.info("{} has container id: {}", alias, containerId);
-            if (!containerInfo.state().running()) {
-                throw new IllegalStateException("Could not start the " + alias + " container");
+            if (followLogs) {
+                final ContainerLogFollower follower = new ContainerLogFollower(docker, containerId, alias, logBufferSize);
+                logFollowers.add(follower);
+                follower.start();
             }
+        } else {
+            containerId = findExistingContainer(stack, alias, container.image()).id();
+        }
 
-            containerInfoByAlias.put(alias, containerInfo);
+        final ContainerInfo containerInfo;
+        try (PhaseTimer timer = listeners.time(stack, Phase.INSPECT, alias)) {
+            containerInfo = docker.inspectContainer(containerId);
+            timer.succeeded();
+        }
+        LOG.info("{} has container id: {}", alias, containerId);
+        if (!containerInfo.state().running()) {
+            throw new IllegalStateException("Could not start the " + alias + " container");
         }
 
-        // TODO: Verify container's status'es before firing off the waiting rules
-        // i.e. avoid waiting for L7 check if application image cannot be found
-        for (Consumer<GizmoDockerStacker> waitingRule : stack.getWaitingRules()) {
-            try {
-                waitingRule.accept(this);
-            } catch (Throwable t) {
-                LOG.error("waitFor() rule failed. Tearing down.", t);
-                throw Throwables.propagate(t);
+        containerInfoByAlias.put(alias, containerInfo);
+        return containerInfo;
+    }
+
+    /**
+     * Labels the container with its stack and alias, so that it can be found again using
+     * {@link GizmoDockerRuleBuilder#useExistingStacks(boolean)}, and with our session, so that
+     * it can be removed by the reaper if this JVM dies before tearing it down.
+     */
+    private ContainerConfig withLabels(GizmoDockerStack stack, String alias, ContainerConfig container) {
+        final GizmoSession session = GizmoSession.getInstance();
+        if (reaper) {
+            session.startReaper(reaperStaleAfterMs);
+        }
+        final Map<String, String> labels = new LinkedHashMap<>();
+        if (container.labels() != null) {
+            labels.putAll(container.labels());
+        }
+        labels.put(GizmoLabels.SESSION, session.getId());
+        labels.put(GizmoLabels.STACK, stack.getName());
+        labels.put(GizmoLabels.ALIAS, alias);
+        return container.toBuilder().labels(labels).build();
+    }
+
+    /**
+     * Attaches the container to our network, using its alias, and any additional aliases
+     * declared under {@link #NETWORK}, as DNS names.
+     *
+     * Containers which explicitly set a network mode are left as-is.
+     */
+    private ContainerConfig withNetwork(String alias, ContainerConfig container) throws DockerException, InterruptedException {
+        if (!useNetwork || (container.hostConfig() != null && container.hostConfig().networkMode() != null)) {
+            return container;
+        }
+        final String network = getNetworkName();
+
+        final Map<String, EndpointConfig> endpoints = new LinkedHashMap<>();
+        if (container.networkingConfig() != null && container.networkingConfig().endpointsConfig() != null) {
+            endpoints.putAll(container.networkingConfig().endpointsConfig());
+        }
+        final EndpointConfig declared = endpoints.remove(NETWORK);
+        final Set<String> aliases = new LinkedHashSet<>();
+        aliases.add(alias);
+        if (declared != null && declared.aliases() != null) {
+            aliases.addAll(declared.aliases());
+        }
+        endpoints.put(network, EndpointConfig.builder().aliases(ImmutableList.copyOf(aliases)).build());
+
+        final HostConfig.Builder hostConfig = container.hostConfig() != null ? container.hostConfig().toBuilder() : HostConfig.builder();
+        return container.toBuilder()
+                .hostConfig(hostConfig.networkMode(network).build())
+                .networkingConfig(ContainerConfig.NetworkingConfig.create(endpoints))
+                .build();
+    }
+
+    /**
+     * Retrieves the name of our network, creating it on first use.
+     *
+     * Pooled stacks outlive the stacker, so these share a network for the whole JVM instead.
+     */
+    public synchronized String getNetworkName() throws DockerException, InterruptedException {
+        if (networkName != null) {
+            return networkName;
+        }
+        if (useStackPool) {
+            networkName = StackPool.getInstance().getNetworkName(docker, dockerSupplier);
+        } else {
+            final String name = "gizmo-" + UUID.randomUUID().toString();
+            LOG.info("Creating network: {}", name);
+            docker.createNetwork(NetworkConfig.builder()
+                    .name(name)
+                    .driver("bridge")
+                    .checkDuplicate(true)
+                    .labels(ImmutableMap.of(GizmoLabels.SESSION, GizmoSession.getInstance().getId()))
+                    .build());
+            networkName = name;
+            ownsNetwork = true;
+        }
+        return networkName;
+    }
+
+    /**
+     * Networking configuration that declares additional DNS aliases for a container,
+     * on top of its own alias, i.e. for images that expect their peers under a specific name.
+     */
+    public static ContainerConfig.NetworkingConfig withNetworkAliases(String... aliases) {
+        return ContainerConfig.NetworkingConfig.create(ImmutableMap.of(NETWORK,
+                EndpointConfig.builder().aliases(ImmutableList.copyOf(aliases)).build()));
+    }
+
+    /**
+     * Finds the running container for the given alias.
+     *
+     * The running containers of a stack are retrieved using a single label-filtered call,
+     * which is cached. Containers that were not created by gizmo, and so aren't labeled,
+     * are matched by image. Either way, the same container is never attached twice, and the
+     * newest container is preferred when several match, i.e. when left over by a previous run.
+     */
+    private synchronized Container findExistingContainer(GizmoDockerStack stack, String alias, String image)
+            throws DockerException, InterruptedException {
+        Map<String, List<Container>> containersByAlias = existingContainersByStackName.get(stack.getName());
+        if (containersByAlias == null) {
+            containersByAlias = new HashMap<>();
+            for (Container container : docker.listContainers(DockerClient.ListContainersParam.withStatusRunning(),
+                    DockerClient.ListContainersParam.withLabel(GizmoLabels.STACK, stack.getName()))) {
+                containersByAlias.computeIfAbsent(container.labels().get(GizmoLabels.ALIAS), a -> new ArrayList<>()).add(container);
             }
+            existingContainersByStackName.put(stack.getName(), containersByAlias);
         }
 
-        stack.afterStack(this);
+        final List<Container> labeled = containersByAlias.getOrDefault(alias, Collections.emptyList()).stream()
+                .filter(c -> !attachedContainerIds.contains(c.id()))
+                .collect(Collectors.toList());
+        if (labeled.size() > 1) {
+            LOG.warn("Found {} running containers for {} in stack {}. Using the newest.", labeled.size(), alias, stack.getName());
+        }
+        Container container = labeled.stream().sorted(NEWEST_FIRST).findFirst().orElse(null);
+        if (container == null) {
+            if (unlabeledRunningContainers == null) {
+                unlabeledRunningContainers = docker.listContainers(DockerClient.ListContainersParam.withStatusRunning()).stream()
+                        .filter(c -> c.labels() == null || !c.labels().containsKey(GizmoLabels.STACK))
+                        .collect(Collectors.toList());
+            }
+            container = unlabeledRunningContainers.stream()
+                    .filter(c -> Objects.equals(image, c.image()) && !attachedContainerIds.contains(c.id()))
+                    .sorted(NEWEST_FIRST)
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Could not find running container for " + alias
+                            + " in stack " + stack.getName() + " with image: " + image));
+        }
+        attachedContainerIds.add(container.id());
+        return container;
     }
 
-    @Override
-    public void tearDown() {
-        // Kill and remove all of the containers we created
-        for (String containerId : createdContainerIds) {
+    /**
+     * Pulls the given image if it is not already present.
+     *
+     * Pulls are shared, so the image is only ever checked and pulled once
+     * per stacker, no matter how many containers use it.
+     */
+    private CompletableFuture<Void> pullImage(String image) {
+        return imagePullsByImage.computeIfAbsent(image, i -> CompletableFuture.runAsync(() -> {
             try {
-                LOG.info("Killing container with id: {}", containerId);
-                docker.killContainer(containerId);
+                docker.inspectImage(image);
+            } catch (ImageNotFoundException infe) {
+                LOG.info("Pulling image: {}", image);
                 try {
-                    LOG.info("Removing container with id: {}", containerId);
-                    docker.removeContainer(containerId);
-                } catch (Throwable t) {
-                    // If autoremove is set, removeContainer will throw an NPE
-                    LOG.info("Failed to remove container with id: {}. The container is likely already be removed.", containerId);
+                    docker.pull(image, progressHandler != null ? progressHandler : new LoggingProgressHandler(image));
+                } catch (DockerException | InterruptedException e) {
+                    throw new CompletionException(e);
                 }
+                LOG.info("Done pulling image: {}", image);
             } catch (DockerException | InterruptedException e) {
-                LOG.error("Failed to kill and/or remove container with id: {}", containerId, e);
+                throw new CompletionException(e);
+            }
+        }, getPullExecutor()));
+    }
+
+    private void awaitImage(String alias, String image) throws DockerException, InterruptedException {
+        final CompletableFuture<Void> pull = pullImage(image);
+        if (!pull.isDone()) {
+            LOG.info("Waiting for image for alias {}: {}", alias, image);
+        }
+        try {
+            pull.get();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), DockerException.class, InterruptedException.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private synchronized ExecutorService getPullExecutor() {
+        if (pullExecutor == null) {
+            pullExecutor = Executors.newFixedThreadPool(pullParallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("gizmo-pull-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return pullExecutor;
+    }
+
+    /**
+     * Blocks until the pending container with the given alias is created.
+     *
+     * When called from the configuration function of another container, we keep
+     * track of who is waiting on who, and fail instead of deadlocking if the
+     * containers are waiting on each other.
+     */
+    private ContainerInfo awaitPendingContainer(String alias, CompletableFuture<ContainerInfo> future) {
+        final String waitingAlias = creatingAlias.get();
+        if (waitingAlias != null) {
+            awaitedAliasByAlias.put(waitingAlias, alias);
+            final Set<String> visited = new LinkedHashSet<>();
+            visited.add(waitingAlias);
+            for (String next = alias; next != null; next = awaitedAliasByAlias.get(next)) {
+                if (!visited.add(next)) {
+                    awaitedAliasByAlias.remove(waitingAlias);
+                    throw new IllegalStateException(String.format("Cyclic container references detected while creating %s: %s",
+                            waitingAlias, visited));
+                }
+            }
+            LOG.info("{} is waiting for {} to be created.", waitingAlias, alias);
+        }
+
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(String.format("Container for alias %s could not be created.", alias), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } finally {
+            if (waitingAlias != null) {
+                awaitedAliasByAlias.remove(waitingAlias);
             }
         }
     }
 
+    @Override
+    public void tearDown() {
+        // Release our leases on any pooled stacks, the pool takes care of tearing these down
+        final List<StackLease> leases;
+        synchronized (stackLeases) {
+            leases = new ArrayList<>(stackLeases);
+            stackLeases.clear();
+        }
+        leases.forEach(StackLease::close);
+
+        // Kill and remove all of the containers we created
+        final Map<GizmoDockerStack, Set<String>> containerIdsByStack;
+        synchronized (createdContainerIdsByStack) {
+            containerIdsByStack = new LinkedHashMap<>(createdContainerIdsByStack);
+            createdContainerIdsByStack.clear();
+        }
+        final String network;
+        synchronized (this) {
+            network = ownsNetwork ? networkName : null;
+            networkName = null;
+            ownsNetwork = false;
+        }
+        if (containerIdsByStack.isEmpty() && network == null) {
+            return;
+        }
+        if (manifestPath != null) {
+            StackManifest.delete(manifestPath);
+        }
+
+        final Runnable removal = () -> {
+            removeContainers(containerIdsByStack);
+            if (network != null) {
+                removeNetwork(network);
+            }
+        };
+        if (!asyncTearDown) {
+            removal.run();
+            return;
+        }
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        registerShutdownHook();
+        pendingTearDowns.add(future);
+        future.whenComplete((v, t) -> pendingTearDowns.remove(future));
+        synchronized (this) {
+            asyncTearDownFuture = future;
+        }
+        new ThreadFactoryBuilder()
+                .setNameFormat("gizmo-async-teardown-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(() -> {
+                    try {
+                        removal.run();
+                    } finally {
+                        future.complete(null);
+                    }
+                })
+                .start();
+    }
+
+    /**
+     * Removes the containers of every stack, starting with the stacks that nothing depends on.
+     *
+     * The containers of a stack are all removed concurrently. Failures are logged, and
+     * do not prevent the remaining containers from being removed.
+     */
+    private void removeContainers(Map<GizmoDockerStack, Set<String>> containerIdsByStack) {
+        final ExecutorService executor = Executors.newFixedThreadPool(tearDownParallelism, new ThreadFactoryBuilder()
+                .setNameFormat("gizmo-teardown-container-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            final StackGraph<GizmoDockerStack> graph = StackGraph.of(new ArrayList<>(containerIdsByStack.keySet()));
+            new StackGraphExecutor(tearDownParallelism).executeInReverse(graph, stack -> {
+                final Set<String> containerIds = containerIdsByStack.getOrDefault(stack, Collections.emptySet());
+                CompletableFuture.allOf(containerIds.stream()
+                        .map(containerId -> CompletableFuture.runAsync(() -> removeContainer(containerId), executor))
+                        .toArray(CompletableFuture[]::new))
+                    .join();
+            });
+        } catch (Exception e) {
+            LOG.error("Failed to remove one or more containers.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void removeNetwork(String network) {
+        try {
+            LOG.info("Removing network: {}", network);
+            docker.removeNetwork(network);
+        } catch (DockerException e) {
+            LOG.error("Failed to remove network: {}", network, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void removeContainer(String containerId) {
+        try {
+            LOG.info("Killing and removing container with id: {}", containerId);
+            docker.removeContainer(containerId, DockerClient.RemoveContainerParam.forceKill());
+        } catch (ContainerNotFoundException e) {
+            LOG.info("Failed to remove container with id: {}. The container is likely already be removed.", containerId);
+        } catch (DockerException e) {
+            LOG.error("Failed to kill and/or remove container with id: {}", containerId, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            // If autoremove is set, removeContainer may throw an NPE
+            LOG.info("Failed to remove container with id: {}. The container is likely already be removed.", containerId);
+        }
+    }
+
+    private static synchronized void registerShutdownHook() {
+        if (!shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(GizmoDockerStacker::awaitPendingTearDowns, "gizmo-teardown-shutdown"));
+            shutdownHookRegistered = true;
+        }
+    }
+
+    private static void awaitPendingTearDowns() {
+        final List<CompletableFuture<Void>> pending = new ArrayList<>(pendingTearDowns);
+        if (pending.isEmpty()) {
+            return;
+        }
+        LOG.info("Waiting for {} tear down(s) to complete.", pending.size());
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(MAX_TEAR_DOWN_WAIT_ON_EXIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.warn("Tear down did not complete before exiting. Some containers may not have been removed.", e);
+        }
+    }
+
+    @Override
+    public GizmoStackListeners getListeners() {
+        return listeners;
+    }
+
     public Set<String> getAliases() {
-        return containerInfoByAlias.keySet();
+        if (manifestContainerIdsByAlias.isEmpty()) {
+            return containerInfoByAlias.keySet();
+        }
+        final Set<String> aliases = new LinkedHashSet<>(manifestContainerIdsByAlias.keySet());
+        aliases.addAll(containerInfoByAlias.keySet());
+        return aliases;
     }
 
+    /**
+     * Retrieves the meta-data for the container with the given alias.
+     *
+     * If the container is still being created, this call blocks
+     * until it is available.
+     */
     public ContainerInfo getContainerInfo(final String alias) {
+        final CompletableFuture<ContainerInfo> pending = pendingContainersByAlias.get(alias);
+        if (pending != null && !pending.isDone()) {
+            return awaitPendingContainer(alias, pending);
+        }
+        final String manifestContainerId = manifestContainerIdsByAlias.get(alias);
+        if (manifestContainerId != null) {
+            // Attached using the manifest, inspect on demand
+            return containerInfoByAlias.computeIfAbsent(alias, a -> {
+                try {
+                    return docker.inspectContainer(manifestContainerId);
+                } catch (DockerException | InterruptedException e) {
+                    throw Throwables.propagate(e);
+                }
+            });
+        }
         return containerInfoByAlias.get(alias);
     }
 
+    /**
+     * Completes once the container with the given alias reports healthy,
+     * as determined by the HEALTHCHECK of its image or configuration.
+     *
+     * This is driven by the Docker events stream, so no polling is involved.
+     */
+    public CompletableFuture<Void> whenHealthy(String alias) {
+        final ContainerInfo info = getContainerInfo(alias);
+        if (info == null) {
+            throw new IllegalArgumentException(String.format("No container found with alias: %s. Available containers include: %s",
+                    alias, containerInfoByAlias.keySet()));
+        }
+        return getEvents().whenHealthy(info.id());
+    }
+
+    /**
+     * Blocks until all of the containers with the given aliases report healthy.
+     *
+     * The timeout is capped by the stack's {@link Deadline}, if any.
+     *
+     * @see #whenHealthy(String)
+     */
+    public void awaitHealthy(long timeout, TimeUnit unit, String... aliases) {
+        final Map<String, CompletableFuture<Void>> futuresByAlias = new LinkedHashMap<>();
+        for (String alias : aliases) {
+            futuresByAlias.put(alias, whenHealthy(alias));
+        }
+        final Deadline deadline = Deadline.earliest(Deadline.after(timeout, unit), Deadline.current());
+        try {
+            CompletableFuture.allOf(futuresByAlias.values().toArray(new CompletableFuture<?>[0]))
+                .get(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            final List<String> unhealthy = futuresByAlias.entrySet().stream()
+                    .filter(entry -> !entry.getValue().isDone())
+                    .map(Entry::getKey)
+                    .collect(Collectors.toList());
+            throw new IllegalStateException(String.format("Timed out waiting for %s to be healthy.", unhealthy));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } finally {
+            futuresByAlias.values().forEach(f -> f.cancel(false));
+        }
+    }
+
+    /**
+     * Completes with the first line of the logs of the container with the given alias
+     * that matches the given regular expression.
+     *
+     * The logs are scanned from the beginning, so lines printed before the call are not missed.
+     */
+    public CompletableFuture<String> whenLogMatches(String alias, String regex) {
+        final ContainerInfo info = getContainerInfo(alias);
+        if (info == null) {
+            throw new IllegalArgumentException(String.format("No container found with alias: %s. Available containers include: %s",
+                    alias, containerInfoByAlias.keySet()));
+        }
+        return ContainerLogFollower.whenMatches(docker, info.id(), Pattern.compile(regex));
+    }
+
+    /**
+     * Blocks until a line of the logs of the container with the given alias matches
+     * the given regular expression.
+     *
+     * The timeout is capped by the stack's {@link Deadline}, if any.
+     *
+     * @see #whenLogMatches(String, String)
+     */
+    public String awaitLogMatches(long timeout, TimeUnit unit, String alias, String regex) {
+        final CompletableFuture<String> future = whenLogMatches(alias, regex);
+        final Deadline deadline = Deadline.earliest(Deadline.after(timeout, unit), Deadline.current());
+        try {
+            final String line = future.get(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+            LOG.info("Logs of {} matched {}: {}", alias, regex, line);
+            return line;
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(String.format("Timed out waiting for the logs of %s to match: %s", alias, regex));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } finally {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Waiting rule that blocks until a line of the logs of the container with the given
+     * alias matches the given regular expression.
+     */
+    public static Consumer<GizmoDockerStacker> waitForLog(long timeout, TimeUnit unit, String alias, String regex) {
+        return stacker -> stacker.awaitLogMatches(timeout, unit, alias, regex);
+    }
+
+    /**
+     * Waiting rule that blocks until all of the containers with the given aliases report healthy.
+     */
+    public static Consumer<GizmoDockerStacker> waitForHealthy(long timeout, TimeUnit unit, String... aliases) {
+        return stacker -> stacker.awaitHealthy(timeout, unit, aliases);
+    }
+
     public InetSocketAddress getServiceAddress(String alias, int port) {
         return getServiceAddress(alias, port, "tcp");
     }
 
     public InetSocketAddress getServiceAddress(String alias, int port, String type) {
+        final InetSocketAddress manifestAddress = manifestAddressesByKey.get(alias + ":" + port + "/" + type);
+        if (manifestAddress != null) {
+            return manifestAddress;
+        }
         final ContainerInfo info = getContainerInfo(alias);
         if (info == null) {
             throw new IllegalArgumentException(String.format("No container found with alias: %s. Available containers include: ",
@@ -182,21 +1246,63 @@ public class GizmoDockerStacker implements GizmoStacker<GizmoDockerStack> {
             throw new IllegalArgumentException(String.format("No bindings found for port %s on alias: %s. Available ports include: %s",
                     portKey, alias, info.networkSettings().ports().keySet()));
         }
-        final PortBinding binding = bindings.iterator().next();
+        return toServiceAddress(bindings.iterator().next());
+    }
+
+    private InetSocketAddress toServiceAddress(PortBinding binding) {
         final String host = "0.0.0.0".equals(binding.hostIp()) ? docker.getHost() : binding.hostIp();
         return new InetSocketAddress(host, Integer.valueOf(binding.hostPort()));
     }
 
     @Override
     public void close() throws IOException {
+        synchronized (logFollowers) {
+            logFollowers.forEach(ContainerLogFollower::close);
+            logFollowers.clear();
+        }
+        synchronized (this) {
+            if (pullExecutor != null) {
+                pullExecutor.shutdownNow();
+            }
+            if (events != null) {
+                events.close();
+            }
+        }
+
         if (docker == null) {
             LOG.warn("Docker client instance is null. Skipping tear down.");
             return;
         }
 
+        final CompletableFuture<Void> tearDown;
+        synchronized (this) {
+            tearDown = asyncTearDownFuture;
+        }
+        if (tearDown != null && !tearDown.isDone()) {
+            // The client is still being used to remove the containers
+            final DockerClient client = docker;
+            tearDown.whenComplete((v, t) -> client.close());
+            return;
+        }
+
         docker.close();
     }
 
+    private synchronized ContainerEventBus getEvents() {
+        if (events == null) {
+            events = new ContainerEventBus(docker);
+        }
+        return events;
+    }
+
+    private static DockerClient newDefaultClient() {
+        try {
+            return DefaultDockerClient.fromEnv().build();
+        } catch (DockerCertificateException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
     protected DockerClient getDocker() {
         return docker;
     }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker;
+
+/**
+ * Labels applied to the Docker resources created by gizmo.
+ */
+public final class GizmoLabels {
+    private static final String PREFIX = "org.opennms.gizmo.";
+
+    /**
+     * Identifies the JVM that created the resource.
+     *
+     * @see org.opennms.gizmo.docker.reaper.GizmoSession
+     */
+    public static final String SESSION = PREFIX + "session";
+
+    /**
+     * Name of the stack the container belongs to.
+     *
+     * @see GizmoDockerStack#getName()
+     */
+    public static final String STACK = PREFIX + "stack";
+
+    /**
+     * Alias of the container within its stack.
+     */
+    public static final String ALIAS = PREFIX + "alias";
+
+    private GizmoLabels() { }
+}
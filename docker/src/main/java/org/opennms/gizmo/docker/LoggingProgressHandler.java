@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.spotify.docker.client.ProgressHandler;
+import com.spotify.docker.client.messages.ProgressMessage;
+
+/**
+ * Logs the progress of an image pull.
+ *
+ * Status changes for every layer are logged at INFO, while the
+ * byte-level progress updates are only logged at DEBUG.
+ */
+public class LoggingProgressHandler implements ProgressHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingProgressHandler.class);
+
+    private final String image;
+    private final Map<String, String> statusByLayer = new ConcurrentHashMap<>();
+
+    public LoggingProgressHandler(String image) {
+        this.image = Objects.requireNonNull(image);
+    }
+
+    @Override
+    public void progress(ProgressMessage message) {
+        if (message.error() != null) {
+            LOG.warn("{}: {}", image, message.error());
+            return;
+        }
+
+        final String layer = message.id();
+        final String status = message.status();
+        if (status == null) {
+            return;
+        } else if (layer == null) {
+            LOG.info("{}: {}", image, status);
+        } else if (!status.equals(statusByLayer.put(layer, status))) {
+            LOG.info("{}: {} {}", image, layer, status);
+        } else if (message.progress() != null) {
+            LOG.debug("{}: {} {} {}", image, layer, status, message.progress());
+        }
+    }
+}
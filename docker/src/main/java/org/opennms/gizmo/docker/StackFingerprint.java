@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map.Entry;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.spotify.docker.client.messages.ContainerConfig;
+
+/**
+ * Computes fingerprints used to determine whether or not two stacks
+ * would end up with the same configuration.
+ */
+public class StackFingerprint {
+    private static final Logger LOG = LoggerFactory.getLogger(StackFingerprint.class);
+
+    /**
+     * Fingerprints the stack using its type and the resolved configuration
+     * of all of its containers.
+     *
+     * Configurations that reference other containers, i.e. their addresses,
+     * can't be resolved before the stack is created. Since two such stacks
+     * can't be told apart, these stacks have no fingerprint.
+     *
+     * @return the fingerprint, or null if the configuration of any of the
+     * containers can't be resolved
+     */
+    public static String of(GizmoDockerStack stack, GizmoDockerStacker stacker) {
+        final Hasher hasher = Hashing.sha256().newHasher()
+                .putString(stack.getClass().getName(), StandardCharsets.UTF_8);
+        for (Entry<String, Function<GizmoDockerStacker, ContainerConfig>> entry : stack.getContainersByAlias().entrySet()) {
+            final ContainerConfig config;
+            try {
+                config = entry.getValue().apply(stacker);
+            } catch (RuntimeException e) {
+                LOG.debug("Failed to resolve the configuration of {}. The stack has no fingerprint.", entry.getKey(), e);
+                return null;
+            }
+            hasher.putString(entry.getKey(), StandardCharsets.UTF_8)
+                .putString(config.toString(), StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.events;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.Event;
+
+/**
+ * Dispatches the container events from the Docker events stream to
+ * listeners registered for specific containers.
+ *
+ * A single stream is opened, on first use, and is consumed by a daemon thread.
+ */
+public class ContainerEventBus implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerEventBus.class);
+
+    public static final String HEALTHY = "healthy";
+    public static final String HEALTH_STATUS_HEALTHY = "health_status: " + HEALTHY;
+    public static final String DIE = "die";
+    public static final String OOM = "oom";
+
+    public interface Listener {
+        void onEvent(Event event);
+
+        /**
+         * Called if the events stream fails, after which no further events are delivered.
+         */
+        default void onStreamFailure(Throwable t) { }
+    }
+
+    /**
+     * Handle used to unregister a listener.
+     */
+    public interface Subscription extends Closeable {
+        @Override
+        void close();
+    }
+
+    private final DockerClient docker;
+    private final Map<String, List<Listener>> listenersByContainerId = new ConcurrentHashMap<>();
+    private Iterator<Event> stream;
+    private Throwable streamFailure;
+    private volatile boolean closed = false;
+
+    public ContainerEventBus(DockerClient docker) {
+        this.docker = Objects.requireNonNull(docker);
+    }
+
+    /**
+     * Registers a listener for the events of the given container.
+     *
+     * Events are delivered on the thread consuming the stream, so listeners should return quickly.
+     */
+    public Subscription subscribe(String containerId, Listener listener) throws DockerException, InterruptedException {
+        listenersByContainerId.compute(containerId, (id, listeners) -> {
+            final List<Listener> updated = listeners != null ? listeners : new CopyOnWriteArrayList<>();
+            updated.add(listener);
+            return updated;
+        });
+        final Throwable failure = start();
+        if (failure != null) {
+            unsubscribe(containerId, listener);
+            listener.onStreamFailure(failure);
+        }
+        return () -> unsubscribe(containerId, listener);
+    }
+
+    private void unsubscribe(String containerId, Listener listener) {
+        // Drop the container's list along with its last listener
+        listenersByContainerId.computeIfPresent(containerId, (id, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    Set<String> getSubscribedContainerIds() {
+        return listenersByContainerId.keySet();
+    }
+
+    /**
+     * Completes once the given container reports healthy.
+     *
+     * The container's current state is checked after subscribing to the events,
+     * so a transition can't be missed. The future fails if the container does not
+     * define a health check.
+     */
+    public CompletableFuture<Void> whenHealthy(String containerId) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            final Subscription subscription = subscribe(containerId, new Listener() {
+                @Override
+                public void onEvent(Event event) {
+                    if (HEALTH_STATUS_HEALTHY.equals(event.action())) {
+                        future.complete(null);
+                    }
+                }
+
+                @Override
+                public void onStreamFailure(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            future.whenComplete((v, t) -> subscription.close());
+
+            final ContainerState.Health health = docker.inspectContainer(containerId).state().health();
+            if (health == null) {
+                future.completeExceptionally(new IllegalStateException("Container with id " + containerId
+                        + " does not define a health check."));
+            } else if (HEALTHY.equals(health.status())) {
+                future.complete(null);
+            }
+        } catch (DockerException | InterruptedException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private synchronized Throwable start() throws DockerException, InterruptedException {
+        if (closed) {
+            return new IllegalStateException("The event bus is closed.");
+        } else if (stream != null || streamFailure != null) {
+            return streamFailure;
+        }
+
+        stream = openStream();
+        new ThreadFactoryBuilder()
+                .setNameFormat("gizmo-docker-events-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(() -> dispatch(stream))
+                .start();
+        return null;
+    }
+
+    /**
+     * Opens the stream of container events, which is closed along with the bus if it is {@link Closeable}.
+     */
+    Iterator<Event> openStream() throws DockerException, InterruptedException {
+        return docker.events(DockerClient.EventsParam.type(Event.Type.CONTAINER));
+    }
+
+    private void dispatch(Iterator<Event> stream) {
+        try {
+            while (stream.hasNext()) {
+                final Event event = stream.next();
+                final String containerId = event.actor() != null ? event.actor().id() : event.id();
+                if (containerId == null) {
+                    continue;
+                }
+                final List<Listener> listeners = listenersByContainerId.get(containerId);
+                if (listeners == null) {
+                    continue;
+                }
+                LOG.debug("Dispatching event {} for container with id {}.", event.action(), containerId);
+                for (Listener listener : listeners) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException e) {
+                        LOG.warn("Listener failed to handle event: {}", event, e);
+                    }
+                }
+            }
+            if (!closed) {
+                onStreamFailure(new IllegalStateException("Docker events stream ended unexpectedly."));
+            }
+        } catch (RuntimeException e) {
+            if (!closed) {
+                LOG.warn("Docker events stream failed.", e);
+                onStreamFailure(e);
+            }
+        }
+    }
+
+    private void onStreamFailure(Throwable t) {
+        synchronized (this) {
+            streamFailure = t;
+        }
+        listenersByContainerId.values().forEach(listeners -> listeners.forEach(l -> l.onStreamFailure(t)));
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (stream instanceof Closeable) {
+            try {
+                ((Closeable)stream).close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the Docker events stream.", e);
+            }
+        }
+        onStreamFailure(new IllegalStateException("The event bus was closed."));
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.logs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.DockerException;
+
+/**
+ * Streams the stdout and stderr of a container to an SLF4J logger named after its alias.
+ *
+ * The stream is read by one thread, and the lines are logged by another, through a
+ * bounded buffer, so a slow appender never holds up the container. Lines are dropped,
+ * and counted, when the buffer is full.
+ */
+public class ContainerLogFollower implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerLogFollower.class);
+
+    public static final String LOGGER_PREFIX = "org.opennms.gizmo.docker.logs.";
+    public static final int DEFAULT_BUFFER_SIZE = 10000;
+
+    private static class Line {
+        private final LogMessage.Stream stream;
+        private final String text;
+
+        private Line(LogMessage.Stream stream, String text) {
+            this.stream = stream;
+            this.text = text;
+        }
+    }
+
+    private final DockerClient docker;
+    private final String containerId;
+    private final Logger logger;
+    private final BlockingQueue<Line> buffer;
+    private final AtomicLong droppedLines = new AtomicLong();
+    private volatile LogStream stream;
+    private volatile boolean closed = false;
+
+    public ContainerLogFollower(DockerClient docker, String containerId, String alias, int bufferSize) {
+        this.docker = Objects.requireNonNull(docker);
+        this.containerId = Objects.requireNonNull(containerId);
+        this.logger = LoggerFactory.getLogger(LOGGER_PREFIX + alias);
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    /**
+     * Starts following the logs, from the beginning.
+     */
+    public void start() {
+        final ThreadFactoryBuilder threads = new ThreadFactoryBuilder().setDaemon(true);
+        threads.setNameFormat("gizmo-logs-read-" + containerId.substring(0, Math.min(12, containerId.length())))
+            .build()
+            .newThread(this::read)
+            .start();
+        threads.setNameFormat("gizmo-logs-write-" + containerId.substring(0, Math.min(12, containerId.length())))
+            .build()
+            .newThread(this::write)
+            .start();
+    }
+
+    private void read() {
+        try {
+            stream = docker.logs(containerId, DockerClient.LogsParam.follow(),
+                    DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr());
+            if (closed) {
+                stream.close();
+                return;
+            }
+            forEachLine(stream, (s, text) -> {
+                if (!buffer.offer(new Line(s, text))) {
+                    droppedLines.incrementAndGet();
+                }
+                return false;
+            });
+        } catch (DockerException | RuntimeException e) {
+            if (!closed) {
+                LOG.warn("Failed to follow the logs of container with id: {}", containerId, e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+        }
+    }
+
+    private void write() {
+        try {
+            while (!closed || !buffer.isEmpty()) {
+                final Line line = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    continue;
+                }
+                // The output is never used as the format string, since it may contain {}
+                if (line.stream == LogMessage.Stream.STDERR) {
+                    logger.warn("{}", line.text);
+                } else {
+                    logger.info("{}", line.text);
+                }
+                final long dropped = droppedLines.getAndSet(0);
+                if (dropped > 0) {
+                    logger.warn("Dropped {} lines.", dropped);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final LogStream s = stream;
+        if (s != null) {
+            s.close();
+        }
+    }
+
+    /**
+     * Completes with the first line, from the beginning of the container's logs,
+     * that matches the given pattern.
+     *
+     * The logs are read using a dedicated stream, so lines printed before the call
+     * are not missed. Cancelling the future closes the stream.
+     */
+    @SuppressWarnings("try")
+    public static CompletableFuture<String> whenMatches(DockerClient docker, String containerId, Pattern pattern) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        new ThreadFactoryBuilder()
+            .setNameFormat("gizmo-logs-match-%d")
+            .setDaemon(true)
+            .build()
+            .newThread(() -> {
+                try (LogStream logs = docker.logs(containerId, DockerClient.LogsParam.follow(),
+                        DockerClient.LogsParam.stdout(), DockerClient.LogsParam.stderr())) {
+                    // Closing the stream unblocks the reader once the future is cancelled
+                    future.whenComplete((v, t) -> logs.close());
+                    final Predicate<String> matches = pattern.asPredicate();
+                    forEachLine(logs, (s, text) -> {
+                        if (matches.test(text)) {
+                            future.complete(text);
+                        }
+                        return future.isDone();
+                    });
+                    future.completeExceptionally(new IllegalStateException(String.format(
+                            "Logs of container with id %s ended without matching: %s", containerId, pattern)));
+                } catch (DockerException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(e);
+                }
+            })
+            .start();
+        return future;
+    }
+
+    @FunctionalInterface
+    interface LineHandler {
+        /**
+         * @return true to stop reading
+         */
+        boolean onLine(LogMessage.Stream stream, String line);
+    }
+
+    /**
+     * Splits the messages into lines, which may span several messages, per stream.
+     */
+    static void forEachLine(LogStream logs, LineHandler handler) {
+        final Map<LogMessage.Stream, ByteArrayOutputStream> partialLines = new EnumMap<>(LogMessage.Stream.class);
+        while (logs.hasNext()) {
+            final LogMessage message = logs.next();
+            final ByteBuffer content = message.content();
+            final ByteArrayOutputStream partial = partialLines.computeIfAbsent(message.stream(), s -> new ByteArrayOutputStream());
+            while (content.hasRemaining()) {
+                final byte b = content.get();
+                if (b != '\n') {
+                    partial.write(b);
+                    continue;
+                }
+                String line = new String(partial.toByteArray(), StandardCharsets.UTF_8);
+                partial.reset();
+                if (line.endsWith("\r")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                if (handler.onLine(message.stream(), line)) {
+                    return;
+                }
+            }
+        }
+        for (Map.Entry<LogMessage.Stream, ByteArrayOutputStream> partial : partialLines.entrySet()) {
+            if (partial.getValue().size() > 0
+                    && handler.onLine(partial.getKey(), new String(partial.getValue().toByteArray(), StandardCharsets.UTF_8))) {
+                return;
+            }
+        }
+    }
+}
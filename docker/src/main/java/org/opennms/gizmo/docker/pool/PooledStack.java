@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.pool;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.spotify.docker.client.messages.ContainerInfo;
+
+/**
+ * A stack that has passed its waiting rules and is kept alive by the {@link StackPool}.
+ */
+public class PooledStack {
+
+    private final String fingerprint;
+    private final Set<String> containerIds;
+    private final Map<String, ContainerInfo> containerInfoByAlias;
+
+    public PooledStack(String fingerprint, Set<String> containerIds, Map<String, ContainerInfo> containerInfoByAlias) {
+        this.fingerprint = Objects.requireNonNull(fingerprint);
+        this.containerIds = Collections.unmodifiableSet(new LinkedHashSet<>(containerIds));
+        this.containerInfoByAlias = Collections.unmodifiableMap(new LinkedHashMap<>(containerInfoByAlias));
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public Set<String> getContainerIds() {
+        return containerIds;
+    }
+
+    public Map<String, ContainerInfo> getContainerInfoByAlias() {
+        return containerInfoByAlias;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PooledStack[fingerprint=%s, aliases=%s]", fingerprint, containerInfoByAlias.keySet());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.pool;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A reference to a {@link PooledStack}. The stack is kept alive for as
+ * long as there is at least one lease on it that has not been closed.
+ */
+public class StackLease implements Closeable {
+
+    private final StackPool pool;
+    private final PooledStack stack;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    protected StackLease(StackPool pool, PooledStack stack) {
+        this.pool = pool;
+        this.stack = stack;
+    }
+
+    public PooledStack getStack() {
+        return stack;
+    }
+
+    /**
+     * Releases the lease. Subsequent calls have no effect.
+     */
+    @Override
+    public void close() {
+        if (released.compareAndSet(false, true)) {
+            pool.release(stack);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StackLease[stack=%s, released=%s]", stack, released.get());
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.pool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.opennms.gizmo.docker.GizmoLabels;
+import org.opennms.gizmo.docker.reaper.GizmoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.NetworkConfig;
+
+/**
+ * A JVM-wide pool of warm stacks.
+ *
+ * Stacks are identified by their fingerprint and are shared between all of
+ * the rules in the JVM that lease the same fingerprint. Once the last lease
+ * on a stack is released, the stack is kept around for an idle TTL, after
+ * which its containers are removed. All of the stacks remaining in the pool
+ * are removed when the JVM shuts down.
+ *
+ * The clients of the rules that lease the stacks are closed along with the rules,
+ * so the stacks are torn down using new clients, created by the supplier of the
+ * rule that created them.
+ */
+public class StackPool {
+    private static final Logger LOG = LoggerFactory.getLogger(StackPool.class);
+
+    public static final long DEFAULT_IDLE_TTL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final StackPool INSTANCE = new StackPool();
+
+    @FunctionalInterface
+    public interface StackFactory {
+        PooledStack create() throws Exception;
+    }
+
+    private static class Entry {
+        private final String fingerprint;
+        private final long idleTtlMs;
+        private final Supplier<DockerClient> clients;
+        private final CompletableFuture<PooledStack> stack = new CompletableFuture<>();
+        private int refCount = 0;
+        private ScheduledFuture<?> eviction;
+
+        private Entry(String fingerprint, long idleTtlMs, Supplier<DockerClient> clients) {
+            this.fingerprint = fingerprint;
+            this.idleTtlMs = idleTtlMs;
+            this.clients = clients;
+        }
+    }
+
+    private final Map<String, Entry> entriesByFingerprint = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("gizmo-stack-pool-%d")
+            .setDaemon(true)
+            .build());
+    private boolean shutdownHookRegistered = false;
+    private String networkName;
+    private Supplier<DockerClient> networkClients;
+
+    public static StackPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Leases the stack with the given fingerprint.
+     *
+     * If the pool does not already contain a matching stack, the factory is
+     * used to create one. Concurrent callers leasing the same fingerprint
+     * wait for the stack to be created instead of creating their own.
+     *
+     * @param fingerprint identifies the stack
+     * @param idleTtlMs how long the stack is kept once it is no longer leased
+     * @param clients creates the clients used to tear down the stack
+     * @param factory used to create the stack when missing
+     * @return the lease
+     * @throws Exception if the stack could not be created
+     */
+    public StackLease lease(String fingerprint, long idleTtlMs, Supplier<DockerClient> clients, StackFactory factory) throws Exception {
+        final Entry entry;
+        final boolean shouldCreate;
+        synchronized (this) {
+            registerShutdownHook();
+            final Entry existingEntry = entriesByFingerprint.get(fingerprint);
+            shouldCreate = existingEntry == null;
+            entry = shouldCreate ? new Entry(fingerprint, idleTtlMs, clients) : existingEntry;
+            entriesByFingerprint.put(fingerprint, entry);
+            entry.refCount++;
+            if (entry.eviction != null) {
+                entry.eviction.cancel(false);
+                entry.eviction = null;
+            }
+        }
+
+        if (shouldCreate) {
+            LOG.info("No warm stack with fingerprint {} in the pool. Creating it.", fingerprint);
+            try {
+                entry.stack.complete(factory.create());
+            } catch (Throwable t) {
+                synchronized (this) {
+                    entriesByFingerprint.remove(fingerprint, entry);
+                }
+                entry.stack.completeExceptionally(t);
+                throw t;
+            }
+        } else {
+            LOG.info("Reusing warm stack with fingerprint {} from the pool.", fingerprint);
+        }
+
+        try {
+            return new StackLease(this, entry.stack.get());
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Retrieves the name of the network shared by all of the pooled stacks, creating it on first use.
+     *
+     * The network is removed along with the stacks when the JVM shuts down,
+     * using a client created by the given supplier.
+     */
+    public synchronized String getNetworkName(DockerClient docker, Supplier<DockerClient> clients) throws DockerException, InterruptedException {
+        if (networkName == null) {
+            registerShutdownHook();
+            final String name = "gizmo-pool-" + GizmoSession.getInstance().getId();
+            LOG.info("Creating network for pooled stacks: {}", name);
+            docker.createNetwork(NetworkConfig.builder()
+                    .name(name)
+                    .driver("bridge")
+                    .checkDuplicate(true)
+                    .labels(ImmutableMap.of(GizmoLabels.SESSION, GizmoSession.getInstance().getId()))
+                    .build());
+            networkName = name;
+            networkClients = clients;
+        }
+        return networkName;
+    }
+
+    protected synchronized void release(PooledStack stack) {
+        final Entry entry = entriesByFingerprint.get(stack.getFingerprint());
+        if (entry == null) {
+            return;
+        }
+
+        entry.refCount--;
+        if (entry.refCount <= 0) {
+            LOG.info("{} is no longer leased. It will be torn down in {}ms unless it is leased again.",
+                    stack, entry.idleTtlMs);
+            entry.eviction = scheduler.schedule(() -> evictIfIdle(entry), entry.idleTtlMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void evictIfIdle(Entry entry) {
+        synchronized (this) {
+            if (entry.refCount > 0 || !entriesByFingerprint.remove(entry.fingerprint, entry)) {
+                return;
+            }
+        }
+        tearDown(entry);
+    }
+
+    void tearDownAll() {
+        final List<Entry> entries;
+        final String network;
+        final Supplier<DockerClient> clients;
+        synchronized (this) {
+            entries = new ArrayList<>(entriesByFingerprint.values());
+            entriesByFingerprint.clear();
+            network = networkName;
+            clients = networkClients;
+            networkName = null;
+            networkClients = null;
+        }
+        entries.forEach(this::tearDown);
+
+        if (network != null) {
+            try (DockerClient docker = clients.get()) {
+                docker.removeNetwork(network);
+            } catch (DockerException | RuntimeException e) {
+                LOG.info("Failed to remove network: {}", network, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void tearDown(Entry entry) {
+        final PooledStack stack = entry.stack.getNow(null);
+        if (stack == null) {
+            return;
+        }
+
+        LOG.info("Tearing down pooled stack: {}", stack);
+        try (DockerClient docker = entry.clients.get()) {
+            for (String containerId : stack.getContainerIds()) {
+                try {
+                    docker.removeContainer(containerId, DockerClient.RemoveContainerParam.forceKill());
+                } catch (DockerException e) {
+                    LOG.info("Failed to remove container with id: {}. The container is likely already be removed.", containerId);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Failed to create Docker client. Pooled containers will not be removed.", e);
+        }
+    }
+
+    private void registerShutdownHook() {
+        if (!shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::tearDownAll, "gizmo-stack-pool-shutdown"));
+            shutdownHookRegistered = true;
+        }
+    }
+}
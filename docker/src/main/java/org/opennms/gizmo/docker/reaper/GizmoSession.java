@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.reaper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Identifies the current JVM to the {@link Reaper}.
+ *
+ * Every resource created by gizmo is labeled with the session id. Once the reaper
+ * is started, the session touches a heartbeat file at a fixed interval. If the JVM
+ * dies without shutting down cleanly, the heartbeat goes stale and the reaper
+ * removes all of the resources labeled with the session id.
+ *
+ * On a clean shutdown the session is released, and the reaper exits without removing
+ * anything, so that resources kept using skipTearDown() are left alone.
+ */
+public class GizmoSession {
+    private static final Logger LOG = LoggerFactory.getLogger(GizmoSession.class);
+
+    public static final String DISABLE_REAPER_PROPERTY = "gizmo.reaper.disabled";
+    public static final String STALE_AFTER_PROPERTY = "gizmo.reaper.stale.after.ms";
+
+    public static final long HEARTBEAT_INTERVAL_MS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_STALE_AFTER_MS = TimeUnit.SECONDS.toMillis(30);
+    protected static final String RELEASED = "released";
+
+    private static final GizmoSession INSTANCE = new GizmoSession();
+
+    private final String id = UUID.randomUUID().toString();
+    private final Path heartbeat = Paths.get(System.getProperty("java.io.tmpdir"), "gizmo", id + ".heartbeat");
+    private boolean reaperStarted = false;
+
+    public static GizmoSession getInstance() {
+        return INSTANCE;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the time after which the heartbeat is considered stale, as set by the
+     * {@value #STALE_AFTER_PROPERTY} system property, or {@link #DEFAULT_STALE_AFTER_MS}
+     */
+    public static long getDefaultStaleAfterMs() {
+        return Long.getLong(STALE_AFTER_PROPERTY, DEFAULT_STALE_AFTER_MS);
+    }
+
+    /**
+     * Starts the reaper for this session, if it has not already been started.
+     *
+     * The reaper is shared by all of the rules in the JVM, so the staleness
+     * of the first rule to start it applies.
+     * Failures are logged, but otherwise ignored, since the reaper is only a safety net.
+     *
+     * @param staleAfterMs time without heartbeat after which the JVM is considered dead
+     */
+    public synchronized void startReaper(long staleAfterMs) {
+        if (reaperStarted || Boolean.getBoolean(DISABLE_REAPER_PROPERTY)) {
+            return;
+        }
+        reaperStarted = true;
+
+        try {
+            Files.createDirectories(heartbeat.getParent());
+            Files.write(heartbeat, new byte[0]);
+            launchReaper(staleAfterMs);
+        } catch (IOException e) {
+            LOG.warn("Failed to start the reaper. Containers will not be removed if the JVM dies.", e);
+            return;
+        }
+
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("gizmo-heartbeat-%d")
+                .setDaemon(true)
+                .build());
+        scheduler.scheduleAtFixedRate(this::beat, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::release, "gizmo-session-shutdown"));
+    }
+
+    private void launchReaper(long staleAfterMs) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx32m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Reaper.class.getName());
+        command.add(id);
+        command.add(heartbeat.toString());
+        command.add(Long.toString(staleAfterMs));
+
+        final File log = heartbeat.resolveSibling(id + ".reaper.log").toFile();
+        new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start()
+                .getOutputStream()
+                .close();
+        LOG.info("Started reaper for session {}. Logging to: {}", id, log);
+    }
+
+    private void beat() {
+        try {
+            Files.setLastModifiedTime(heartbeat, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOG.warn("Failed to update heartbeat: {}", heartbeat, e);
+        }
+    }
+
+    private void release() {
+        try {
+            Files.write(heartbeat, RELEASED.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.warn("Failed to release session: {}", id, e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.reaper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.opennms.gizmo.docker.GizmoLabels;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.spotify.docker.client.DefaultDockerClient;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerCertificateException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.Network;
+
+/**
+ * Removes the containers and networks of a {@link GizmoSession}
+ * once its heartbeat stops. Anonymous volumes are removed along
+ * with their containers.
+ *
+ * Runs in its own JVM, so that it outlives test JVMs which are killed.
+ */
+public class Reaper {
+    private static final Logger LOG = LoggerFactory.getLogger(Reaper.class);
+
+    private final String sessionId;
+    private final Path heartbeat;
+    private final long staleAfterMs;
+
+    enum Heartbeat {
+        ALIVE,
+        RELEASED,
+        STALE,
+        MISSING
+    }
+
+    public Reaper(String sessionId, Path heartbeat, long staleAfterMs) {
+        this.sessionId = sessionId;
+        this.heartbeat = heartbeat;
+        this.staleAfterMs = staleAfterMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("Usage: Reaper <session-id> <heartbeat-file> <stale-after-ms>");
+            System.exit(1);
+        }
+        new Reaper(args[0], Paths.get(args[1]), Long.parseLong(args[2])).run();
+    }
+
+    public void run() throws Exception {
+        LOG.info("Watching session {} using heartbeat: {}", sessionId, heartbeat);
+        Heartbeat status;
+        do {
+            Thread.sleep(GizmoSession.HEARTBEAT_INTERVAL_MS);
+            status = checkHeartbeat();
+        } while (status == Heartbeat.ALIVE);
+
+        if (status == Heartbeat.RELEASED) {
+            LOG.info("Session {} was released.", sessionId);
+        } else {
+            LOG.info("Heartbeat for session {} is {}.", sessionId, status == Heartbeat.MISSING ? "gone" : "stale");
+            reap();
+        }
+        Files.deleteIfExists(heartbeat);
+    }
+
+    Heartbeat checkHeartbeat() throws IOException {
+        final long lastBeatMs;
+        try {
+            if (GizmoSession.RELEASED.equals(new String(Files.readAllBytes(heartbeat), StandardCharsets.UTF_8))) {
+                return Heartbeat.RELEASED;
+            }
+            lastBeatMs = Files.getLastModifiedTime(heartbeat).toMillis();
+        } catch (NoSuchFileException e) {
+            return Heartbeat.MISSING;
+        }
+        return System.currentTimeMillis() - lastBeatMs > staleAfterMs ? Heartbeat.STALE : Heartbeat.ALIVE;
+    }
+
+    private void reap() throws Exception {
+        try (DockerClient docker = DefaultDockerClient.fromEnv().build()) {
+            reap(docker);
+        } catch (DockerCertificateException e) {
+            LOG.error("Failed to create Docker client. Session {} will not be reaped.", sessionId, e);
+        }
+    }
+
+    void reap(DockerClient docker) throws Exception {
+        for (Container container : docker.listContainers(DockerClient.ListContainersParam.allContainers(),
+                DockerClient.ListContainersParam.withLabel(GizmoLabels.SESSION, sessionId))) {
+            LOG.info("Removing container with id: {}", container.id());
+            try {
+                docker.removeContainer(container.id(), DockerClient.RemoveContainerParam.forceKill(),
+                        DockerClient.RemoveContainerParam.removeVolumes());
+            } catch (Exception e) {
+                LOG.warn("Failed to remove container with id: {}", container.id(), e);
+            }
+        }
+        for (Network network : docker.listNetworks(DockerClient.ListNetworksParam.withLabel(GizmoLabels.SESSION, sessionId))) {
+            LOG.info("Removing network with id: {}", network.id());
+            try {
+                docker.removeNetwork(network.id());
+            } catch (Exception e) {
+                LOG.warn("Failed to remove network with id: {}", network.id(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.snapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.ConflictException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.Image;
+
+/**
+ * Manages images committed from containers once their stack is up, which
+ * can later be used to start the same containers without having to go through
+ * their first-boot initialization again.
+ *
+ * Snapshots are tagged using a fingerprint of the container's alias,
+ * configuration and base image id, so they are invalidated as soon as any of
+ * these change. The total size of the snapshot images is capped, and the least
+ * recently used snapshots are removed first when the cap is exceeded.
+ *
+ * Note that data stored in volumes is not part of the committed images.
+ */
+public class SnapshotCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotCache.class);
+
+    public static final String REPOSITORY = "gizmo-snapshot";
+    public static final String SNAPSHOT_LABEL = "org.opennms.gizmo.snapshot";
+
+    public static final long DEFAULT_MAX_SIZE_BYTES = 10L * 1024 * 1024 * 1024;
+    public static final Path DEFAULT_INDEX = Paths.get(System.getProperty("user.home"), ".gizmo", "snapshots.properties");
+
+    private final DockerClient docker;
+    private final long maxSizeBytes;
+    private final Path index;
+
+    public SnapshotCache(DockerClient docker, long maxSizeBytes, Path index) {
+        this.docker = Objects.requireNonNull(docker);
+        this.maxSizeBytes = maxSizeBytes;
+        this.index = Objects.requireNonNull(index);
+    }
+
+    /**
+     * Finds a snapshot for the given container.
+     *
+     * The base image must already be present, since its id is part of the
+     * snapshot's fingerprint.
+     *
+     * @return the name of the snapshot image, or null if there is none
+     */
+    public String lookup(String alias, ContainerConfig config) throws DockerException, InterruptedException {
+        final String image;
+        try {
+            image = getImageName(alias, config);
+            docker.inspectImage(image);
+        } catch (ImageNotFoundException e) {
+            LOG.debug("No snapshot found for {}.", alias);
+            return null;
+        }
+        LOG.info("Using snapshot for {}: {}", alias, image);
+        touch(image);
+        return image;
+    }
+
+    /**
+     * Commits the given container to a snapshot image and evicts the least
+     * recently used snapshots if the cache is now over its size limit.
+     */
+    public void commit(String containerId, String alias, ContainerConfig config) throws DockerException, InterruptedException {
+        final String image = getImageName(alias, config);
+        LOG.info("Committing container {} for {} to snapshot: {}", containerId, alias, image);
+        // The given configuration is merged with the container's, so only the labels need to be set
+        docker.commitContainer(containerId, REPOSITORY, getTag(image),
+                ContainerConfig.builder().labels(ImmutableMap.of(SNAPSHOT_LABEL, alias)).build(),
+                "Snapshot of " + alias, "gizmo");
+        touch(image);
+        evict();
+    }
+
+    private String getImageName(String alias, ContainerConfig config) throws DockerException, InterruptedException {
+        // Using the id of the base image invalidates the snapshot whenever the base image is updated
+        final String baseImageId = docker.inspectImage(config.image()).id();
+        final String tag = Hashing.sha256().newHasher()
+                .putString(alias, StandardCharsets.UTF_8)
+                .putString(config.toString(), StandardCharsets.UTF_8)
+                .putString(baseImageId, StandardCharsets.UTF_8)
+                .hash().toString().substring(0, 32);
+        return REPOSITORY + ":" + tag;
+    }
+
+    private static String getTag(String image) {
+        return image.substring(REPOSITORY.length() + 1);
+    }
+
+    private void evict() throws DockerException, InterruptedException {
+        final List<Image> snapshots = docker.listImages(DockerClient.ListImagesParam.withLabel(SNAPSHOT_LABEL));
+        long totalSize = snapshots.stream().mapToLong(i -> i.size() != null ? i.size() : 0L).sum();
+        if (totalSize <= maxSizeBytes) {
+            return;
+        }
+
+        final Properties lastUsed = loadIndex();
+        final List<Image> leastRecentlyUsedFirst = snapshots.stream()
+                .sorted(Comparator.comparingLong(i -> getLastUsed(i, lastUsed)))
+                .collect(Collectors.toList());
+        for (Image snapshot : leastRecentlyUsedFirst) {
+            if (totalSize <= maxSizeBytes) {
+                break;
+            }
+            LOG.info("Snapshot cache is over its limit of {} bytes. Removing: {}", maxSizeBytes, snapshot.repoTags());
+            try {
+                // Never force, the snapshot may be used by containers of another JVM
+                docker.removeImage(snapshot.id(), false, false);
+                totalSize -= snapshot.size() != null ? snapshot.size() : 0L;
+                if (snapshot.repoTags() != null) {
+                    snapshot.repoTags().forEach(lastUsed::remove);
+                }
+            } catch (ConflictException e) {
+                LOG.info("Snapshot {} is in use. Skipping it.", snapshot.repoTags());
+            } catch (DockerException e) {
+                LOG.warn("Failed to remove snapshot: {}", snapshot.repoTags(), e);
+            }
+        }
+        storeIndex(lastUsed);
+    }
+
+    private static long getLastUsed(Image image, Properties lastUsed) {
+        if (image.repoTags() == null) {
+            return 0L;
+        }
+        return image.repoTags().stream()
+                .map(lastUsed::getProperty)
+                .filter(Objects::nonNull)
+                .mapToLong(Long::parseLong)
+                .max()
+                .orElse(0L);
+    }
+
+    private synchronized void touch(String image) {
+        final Properties lastUsed = loadIndex();
+        lastUsed.setProperty(image, Long.toString(System.currentTimeMillis()));
+        storeIndex(lastUsed);
+    }
+
+    private synchronized Properties loadIndex() {
+        final Properties properties = new Properties();
+        if (Files.exists(index)) {
+            try (InputStream is = Files.newInputStream(index)) {
+                properties.load(is);
+            } catch (IOException e) {
+                LOG.warn("Failed to read the snapshot index from {}. Starting with an empty index.", index, e);
+            }
+        }
+        return properties;
+    }
+
+    private synchronized void storeIndex(Properties properties) {
+        try {
+            Files.createDirectories(index.toAbsolutePath().getParent());
+            try (OutputStream os = Files.newOutputStream(index)) {
+                properties.store(os, "Last time each gizmo snapshot was used");
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to write the snapshot index to {}.", index, e);
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.stacks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.opennms.gizmo.docker.GizmoDockerStack;
+import org.opennms.gizmo.docker.GizmoDockerStacker;
+import org.opennms.gizmo.readiness.Readiness;
+import org.yaml.snakeyaml.Yaml;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.PortBinding;
+
+/**
+ * Stack defined by a Docker Compose file.
+ *
+ * Every service becomes a stack of its own, which depends on the stacks of the
+ * services listed in its depends_on, so independent services are started
+ * concurrently. Dependencies with the service_healthy condition wait for the
+ * dependency's health check using the Docker events. Once all of the services are
+ * started, this stack waits for every service with a health check to be healthy,
+ * like docker compose up --wait.
+ *
+ * Supported service keys are image, command, entrypoint, environment, ports,
+ * volumes, healthcheck, depends_on, labels, hostname, user, working_dir and privileged.
+ * Services can reach each other using their names, as long as the stacker uses a network.
+ * Commands given as strings are split like a shell would, and $$ escapes a literal $.
+ * Variable interpolation and build are not supported.
+ */
+public class ComposeFileDockerStack extends EmptyDockerStack {
+
+    public static final String SERVICE_STARTED = "service_started";
+    public static final String SERVICE_HEALTHY = "service_healthy";
+
+    private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)(us|ms|s|m|h)");
+
+    private final String project;
+    private final Path baseDir;
+    private final Map<String, ServiceStack> servicesByName = new LinkedHashMap<>();
+
+    public ComposeFileDockerStack(Path composeFile) {
+        this(toUrl(composeFile));
+    }
+
+    public ComposeFileDockerStack(URL composeFile) {
+        final Map<String, Object> compose;
+        try (InputStream is = composeFile.openStream()) {
+            compose = asMap(new Yaml().load(is), "compose file");
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+
+        baseDir = "file".equals(composeFile.getProtocol()) ? toPath(composeFile).toAbsolutePath().getParent() : null;
+        if (compose.get("name") != null) {
+            project = compose.get("name").toString();
+        } else if (baseDir != null && baseDir.getFileName() != null) {
+            project = baseDir.getFileName().toString();
+        } else {
+            project = "compose";
+        }
+
+        final Map<String, Object> services = asMap(compose.get("services"), "services");
+        for (Map.Entry<String, Object> entry : services.entrySet()) {
+            final String name = entry.getKey();
+            final Map<String, Object> service = asMap(unescape(name, entry.getValue()), name);
+            servicesByName.put(name, new ServiceStack(name, toContainerConfig(name, service)));
+        }
+
+        // Wire up the dependencies once all of the services are known
+        for (Map.Entry<String, Object> entry : services.entrySet()) {
+            final ServiceStack stack = servicesByName.get(entry.getKey());
+            for (Map.Entry<String, String> dependency : getDependsOn(asMap(entry.getValue(), entry.getKey())).entrySet()) {
+                final ServiceStack dependencyStack = servicesByName.get(dependency.getKey());
+                if (dependencyStack == null) {
+                    throw new IllegalArgumentException(String.format("Service %s depends on unknown service: %s",
+                            stack.name, dependency.getKey()));
+                }
+                stack.dependencies.add(dependencyStack);
+                if (SERVICE_HEALTHY.equals(dependency.getValue())) {
+                    dependencyStack.waitForHealthy = true;
+                } else if (!SERVICE_STARTED.equals(dependency.getValue())) {
+                    throw new IllegalArgumentException(String.format("Unsupported depends_on condition for %s: %s",
+                            stack.name, dependency.getValue()));
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<GizmoDockerStack> getDependencies() {
+        return new ArrayList<>(servicesByName.values());
+    }
+
+    @Override
+    public List<Consumer<GizmoDockerStacker>> getWaitingRules() {
+        final String[] healthChecked = servicesByName.values().stream()
+                .filter(s -> s.config.healthcheck() != null)
+                .map(s -> s.name)
+                .toArray(String[]::new);
+        if (healthChecked.length < 1) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(GizmoDockerStacker.waitForHealthy(Readiness.DEFAULT_TIMEOUT_MS, TimeUnit.MILLISECONDS, healthChecked));
+    }
+
+    @Override
+    public String getName() {
+        return project;
+    }
+
+    public Set<String> getServiceNames() {
+        return Collections.unmodifiableSet(servicesByName.keySet());
+    }
+
+    /**
+     * Retrieves the stack for the given service.
+     */
+    public GizmoDockerStack getService(String name) {
+        final ServiceStack stack = servicesByName.get(name);
+        if (stack == null) {
+            throw new IllegalArgumentException(String.format("No service named %s. Available services include: %s",
+                    name, servicesByName.keySet()));
+        }
+        return stack;
+    }
+
+    private class ServiceStack extends EmptyDockerStack {
+        private final String name;
+        private final ContainerConfig config;
+        private final List<GizmoDockerStack> dependencies = new ArrayList<>();
+        private boolean waitForHealthy = false;
+
+        private ServiceStack(String name, ContainerConfig config) {
+            this.name = name;
+            this.config = config;
+        }
+
+        @Override
+        public List<GizmoDockerStack> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public Map<String, Function<GizmoDockerStacker, ContainerConfig>> getContainersByAlias() {
+            return ImmutableMap.of(name, stacker -> config);
+        }
+
+        @Override
+        public List<Consumer<GizmoDockerStacker>> getWaitingRules() {
+            if (!waitForHealthy) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(GizmoDockerStacker.waitForHealthy(Readiness.DEFAULT_TIMEOUT_MS, TimeUnit.MILLISECONDS, name));
+        }
+
+        @Override
+        public String getName() {
+            return project + "/" + name;
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+
+    protected ContainerConfig toContainerConfig(String name, Map<String, Object> service) {
+        if (service.containsKey("build")) {
+            throw new IllegalArgumentException("Service " + name + " uses build, which is not supported.");
+        }
+        final Object image = service.get("image");
+        if (image == null) {
+            throw new IllegalArgumentException("Service " + name + " has no image.");
+        }
+
+        final ContainerConfig.Builder builder = ContainerConfig.builder().image(image.toString());
+        final HostConfig.Builder hostConfig = HostConfig.builder();
+
+        if (service.containsKey("command")) {
+            builder.cmd(toCommand(service.get("command")));
+        }
+        if (service.containsKey("entrypoint")) {
+            builder.entrypoint(toCommand(service.get("entrypoint")));
+        }
+        if (service.containsKey("environment")) {
+            builder.env(toKeyValues(service.get("environment")).entrySet().stream()
+                    .map(e -> e.getValue() != null ? e.getKey() + "=" + e.getValue() : e.getKey())
+                    .collect(Collectors.toList()));
+        }
+        if (service.containsKey("labels")) {
+            builder.labels(toKeyValues(service.get("labels")).entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue() != null ? e.getValue() : "")));
+        }
+        if (service.get("hostname") != null) {
+            builder.hostname(service.get("hostname").toString());
+        }
+        if (service.get("user") != null) {
+            builder.user(service.get("user").toString());
+        }
+        if (service.get("working_dir") != null) {
+            builder.workingDir(service.get("working_dir").toString());
+        }
+        if (Boolean.TRUE.equals(service.get("privileged"))) {
+            hostConfig.privileged(true);
+        }
+
+        if (service.containsKey("ports")) {
+            final Map<String, List<PortBinding>> portBindings = new LinkedHashMap<>();
+            for (Object port : asList(service.get("ports"))) {
+                addPort(port, portBindings);
+            }
+            builder.exposedPorts(portBindings.keySet());
+            hostConfig.portBindings(portBindings);
+        }
+
+        if (service.containsKey("volumes")) {
+            final List<String> binds = new ArrayList<>();
+            final Set<String> volumes = new LinkedHashSet<>();
+            for (Object volume : asList(service.get("volumes"))) {
+                addVolume(volume, binds, volumes);
+            }
+            builder.volumes(volumes);
+            hostConfig.binds(binds);
+        }
+
+        if (service.containsKey("healthcheck")) {
+            final ContainerConfig.Healthcheck healthcheck = toHealthcheck(asMap(service.get("healthcheck"), name + ".healthcheck"));
+            if (healthcheck != null) {
+                builder.healthcheck(healthcheck);
+            }
+        }
+
+        return builder.hostConfig(hostConfig.build()).build();
+    }
+
+    private void addPort(Object port, Map<String, List<PortBinding>> portBindings) {
+        String hostIp = "0.0.0.0";
+        String published = null;
+        final String target;
+        String protocol = "tcp";
+        if (port instanceof Map) {
+            final Map<String, Object> longSyntax = asMap(port, "ports");
+            target = longSyntax.get("target").toString();
+            published = longSyntax.get("published") != null ? longSyntax.get("published").toString() : null;
+            if (longSyntax.get("protocol") != null) {
+                protocol = longSyntax.get("protocol").toString();
+            }
+            if (longSyntax.get("host_ip") != null) {
+                hostIp = longSyntax.get("host_ip").toString();
+            }
+        } else {
+            String spec = port.toString();
+            final int slash = spec.indexOf('/');
+            if (slash >= 0) {
+                protocol = spec.substring(slash + 1);
+                spec = spec.substring(0, slash);
+            }
+            final String[] parts = spec.split(":");
+            target = parts[parts.length - 1];
+            if (parts.length >= 2) {
+                published = parts[parts.length - 2];
+            }
+            if (parts.length >= 3) {
+                hostIp = parts[0];
+            }
+        }
+        final PortBinding binding = published != null && !published.isEmpty() ?
+                PortBinding.of(hostIp, published) : PortBinding.randomPort(hostIp);
+        portBindings.computeIfAbsent(target + "/" + protocol, k -> new ArrayList<>()).add(binding);
+    }
+
+    private void addVolume(Object volume, List<String> binds, Set<String> volumes) {
+        final String spec;
+        if (volume instanceof Map) {
+            final Map<String, Object> longSyntax = asMap(volume, "volumes");
+            final Object source = longSyntax.get("source");
+            final String target = longSyntax.get("target").toString();
+            if (source == null) {
+                volumes.add(target);
+                return;
+            }
+            spec = source + ":" + target + (Boolean.TRUE.equals(longSyntax.get("read_only")) ? ":ro" : "");
+        } else {
+            spec = volume.toString();
+        }
+
+        final int idx = spec.indexOf(':');
+        if (idx < 0) {
+            // Anonymous volume
+            volumes.add(spec);
+            return;
+        }
+        final String source = spec.substring(0, idx);
+        if (source.startsWith(".") || source.startsWith("~")) {
+            binds.add(resolvePath(source) + spec.substring(idx));
+        } else {
+            // Absolute path or named volume
+            binds.add(spec);
+        }
+    }
+
+    private String resolvePath(String source) {
+        if (source.startsWith("~")) {
+            return System.getProperty("user.home") + source.substring(1);
+        } else if (baseDir == null) {
+            throw new IllegalArgumentException("Relative paths are only supported for compose files on the file system: " + source);
+        }
+        return baseDir.resolve(source).normalize().toString();
+    }
+
+    private static ContainerConfig.Healthcheck toHealthcheck(Map<String, Object> healthcheck) {
+        if (Boolean.TRUE.equals(healthcheck.get("disable"))) {
+            return null;
+        }
+        final ContainerConfig.Healthcheck.Builder builder = ContainerConfig.Healthcheck.builder();
+        final Object test = healthcheck.get("test");
+        if (test instanceof List) {
+            builder.test(asList(test).stream().map(Object::toString).collect(Collectors.toList()));
+        } else if (test != null) {
+            builder.test(ImmutableList.of("CMD-SHELL", test.toString()));
+        }
+        if (healthcheck.get("interval") != null) {
+            builder.interval(toNanos(healthcheck.get("interval").toString()));
+        }
+        if (healthcheck.get("timeout") != null) {
+            builder.timeout(toNanos(healthcheck.get("timeout").toString()));
+        }
+        if (healthcheck.get("start_period") != null) {
+            builder.startPeriod(toNanos(healthcheck.get("start_period").toString()));
+        }
+        if (healthcheck.get("retries") != null) {
+            builder.retries(Integer.valueOf(healthcheck.get("retries").toString()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Converts a compose duration, i.e. 1m30s, to nanoseconds.
+     */
+    protected static long toNanos(String duration) {
+        final Matcher m = DURATION_PATTERN.matcher(duration.trim());
+        double nanos = 0;
+        int end = 0;
+        while (m.find()) {
+            if (m.start() != end) {
+                break;
+            }
+            end = m.end();
+            final double value = Double.parseDouble(m.group(1));
+            switch (m.group(2)) {
+            case "us":
+                nanos += value * TimeUnit.MICROSECONDS.toNanos(1);
+                break;
+            case "ms":
+                nanos += value * TimeUnit.MILLISECONDS.toNanos(1);
+                break;
+            case "s":
+                nanos += value * TimeUnit.SECONDS.toNanos(1);
+                break;
+            case "m":
+                nanos += value * TimeUnit.MINUTES.toNanos(1);
+                break;
+            default:
+                nanos += value * TimeUnit.HOURS.toNanos(1);
+            }
+        }
+        if (end == 0 || end != duration.trim().length()) {
+            throw new IllegalArgumentException("Invalid duration: " + duration);
+        }
+        return (long)nanos;
+    }
+
+    private static Map<String, String> getDependsOn(Map<String, Object> service) {
+        final Object dependsOn = service.get("depends_on");
+        final Map<String, String> conditionsByService = new LinkedHashMap<>();
+        if (dependsOn instanceof Map) {
+            for (Map.Entry<String, Object> entry : asMap(dependsOn, "depends_on").entrySet()) {
+                final Object condition = entry.getValue() != null ? asMap(entry.getValue(), "depends_on").get("condition") : null;
+                conditionsByService.put(entry.getKey(), condition != null ? condition.toString() : SERVICE_STARTED);
+            }
+        } else if (dependsOn != null) {
+            asList(dependsOn).forEach(name -> conditionsByService.put(name.toString(), SERVICE_STARTED));
+        }
+        return conditionsByService;
+    }
+
+    private static List<String> toCommand(Object command) {
+        if (command instanceof List) {
+            return asList(command).stream().map(Object::toString).collect(Collectors.toList());
+        }
+        return tokenize(command.toString());
+    }
+
+    /**
+     * Splits the command into words like a shell would, honoring single quotes,
+     * double quotes and backslash escapes.
+     */
+    protected static List<String> tokenize(String command) {
+        final List<String> words = new ArrayList<>();
+        final StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < command.length(); i++) {
+            final char c = command.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else if (c == '\\' && i + 1 < command.length() && "\"\\$`".indexOf(command.charAt(i + 1)) >= 0) {
+                    word.append(command.charAt(++i));
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inWord = true;
+            } else if (c == '\\' && i + 1 < command.length()) {
+                word.append(command.charAt(++i));
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unterminated quote in command: " + command);
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Replaces the $$ escapes in all of the string values of the service with a literal $,
+     * and fails on variable interpolation, i.e. ${VAR} or $VAR, which is not supported.
+     */
+    private static Object unescape(String name, Object value) {
+        if (value instanceof Map) {
+            final Map<Object, Object> map = new LinkedHashMap<>();
+            ((Map<?, ?>)value).forEach((k, v) -> map.put(k, unescape(name, v)));
+            return map;
+        } else if (value instanceof List) {
+            final List<Object> list = new ArrayList<>();
+            ((List<?>)value).forEach(v -> list.add(unescape(name, v)));
+            return list;
+        } else if (!(value instanceof String)) {
+            return value;
+        }
+        final String s = (String)value;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c != '$') {
+                sb.append(c);
+            } else if (i + 1 < s.length() && s.charAt(i + 1) == '$') {
+                sb.append('$');
+                i++;
+            } else {
+                throw new IllegalArgumentException(String.format("Service %s uses variable interpolation, which is not supported: %s",
+                        name, s));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts either a list of KEY=VALUE strings, or a map, to a map.
+     */
+    private static Map<String, String> toKeyValues(Object keyValues) {
+        final Map<String, String> map = new LinkedHashMap<>();
+        if (keyValues instanceof Map) {
+            asMap(keyValues, "map").forEach((k, v) -> map.put(k, v != null ? v.toString() : null));
+        } else {
+            for (Object keyValue : asList(keyValues)) {
+                final String s = keyValue.toString();
+                final int idx = s.indexOf('=');
+                map.put(idx >= 0 ? s.substring(0, idx) : s, idx >= 0 ? s.substring(idx + 1) : null);
+            }
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object o, String what) {
+        if (!(o instanceof Map)) {
+            throw new IllegalArgumentException("Expected a map for " + what + ". Got: " + o);
+        }
+        return (Map<String, Object>)o;
+    }
+
+    private static List<?> asList(Object o) {
+        if (!(o instanceof List)) {
+            throw new IllegalArgumentException("Expected a list. Got: " + o);
+        }
+        return (List<?>)o;
+    }
+
+    private static Path toPath(URL url) {
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static URL toUrl(Path path) {
+        try {
+            return path.toUri().toURL();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
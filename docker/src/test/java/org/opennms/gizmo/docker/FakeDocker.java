@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Throwables;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.ObjectMapperProvider;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.NetworkConfig;
+import com.spotify.docker.client.messages.NetworkCreation;
+
+/**
+ * Fake Docker client for unit tests.
+ *
+ * Calls are recorded and answered by the handler registered for the method's name.
+ * Calls to methods without a handler fail.
+ */
+public class FakeDocker {
+
+    @FunctionalInterface
+    public interface Handler {
+        Object handle(Object[] args) throws Exception;
+    }
+
+    private static final ObjectMapper MAPPER = ObjectMapperProvider.objectMapper();
+
+    private final Map<String, Handler> handlersByMethod = new ConcurrentHashMap<>();
+    private final List<Call> calls = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, ContainerConfig> configsByContainerId = new ConcurrentHashMap<>();
+    private final AtomicInteger nextContainerId = new AtomicInteger();
+    private final DockerClient client;
+
+    public FakeDocker() {
+        client = (DockerClient)Proxy.newProxyInstance(FakeDocker.class.getClassLoader(), new Class<?>[] { DockerClient.class },
+                (proxy, method, args) -> {
+                    final Object[] actualArgs = args != null ? args : new Object[0];
+                    calls.add(new Call(method.getName(), actualArgs));
+                    final Handler handler = handlersByMethod.get(method.getName());
+                    if (handler != null) {
+                        return handler.handle(actualArgs);
+                    } else if ("close".equals(method.getName())) {
+                        return null;
+                    } else if ("getHost".equals(method.getName())) {
+                        return "localhost";
+                    }
+                    throw new UnsupportedOperationException(method.toString());
+                });
+    }
+
+    public DockerClient getClient() {
+        return client;
+    }
+
+    public FakeDocker on(String method, Handler handler) {
+        handlersByMethod.put(method, handler);
+        return this;
+    }
+
+    /**
+     * Handles the creation, start and inspection of containers, which
+     * are reported as running with the configuration they were created with.
+     */
+    public FakeDocker withContainers() {
+        on("createContainer", args -> {
+            final String containerId = "container-" + nextContainerId.incrementAndGet();
+            configsByContainerId.put(containerId, (ContainerConfig)args[0]);
+            return fromJson(ContainerCreation.class, "{'Id': '" + containerId + "'}");
+        });
+        on("startContainer", args -> null);
+        on("removeContainer", args -> {
+            if (configsByContainerId.remove(args[0]) == null) {
+                throw new ContainerNotFoundException((String)args[0]);
+            }
+            return null;
+        });
+        on("inspectContainer", args -> {
+            final String containerId = (String)args[0];
+            final ContainerConfig config = configsByContainerId.get(containerId);
+            if (config == null) {
+                throw new ContainerNotFoundException(containerId);
+            }
+            return containerInfo(containerId, config);
+        });
+        return this;
+    }
+
+    /**
+     * Handles the creation and removal of networks.
+     */
+    public FakeDocker withNetworks() {
+        on("createNetwork", args -> fromJson(NetworkCreation.class, "{'Id': '" + ((NetworkConfig)args[0]).name() + "'}"));
+        on("removeNetwork", args -> null);
+        return this;
+    }
+
+    public List<ContainerConfig> getCreatedContainers() {
+        return getCalls("createContainer").stream()
+                .map(args -> (ContainerConfig)args[0])
+                .collect(Collectors.toList());
+    }
+
+    public List<Object[]> getCalls(String method) {
+        synchronized (calls) {
+            return calls.stream()
+                    .filter(call -> call.method.equals(method))
+                    .map(call -> call.args)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Builds the details of a running container, as inspected by the Docker API.
+     */
+    public static ContainerInfo containerInfo(String id, ContainerConfig config) {
+        final ObjectNode info = MAPPER.createObjectNode();
+        info.put("Id", id);
+        info.put("Created", "2019-01-01T00:00:00Z");
+        info.put("Path", "");
+        info.putArray("Args");
+        info.set("Config", MAPPER.valueToTree(config));
+        if (config.hostConfig() != null) {
+            info.set("HostConfig", MAPPER.valueToTree(config.hostConfig()));
+        }
+        final ObjectNode state = info.putObject("State");
+        state.put("Status", "running");
+        state.put("Running", true);
+        state.put("Paused", false);
+        state.put("Restarting", false);
+        state.put("Pid", 1);
+        state.put("ExitCode", 0);
+        state.put("StartedAt", "2019-01-01T00:00:00Z");
+        state.put("FinishedAt", "0001-01-01T00:00:00Z");
+        info.put("Image", "sha256:" + config.image());
+        final ObjectNode networkSettings = info.putObject("NetworkSettings");
+        networkSettings.putObject("Ports");
+        networkSettings.putObject("Networks");
+        info.put("ResolvConfPath", "");
+        info.put("HostnamePath", "");
+        info.put("HostsPath", "");
+        info.put("Name", "/" + id);
+        info.put("Driver", "overlay2");
+        info.put("ProcessLabel", "");
+        info.put("MountLabel", "");
+        info.put("AppArmorProfile", "");
+        info.put("LogPath", "");
+        info.put("RestartCount", 0);
+        info.putArray("Mounts");
+        return fromTree(ContainerInfo.class, info);
+    }
+
+    /**
+     * Builds a running container, as listed by the Docker API.
+     */
+    public static Container container(String id, String image, long created, Map<String, String> labels) {
+        final ObjectNode container = MAPPER.createObjectNode();
+        container.put("Id", id);
+        container.putArray("Names").add("/" + id);
+        container.put("Image", image);
+        container.put("ImageID", "sha256:" + image);
+        container.put("Command", "");
+        container.put("Created", created);
+        container.put("State", "running");
+        container.put("Status", "Up");
+        container.putArray("Ports");
+        container.set("Labels", MAPPER.valueToTree(labels));
+        return fromTree(Container.class, container);
+    }
+
+    /**
+     * Builds a network, as listed by the Docker API.
+     */
+    public static Network network(String id) {
+        final ObjectNode network = MAPPER.createObjectNode();
+        network.put("Id", id);
+        network.put("Name", id);
+        network.put("Scope", "local");
+        network.put("Driver", "bridge");
+        final ObjectNode ipam = network.putObject("IPAM");
+        ipam.put("Driver", "default");
+        ipam.putArray("Config");
+        network.putObject("Containers");
+        network.putObject("Options");
+        network.put("Internal", false);
+        network.put("EnableIPv6", false);
+        network.putObject("Labels");
+        network.put("Attachable", false);
+        return fromTree(Network.class, network);
+    }
+
+    /**
+     * Builds a message the way the client does, from the JSON returned by the
+     * Docker API, allowing single quotes to keep the JSON readable.
+     */
+    public static <T> T fromJson(Class<T> type, String json) {
+        try {
+            return MAPPER.readerFor(type).with(JsonParser.Feature.ALLOW_SINGLE_QUOTES).readValue(json);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static <T> T fromTree(Class<T> type, ObjectNode tree) {
+        try {
+            return MAPPER.treeToValue(tree, type);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static class Call {
+        private final String method;
+        private final Object[] args;
+
+        private Call(String method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.fail;
+
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+import com.spotify.docker.client.messages.ContainerConfig;
+
+public class GizmoDockerRuleBuilderTest {
+
+    @Test
+    public void canRejectInvalidParallelism() {
+        assertRejected(b -> b.withStackingParallelism(0), "stacking parallelism");
+        assertRejected(b -> b.withPullParallelism(-1), "pull parallelism");
+        assertRejected(b -> b.withTearDownParallelism(0), "tear down parallelism");
+    }
+
+    @Test
+    public void canRejectInvalidLogBufferSize() {
+        assertRejected(b -> b.withLogBufferSize(0), "log buffer size");
+    }
+
+    private static void assertRejected(UnaryOperator<GizmoDockerRuleBuilder> configurer, String expectedMessage) {
+        final GizmoDockerRuleBuilder builder = GizmoDockerRule.builder()
+                .withContainer("a", stacker -> ContainerConfig.builder().image("a").build());
+        try {
+            configurer.apply(builder).build();
+            fail("The builder should reject the " + expectedMessage + ".");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString(expectedMessage));
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.gizmo.docker.reaper.GizmoSession;
+import org.opennms.gizmo.docker.stacks.EmptyDockerStack;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.NetworkConfig;
+
+public class GizmoDockerStackerTest {
+
+    private FakeDocker docker;
+    private GizmoDockerStacker stacker;
+
+    @Before
+    public void setUp() throws Exception {
+        docker = new FakeDocker().withContainers().withNetworks();
+        stacker = new GizmoDockerStacker(GizmoDockerRule.builder()
+                .withDockerClient(docker.getClient())
+                .skipPull(true)
+                .withConcurrentContainerCreation(true));
+        stacker.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        stacker.close();
+    }
+
+    @Test
+    public void canCreateContainersConcurrently() throws Exception {
+        // Each configuration blocks until all of them are being resolved, which only happens concurrently
+        final CountDownLatch latch = new CountDownLatch(3);
+        final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = new LinkedHashMap<>();
+        for (String alias : new String[] { "a", "b", "c" }) {
+            containersByAlias.put(alias, stacker -> {
+                latch.countDown();
+                try {
+                    if (!latch.await(10, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("Containers were not created concurrently.");
+                    }
+                } catch (InterruptedException e) {
+                    throw Throwables.propagate(e);
+                }
+                return ContainerConfig.builder().image(alias).build();
+            });
+        }
+
+        stacker.stack(stackOf(containersByAlias));
+
+        assertEquals(3, docker.getCreatedContainers().size());
+        for (String alias : containersByAlias.keySet()) {
+            assertEquals(alias, stacker.getContainerInfo(alias).config().image());
+        }
+    }
+
+    @Test
+    public void canWaitOnPendingContainers() throws Exception {
+        final CountDownLatch referenced = new CountDownLatch(1);
+        final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = new LinkedHashMap<>();
+        containersByAlias.put("app", stacker -> {
+            referenced.countDown();
+            return ContainerConfig.builder().image("app")
+                    .env("DB_ID=" + stacker.getContainerInfo("db").id())
+                    .build();
+        });
+        containersByAlias.put("db", stacker -> {
+            // Hold the database back until the app asked for it
+            try {
+                referenced.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw Throwables.propagate(e);
+            }
+            return ContainerConfig.builder().image("db").build();
+        });
+
+        stacker.stack(stackOf(containersByAlias));
+
+        final String dbId = stacker.getContainerInfo("db").id();
+        assertEquals("DB_ID=" + dbId, stacker.getContainerInfo("app").config().env().get(0));
+    }
+
+    @Test
+    public void canDetectCyclicReferences() throws Exception {
+        final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = new LinkedHashMap<>();
+        containersByAlias.put("a", stacker -> ContainerConfig.builder().image("a")
+                .env("B_ID=" + stacker.getContainerInfo("b").id())
+                .build());
+        containersByAlias.put("b", stacker -> ContainerConfig.builder().image("b")
+                .env("A_ID=" + stacker.getContainerInfo("a").id())
+                .build());
+
+        try {
+            stacker.stack(stackOf(containersByAlias));
+            fail("Stacking should fail instead of deadlocking.");
+        } catch (IllegalStateException e) {
+            assertThat(Throwables.getStackTraceAsString(e), containsString("Cyclic container references detected"));
+        }
+        assertEquals(0, docker.getCreatedContainers().size());
+    }
+
+    @Test
+    public void canAttachContainersToNetwork() throws Exception {
+        final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = new LinkedHashMap<>();
+        containersByAlias.put("a", stacker -> ContainerConfig.builder().image("a").build());
+        containersByAlias.put("b", stacker -> ContainerConfig.builder().image("b")
+                .networkingConfig(GizmoDockerStacker.withNetworkAliases("bee", "buzz"))
+                .build());
+
+        stacker.stack(stackOf(containersByAlias));
+
+        // A single network is shared by all of the containers, and labeled for the reaper
+        final List<Object[]> networks = docker.getCalls("createNetwork");
+        assertEquals(1, networks.size());
+        final NetworkConfig network = (NetworkConfig)networks.get(0)[0];
+        assertEquals(network.name(), stacker.getNetworkName());
+        assertEquals(GizmoSession.getInstance().getId(), network.labels().get(GizmoLabels.SESSION));
+
+        final ContainerConfig a = stacker.getContainerInfo("a").config();
+        assertEquals(network.name(), a.hostConfig().networkMode());
+        assertEquals(ImmutableSet.of(network.name()), a.networkingConfig().endpointsConfig().keySet());
+        assertEquals(Arrays.asList("a"), a.networkingConfig().endpointsConfig().get(network.name()).aliases());
+
+        // Declared aliases are added to the container's own alias
+        final ContainerConfig b = stacker.getContainerInfo("b").config();
+        assertEquals(ImmutableSet.of(network.name()), b.networkingConfig().endpointsConfig().keySet());
+        assertEquals(Arrays.asList("b", "bee", "buzz"), b.networkingConfig().endpointsConfig().get(network.name()).aliases());
+
+        stacker.tearDown();
+        assertEquals(2, docker.getCalls("removeContainer").size());
+        assertEquals(1, docker.getCalls("removeNetwork").size());
+        assertEquals(network.name(), docker.getCalls("removeNetwork").get(0)[0]);
+    }
+
+    @Test
+    public void canSkipContainersWithTheirOwnNetworkMode() throws Exception {
+        final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = new LinkedHashMap<>();
+        containersByAlias.put("a", stacker -> ContainerConfig.builder().image("a")
+                .hostConfig(HostConfig.builder().networkMode("host").build())
+                .build());
+
+        stacker.stack(stackOf(containersByAlias));
+
+        final ContainerConfig a = stacker.getContainerInfo("a").config();
+        assertEquals("host", a.hostConfig().networkMode());
+        assertNull(a.networkingConfig());
+        assertEquals(0, docker.getCalls("createNetwork").size());
+
+        stacker.tearDown();
+        assertEquals(0, docker.getCalls("removeNetwork").size());
+    }
+
+    @Test
+    public void canAttachToLabeledContainers() throws Exception {
+        final GizmoDockerStack stack = stackOf(imagesByAlias("a", "nginx", "b", "nginx"));
+        docker.on("listContainers", args -> {
+            if (!Arrays.asList(filters(args)).contains("label=" + GizmoLabels.STACK + "=" + stack.getName())) {
+                throw new IllegalStateException("Labeled containers should not be matched by image.");
+            }
+            return Arrays.asList(
+                    labeledContainer("old-a", 1, stack, "a"),
+                    labeledContainer("new-a", 2, stack, "a"),
+                    labeledContainer("b", 1, stack, "b"));
+        });
+
+        try (GizmoDockerStacker existing = newExistingStacker()) {
+            existing.stack(stack);
+
+            // The newest of the containers left over by previous runs is used
+            assertEquals("new-a", existing.getContainerInfo("a").id());
+            assertEquals("b", existing.getContainerInfo("b").id());
+            // The containers of the stack are listed once
+            assertEquals(1, docker.getCalls("listContainers").size());
+            assertEquals(Arrays.asList("status=running", "label=" + GizmoLabels.STACK + "=" + stack.getName()),
+                    Arrays.asList(filters(docker.getCalls("listContainers").get(0))));
+        }
+        assertEquals(0, docker.getCreatedContainers().size());
+    }
+
+    @Test
+    public void canAttachToUnlabeledContainersByImage() throws Exception {
+        final GizmoDockerStack stack = stackOf(imagesByAlias("a1", "nginx", "a2", "nginx", "b", "postgres"));
+        docker.on("listContainers", args -> {
+            if (Arrays.asList(filters(args)).contains("label=" + GizmoLabels.STACK + "=" + stack.getName())) {
+                return Collections.emptyList();
+            }
+            return Arrays.asList(
+                    // Containers of other stacks are never matched by image
+                    FakeDocker.container("other", "nginx", 3, ImmutableMap.of(GizmoLabels.STACK, "other")),
+                    FakeDocker.container("old-nginx", "nginx", 1, null),
+                    FakeDocker.container("new-nginx", "nginx", 2, null),
+                    FakeDocker.container("postgres", "postgres", 1, null));
+        });
+
+        try (GizmoDockerStacker existing = newExistingStacker()) {
+            existing.stack(stack);
+
+            // Each container is attached once, even when several aliases share its image
+            assertEquals(ImmutableSet.of("old-nginx", "new-nginx"),
+                    ImmutableSet.of(existing.getContainerInfo("a1").id(), existing.getContainerInfo("a2").id()));
+            assertEquals("postgres", existing.getContainerInfo("b").id());
+        }
+    }
+
+    @Test
+    public void canFailWhenNoContainerIsLeftToAttach() throws Exception {
+        final GizmoDockerStack stack = stackOf(imagesByAlias("a", "nginx", "b", "nginx"));
+        docker.on("listContainers", args -> {
+            if (Arrays.asList(filters(args)).contains("label=" + GizmoLabels.STACK + "=" + stack.getName())) {
+                return Arrays.asList(labeledContainer("a", 1, stack, "a"));
+            }
+            // The labeled container is listed again, but must not be attached twice
+            return Arrays.asList(FakeDocker.container("a", "nginx", 1, ImmutableMap.of()));
+        });
+
+        try (GizmoDockerStacker existing = newExistingStacker()) {
+            existing.stack(stack);
+            fail("Stacking should fail when a container can't be found.");
+        } catch (IllegalStateException e) {
+            assertThat(Throwables.getStackTraceAsString(e), containsString("Could not find running container for b"));
+        }
+    }
+
+    private GizmoDockerStacker newExistingStacker() throws Exception {
+        docker.on("inspectContainer", args -> FakeDocker.containerInfo((String)args[0],
+                ContainerConfig.builder().image("nginx").build()));
+        final GizmoDockerStacker existing = new GizmoDockerStacker(GizmoDockerRule.builder()
+                .withDockerClient(docker.getClient())
+                .skipPull(true)
+                .useExistingStacks(true));
+        existing.init();
+        return existing;
+    }
+
+    private static Container labeledContainer(String id, long created, GizmoDockerStack stack, String alias) {
+        return FakeDocker.container(id, "nginx", created, ImmutableMap.of(
+                GizmoLabels.STACK, stack.getName(),
+                GizmoLabels.ALIAS, alias));
+    }
+
+    private static String[] filters(Object[] args) {
+        return Arrays.stream((DockerClient.ListContainersParam[])args[0])
+                .map(param -> param.name() + "=" + param.value())
+                .toArray(String[]::new);
+    }
+
+    private static Map<String, Function<GizmoDockerStacker, ContainerConfig>> imagesByAlias(String... aliasesAndImages) {
+        final Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias = new LinkedHashMap<>();
+        for (int i = 0; i < aliasesAndImages.length; i += 2) {
+            final String image = aliasesAndImages[i + 1];
+            containersByAlias.put(aliasesAndImages[i], stacker -> ContainerConfig.builder().image(image).build());
+        }
+        return containersByAlias;
+    }
+
+    private static GizmoDockerStack stackOf(Map<String, Function<GizmoDockerStacker, ContainerConfig>> containersByAlias) {
+        return new EmptyDockerStack() {
+            @Override
+            public Map<String, Function<GizmoDockerStacker, ContainerConfig>> getContainersByAlias() {
+                return containersByAlias;
+            }
+        };
+    }
+}
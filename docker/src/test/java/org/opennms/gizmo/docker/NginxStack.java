@@ -33,9 +33,7 @@ import com.google.common.collect.ImmutableMap;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.HostConfig;
 import org.opennms.gizmo.docker.stacks.EmptyDockerStack;
-import org.opennms.gizmo.utils.HttpUtils;
 
-import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -43,7 +41,6 @@ import java.util.function.Function;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static org.awaitility.Awaitility.await;
 
 public class NginxStack extends EmptyDockerStack {
     public static final String NGINX = "NGINX";
@@ -52,6 +49,12 @@ public class NginxStack extends EmptyDockerStack {
     public Map<String, Function<GizmoDockerStacker, ContainerConfig>> getContainersByAlias() {
         return ImmutableMap.of(NGINX, (stacker) -> ContainerConfig.builder()
                 .image("nginx:1.11.1-alpine")
+                .healthcheck(ContainerConfig.Healthcheck.builder()
+                        .test(ImmutableList.of("CMD-SHELL", "wget -q -O /dev/null http://localhost/ || exit 1"))
+                        .interval(SECONDS.toNanos(1))
+                        .timeout(SECONDS.toNanos(5))
+                        .retries(30)
+                        .build())
                 .hostConfig(HostConfig.builder()
                         .publishAllPorts(true)
                         .autoRemove(true)
@@ -62,12 +65,7 @@ public class NginxStack extends EmptyDockerStack {
 
     @Override
     public List<Consumer<GizmoDockerStacker>> getWaitingRules() {
-        return ImmutableList.of((stacker) -> {
-            final InetSocketAddress httpAddr = stacker.getServiceAddress(NGINX, 80);
-            await().atMost(2, MINUTES)
-                    .pollInterval(5, SECONDS).pollDelay(0, SECONDS)
-                    .until(() -> HttpUtils.get(httpAddr, "/") != null);
-        });
+        return ImmutableList.of(GizmoDockerStacker.waitForHealthy(2, MINUTES, NGINX));
     }
 
 }
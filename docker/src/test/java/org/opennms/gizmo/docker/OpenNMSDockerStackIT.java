@@ -20,6 +20,7 @@ import static org.hamcrest.core.StringContains.containsString;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,6 +36,7 @@ public class OpenNMSDockerStackIT {
     @Rule
     public GizmoDockerRule gizmo = GizmoDockerRule.builder()
         .withStack(new OpenNMSStack())
+        .withWaitingBudget(5, TimeUnit.MINUTES)
         .build();
 
     @Test
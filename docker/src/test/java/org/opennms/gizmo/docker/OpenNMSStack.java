@@ -16,18 +16,22 @@
 package org.opennms.gizmo.docker;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
-import static java.util.concurrent.TimeUnit.SECONDS;
-import static org.awaitility.Awaitility.await;
 
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.opennms.gizmo.docker.stacks.EmptyDockerStack;
-import org.opennms.gizmo.utils.HttpUtils;
+import org.opennms.gizmo.readiness.Deadline;
+import org.opennms.gizmo.readiness.Readiness;
+import org.opennms.gizmo.utils.HttpProbe;
+import org.opennms.gizmo.utils.NetUtils;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.spotify.docker.client.messages.ContainerConfig;
@@ -46,6 +50,8 @@ public class OpenNMSStack extends EmptyDockerStack {
                     .hostConfig(HostConfig.builder()
                      .publishAllPorts(true)
                      .build())
+                    // OpenNMS expects to find the database at dbserver
+                    .networkingConfig(GizmoDockerStacker.withNetworkAliases("dbserver"))
                     .build();
         }, OPENNMS, (stacker) -> {
             return ContainerConfig.builder()
@@ -53,8 +59,6 @@ public class OpenNMSStack extends EmptyDockerStack {
                     .exposedPorts("8980/tcp")
                     .hostConfig(HostConfig.builder()
                      .publishAllPorts(true)
-                     // Link the container with the effective container name
-                     .links(String.format("%s:dbserver", stacker.getContainerInfo(POSTGRES).name()))
                      .build())
                     .build();
         });
@@ -63,12 +67,24 @@ public class OpenNMSStack extends EmptyDockerStack {
     @Override
     public List<Consumer<GizmoDockerStacker>> getWaitingRules() {
         return ImmutableList.of((stacker) -> {
+            // Wait for both ports to accept connections before hitting the REST API
+            final Deadline deadline = Deadline.earliest(Deadline.after(5, MINUTES), Deadline.current());
+            final CompletableFuture<Void> portsOpen = NetUtils.whenTcpPortsOpen(stacker.getServiceAddress(POSTGRES, 5432),
+                    stacker.getServiceAddress(OPENNMS, 8980));
+            try {
+                portsOpen.get(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                throw Throwables.propagate(e);
+            } finally {
+                portsOpen.cancel(false);
+            }
+        }, (stacker) -> {
             final InetSocketAddress httpAddr = stacker.getServiceAddress(OPENNMS, 8980);
-            await().atMost(5, MINUTES).pollInterval(10, SECONDS).pollDelay(0, SECONDS)
-                .until(() -> {
-                    final String response = HttpUtils.get(httpAddr, "admin", "admin", "/opennms/rest/info");
-                    return response != null ? response.contains("opennms") : false;
-                });
+            Readiness.await("OpenNMS REST API")
+                .until(HttpProbe.builder(httpAddr, "/opennms/rest/info")
+                    .withCredentials("admin", "admin")
+                    .expectBodyContaining("opennms")
+                    .build());
         });
     }
 }
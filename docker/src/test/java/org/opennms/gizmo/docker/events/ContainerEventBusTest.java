@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.gizmo.docker.FakeDocker;
+
+import com.google.common.base.Throwables;
+import com.spotify.docker.client.messages.Event;
+
+public class ContainerEventBusTest {
+
+    private final QueuedEvents events = new QueuedEvents();
+    private final ContainerEventBus bus = new ContainerEventBus(new FakeDocker().getClient()) {
+        @Override
+        Iterator<Event> openStream() {
+            return events;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        bus.close();
+    }
+
+    @Test
+    public void canDispatchEventsToSubscribers() throws Exception {
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        bus.subscribe("c1", event -> received.add("first " + event.actor().id() + " " + event.action()));
+        bus.subscribe("c1", event -> received.add("second " + event.actor().id() + " " + event.action()));
+        bus.subscribe("c2", event -> received.add("third " + event.actor().id() + " " + event.action()));
+
+        events.add(event("c3", "start"));
+        events.add(event("c2", "start"));
+        events.add(event("c1", ContainerEventBus.DIE));
+
+        assertEquals("third c2 start", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("first c1 die", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("second c1 die", received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void canUnsubscribe() throws Exception {
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        final ContainerEventBus.Subscription first = bus.subscribe("c1", event -> received.add("first " + event.action()));
+        final ContainerEventBus.Subscription second = bus.subscribe("c1", event -> received.add("second " + event.action()));
+
+        first.close();
+        events.add(event("c1", "start"));
+        assertEquals("second start", received.poll(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singleton("c1"), bus.getSubscribedContainerIds());
+
+        // The container is forgotten along with its last listener
+        second.close();
+        assertTrue(bus.getSubscribedContainerIds().isEmpty());
+        events.add(event("c1", ContainerEventBus.DIE));
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void canNotifyStreamFailures() throws Exception {
+        final BlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+        bus.subscribe("c1", new ContainerEventBus.Listener() {
+            @Override
+            public void onEvent(Event event) {
+                // pass
+            }
+
+            @Override
+            public void onStreamFailure(Throwable t) {
+                failures.add(t);
+            }
+        });
+
+        events.end();
+        assertEquals("Docker events stream ended unexpectedly.", failures.poll(5, TimeUnit.SECONDS).getMessage());
+
+        // Later subscribers are told right away
+        bus.subscribe("c2", new ContainerEventBus.Listener() {
+            @Override
+            public void onEvent(Event event) {
+                // pass
+            }
+
+            @Override
+            public void onStreamFailure(Throwable t) {
+                failures.add(t);
+            }
+        });
+        assertEquals("Docker events stream ended unexpectedly.", failures.poll(5, TimeUnit.SECONDS).getMessage());
+        assertTrue(bus.getSubscribedContainerIds().contains("c1"));
+        assertFalse(bus.getSubscribedContainerIds().contains("c2"));
+    }
+
+    private static Event event(String containerId, String action) {
+        return FakeDocker.fromJson(Event.class, "{'Type': 'container', 'Action': '" + action + "',"
+                + " 'Actor': {'ID': '" + containerId + "', 'Attributes': {}}, 'time': 1546300800, 'timeNano': 1546300800000000000}");
+    }
+
+    /**
+     * Events stream that blocks until events are added, and ends once told to.
+     */
+    private static class QueuedEvents implements Iterator<Event> {
+        private final BlockingQueue<Optional<Event>> queue = new LinkedBlockingQueue<>();
+        private Optional<Event> next;
+
+        public void add(Event event) {
+            queue.add(Optional.of(event));
+        }
+
+        public void end() {
+            queue.add(Optional.empty());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+            return next.isPresent();
+        }
+
+        @Override
+        public Event next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Event event = next.get();
+            next = null;
+            return event;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.logs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.spotify.docker.client.LogMessage;
+import com.spotify.docker.client.LogMessage.Stream;
+import com.spotify.docker.client.LogStream;
+
+public class ContainerLogFollowerTest {
+
+    @Test
+    public void canSplitMessagesIntoLines() {
+        final LogStream logs = logStream(
+                message(Stream.STDOUT, "first\nsec"),
+                message(Stream.STDERR, "error {}\r\n"),
+                message(Stream.STDOUT, "ond\n\nlast"));
+
+        final List<String> lines = new ArrayList<>();
+        ContainerLogFollower.forEachLine(logs, (stream, line) -> {
+            lines.add(stream + ": " + line);
+            return false;
+        });
+
+        // Partial lines are joined per stream, and flushed once the stream ends
+        assertEquals(Arrays.asList("STDOUT: first", "STDERR: error {}", "STDOUT: second", "STDOUT: ", "STDOUT: last"), lines);
+    }
+
+    @Test
+    public void canStopReading() {
+        final LogStream logs = logStream(message(Stream.STDOUT, "first\nsecond\nthird"));
+
+        final List<String> lines = new ArrayList<>();
+        ContainerLogFollower.forEachLine(logs, (stream, line) -> {
+            lines.add(line);
+            return "second".equals(line);
+        });
+
+        assertEquals(Arrays.asList("first", "second"), lines);
+    }
+
+    private static LogMessage message(Stream stream, String content) {
+        return new LogMessage(stream, ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static LogStream logStream(LogMessage... messages) {
+        final Iterator<LogMessage> it = Arrays.asList(messages).iterator();
+        return (LogStream)Proxy.newProxyInstance(ContainerLogFollowerTest.class.getClassLoader(), new Class<?>[] { LogStream.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "hasNext":
+                        return it.hasNext();
+                    case "next":
+                        return it.next();
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.toString());
+                    }
+                });
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.pool;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.gizmo.docker.FakeDocker;
+
+import com.google.common.collect.Sets;
+
+public class StackPoolTest {
+
+    private static final long IDLE_TTL_MS = 100;
+
+    private final AtomicInteger createdStacks = new AtomicInteger();
+    private FakeDocker docker;
+    private StackPool pool;
+
+    @Before
+    public void setUp() {
+        docker = new FakeDocker()
+                .on("removeContainer", args -> null)
+                .withNetworks();
+        pool = new StackPool();
+    }
+
+    @After
+    public void tearDown() {
+        pool.tearDownAll();
+    }
+
+    @Test
+    public void canShareStacksBetweenLeases() throws Exception {
+        final StackLease first = lease("a", TimeUnit.MINUTES.toMillis(5));
+        final StackLease second = lease("a", TimeUnit.MINUTES.toMillis(5));
+        assertSame(first.getStack(), second.getStack());
+        assertEquals(1, createdStacks.get());
+
+        // The stack is kept for as long as it is leased, and closing a lease twice has no effect
+        first.close();
+        first.close();
+        assertSame(second.getStack(), lease("a", TimeUnit.MINUTES.toMillis(5)).getStack());
+        assertEquals(1, createdStacks.get());
+        assertEquals(Collections.emptyList(), getRemovedContainers());
+    }
+
+    @Test
+    public void canEvictIdleStacks() throws Exception {
+        final StackLease first = lease("a", IDLE_TTL_MS);
+        final StackLease second = lease("a", IDLE_TTL_MS);
+
+        first.close();
+        Thread.sleep(IDLE_TTL_MS * 3);
+        assertEquals(Collections.emptyList(), getRemovedContainers());
+
+        second.close();
+        await().atMost(5, SECONDS).until(() -> getRemovedContainers().size() == 2);
+        assertEquals(Arrays.asList("a-1", "a-2"), getRemovedContainers());
+
+        // The evicted stack is re-created on the next lease
+        lease("a", IDLE_TTL_MS);
+        assertEquals(2, createdStacks.get());
+    }
+
+    @Test
+    public void canReuseStacksLeasedAgainBeforeTheyExpire() throws Exception {
+        final long idleTtlMs = TimeUnit.SECONDS.toMillis(1);
+        final StackLease first = lease("a", idleTtlMs);
+        first.close();
+        final StackLease second = lease("a", idleTtlMs);
+        assertSame(first.getStack(), second.getStack());
+
+        Thread.sleep(idleTtlMs * 2);
+        assertEquals(Collections.emptyList(), getRemovedContainers());
+        assertEquals(1, createdStacks.get());
+    }
+
+    @Test
+    public void canRetryFailedCreations() throws Exception {
+        try {
+            pool.lease("a", IDLE_TTL_MS, docker::getClient, () -> {
+                throw new IllegalStateException("Boom!");
+            });
+            fail("Expected the lease to fail");
+        } catch (IllegalStateException e) {
+            assertEquals("Boom!", e.getMessage());
+        }
+
+        lease("a", IDLE_TTL_MS);
+        assertEquals(1, createdStacks.get());
+    }
+
+    @Test
+    public void canTearDownAllStacksAndTheNetwork() throws Exception {
+        lease("a", TimeUnit.MINUTES.toMillis(5));
+        lease("b", TimeUnit.MINUTES.toMillis(5)).close();
+        final String network = pool.getNetworkName(docker.getClient(), docker::getClient);
+        assertSame(network, pool.getNetworkName(docker.getClient(), docker::getClient));
+        assertEquals(1, docker.getCalls("createNetwork").size());
+
+        pool.tearDownAll();
+        assertEquals(Sets.newHashSet("a-1", "a-2", "b-1", "b-2"), Sets.newHashSet(getRemovedContainers()));
+        assertEquals(1, docker.getCalls("removeNetwork").size());
+        assertEquals(network, docker.getCalls("removeNetwork").get(0)[0]);
+
+        // Nothing is left to tear down
+        pool.tearDownAll();
+        assertEquals(4, getRemovedContainers().size());
+        assertEquals(1, docker.getCalls("removeNetwork").size());
+    }
+
+    private StackLease lease(String fingerprint, long idleTtlMs) throws Exception {
+        return pool.lease(fingerprint, idleTtlMs, docker::getClient, () -> {
+            createdStacks.incrementAndGet();
+            return new PooledStack(fingerprint, Sets.newLinkedHashSet(Arrays.asList(fingerprint + "-1", fingerprint + "-2")),
+                    Collections.emptyMap());
+        });
+    }
+
+    private List<String> getRemovedContainers() {
+        return docker.getCalls("removeContainer").stream()
+                .map(args -> (String)args[0])
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.reaper;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.gizmo.docker.FakeDocker;
+import org.opennms.gizmo.docker.GizmoLabels;
+import org.opennms.gizmo.docker.reaper.Reaper.Heartbeat;
+
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+
+public class ReaperTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canDetectLiveHeartbeats() throws Exception {
+        final Path heartbeat = temporaryFolder.newFile("session.heartbeat").toPath();
+        assertEquals(Heartbeat.ALIVE, new Reaper("session", heartbeat, TimeUnit.MINUTES.toMillis(1)).checkHeartbeat());
+    }
+
+    @Test
+    public void canDetectStaleHeartbeats() throws Exception {
+        final Path heartbeat = temporaryFolder.newFile("session.heartbeat").toPath();
+        Files.setLastModifiedTime(heartbeat, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2)));
+        assertEquals(Heartbeat.STALE, new Reaper("session", heartbeat, TimeUnit.MINUTES.toMillis(1)).checkHeartbeat());
+    }
+
+    @Test
+    public void canDetectReleasedSessions() throws Exception {
+        final Path heartbeat = temporaryFolder.newFile("session.heartbeat").toPath();
+        Files.write(heartbeat, GizmoSession.RELEASED.getBytes(StandardCharsets.UTF_8));
+        // Released sessions are never reaped, even once stale
+        Files.setLastModifiedTime(heartbeat, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2)));
+        assertEquals(Heartbeat.RELEASED, new Reaper("session", heartbeat, TimeUnit.MINUTES.toMillis(1)).checkHeartbeat());
+    }
+
+    @Test
+    public void canDetectMissingHeartbeats() throws Exception {
+        final Path heartbeat = temporaryFolder.getRoot().toPath().resolve("missing.heartbeat");
+        assertEquals(Heartbeat.MISSING, new Reaper("session", heartbeat, TimeUnit.MINUTES.toMillis(1)).checkHeartbeat());
+    }
+
+    @Test
+    public void canRemoveContainersAndNetworksOfSession() throws Exception {
+        final Map<String, String> labels = ImmutableMap.of(GizmoLabels.SESSION, "session");
+        final FakeDocker docker = new FakeDocker()
+                .on("listContainers", args -> Arrays.asList(
+                        FakeDocker.container("c1", "nginx", 1, labels),
+                        FakeDocker.container("c2", "nginx", 2, labels)))
+                .on("removeContainer", args -> {
+                    if ("c1".equals(args[0])) {
+                        throw new DockerException("Failed");
+                    }
+                    return null;
+                })
+                .on("listNetworks", args -> Arrays.asList(FakeDocker.network("n1")))
+                .on("removeNetwork", args -> null);
+
+        new Reaper("session", temporaryFolder.getRoot().toPath().resolve("session.heartbeat"), TimeUnit.MINUTES.toMillis(1))
+            .reap(docker.getClient());
+
+        // Only the containers and networks labeled with the session are listed, including stopped containers
+        final DockerClient.Param[] containerFilters = (DockerClient.Param[])docker.getCalls("listContainers").get(0)[0];
+        assertEquals(Arrays.asList("all=true", "label=" + GizmoLabels.SESSION + "=session"), toStrings(containerFilters));
+        final DockerClient.Param[] networkFilters = (DockerClient.Param[])docker.getCalls("listNetworks").get(0)[0];
+        assertEquals(Arrays.asList("label=" + GizmoLabels.SESSION + "=session"), toStrings(networkFilters));
+
+        // A failed removal does not stop the others
+        assertEquals(Arrays.asList("c1", "c2"), docker.getCalls("removeContainer").stream()
+                .map(args -> args[0])
+                .collect(Collectors.toList()));
+        assertEquals(Arrays.asList("n1"), docker.getCalls("removeNetwork").stream()
+                .map(args -> args[0])
+                .collect(Collectors.toList()));
+    }
+
+    private static List<String> toStrings(DockerClient.Param[] params) {
+        return Arrays.stream(params)
+                .map(p -> p.name() + "=" + p.value())
+                .collect(Collectors.toList());
+    }
+}
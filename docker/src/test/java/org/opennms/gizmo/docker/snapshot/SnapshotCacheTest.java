@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.gizmo.docker.FakeDocker;
+
+import com.spotify.docker.client.exceptions.ConflictException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageInfo;
+
+public class SnapshotCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, String> idsByImage = new ConcurrentHashMap<>();
+    private final List<String> committed = new CopyOnWriteArrayList<>();
+    private FakeDocker docker;
+    private Path index;
+
+    @Before
+    public void setUp() {
+        index = temporaryFolder.getRoot().toPath().resolve("snapshots.properties");
+        idsByImage.put("nginx", "nginx-v1");
+        docker = new FakeDocker()
+                .on("inspectImage", args -> {
+                    final String id = idsByImage.get(args[0]);
+                    if (id == null) {
+                        throw new ImageNotFoundException((String)args[0]);
+                    }
+                    return FakeDocker.fromJson(ImageInfo.class, "{'Id': '" + id + "', 'Parent': '', 'Comment': '',"
+                            + " 'Created': '2019-01-01T00:00:00Z', 'Container': '', 'ContainerConfig': {}, 'DockerVersion': '18.09.0',"
+                            + " 'Author': '', 'Config': {}, 'Architecture': 'amd64', 'Os': 'linux', 'Size': 40, 'VirtualSize': 40}");
+                })
+                .on("commitContainer", args -> {
+                    final String image = args[1] + ":" + args[2];
+                    idsByImage.put(image, image);
+                    committed.add(image);
+                    return null;
+                })
+                .on("listImages", args -> committed.stream()
+                        .map(image -> image(image, image))
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void canLookupCommittedSnapshots() throws Exception {
+        final SnapshotCache cache = new SnapshotCache(docker.getClient(), SnapshotCache.DEFAULT_MAX_SIZE_BYTES, index);
+        final ContainerConfig config = ContainerConfig.builder().image("nginx").build();
+        assertNull(cache.lookup("web", config));
+
+        cache.commit("container-1", "web", config);
+        final String snapshot = cache.lookup("web", config);
+        assertEquals(committed, Arrays.asList(snapshot));
+        assertTrue(snapshot.startsWith(SnapshotCache.REPOSITORY + ":"));
+        final Object[] commit = docker.getCalls("commitContainer").get(0);
+        assertEquals("container-1", commit[0]);
+        assertEquals("web", ((ContainerConfig)commit[3]).labels().get(SnapshotCache.SNAPSHOT_LABEL));
+        assertNotNull(loadIndex().getProperty(snapshot));
+
+        // Snapshots are specific to the alias, the configuration and the base image
+        assertNull(cache.lookup("api", config));
+        assertNull(cache.lookup("web", config.toBuilder().env("DEBUG=true").build()));
+        idsByImage.put("nginx", "nginx-v2");
+        assertNull(cache.lookup("web", config));
+    }
+
+    @Test
+    public void canEvictLeastRecentlyUsedSnapshots() throws Exception {
+        final Properties lastUsed = new Properties();
+        lastUsed.setProperty("gizmo-snapshot:in-use", "500");
+        lastUsed.setProperty("gizmo-snapshot:old", "1000");
+        lastUsed.setProperty("gizmo-snapshot:newer", "2000");
+        try (OutputStream os = Files.newOutputStream(index)) {
+            lastUsed.store(os, null);
+        }
+        docker.on("listImages", args -> Stream.concat(
+                    Stream.of(image("in-use", "gizmo-snapshot:in-use"), image("old", "gizmo-snapshot:old"), image("newer", "gizmo-snapshot:newer")),
+                    committed.stream().map(image -> image(image, image)))
+                .collect(Collectors.toList()))
+            .on("removeImage", args -> {
+                if ("in-use".equals(args[0])) {
+                    throw new ConflictException("Image is being used by a running container");
+                }
+                return null;
+            });
+
+        // 4 snapshots of 40 bytes each, so 2 of them need to go
+        final SnapshotCache cache = new SnapshotCache(docker.getClient(), 100, index);
+        cache.commit("container-1", "web", ContainerConfig.builder().image("nginx").build());
+
+        final List<List<Object>> removals = docker.getCalls("removeImage").stream()
+                .map(Arrays::asList)
+                .collect(Collectors.toList());
+        // Snapshots in use are skipped, instead of being removed by force
+        assertEquals(Arrays.asList(
+                Arrays.asList("in-use", false, false),
+                Arrays.asList("old", false, false),
+                Arrays.asList("newer", false, false)), removals);
+
+        final Properties updated = loadIndex();
+        assertNotNull(updated.getProperty("gizmo-snapshot:in-use"));
+        assertFalse(updated.containsKey("gizmo-snapshot:old"));
+        assertFalse(updated.containsKey("gizmo-snapshot:newer"));
+        assertNotNull(updated.getProperty(committed.get(0)));
+    }
+
+    private static Image image(String id, String tag) {
+        return FakeDocker.fromJson(Image.class, "{'Id': '" + id + "', 'ParentId': '', 'RepoTags': ['" + tag + "'],"
+                + " 'Created': '1546300800', 'Size': 40, 'VirtualSize': 40}");
+    }
+
+    private Properties loadIndex() throws Exception {
+        final Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(index)) {
+            properties.load(is);
+        }
+        return properties;
+    }
+}
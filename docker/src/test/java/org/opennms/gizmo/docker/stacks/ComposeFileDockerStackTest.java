@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.docker.stacks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.gizmo.docker.GizmoDockerStack;
+
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.PortBinding;
+
+public class ComposeFileDockerStackTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canParseComposeFile() {
+        final ComposeFileDockerStack compose = new ComposeFileDockerStack(getClass().getResource("/docker-compose.yml"));
+        assertEquals("example", compose.getName());
+        assertEquals(Arrays.asList("db", "cache", "app"), Arrays.asList(compose.getServiceNames().toArray()));
+        // Wait for the health checked services once everything is started
+        assertEquals(1, compose.getWaitingRules().size());
+
+        final GizmoDockerStack db = compose.getService("db");
+        final GizmoDockerStack cache = compose.getService("cache");
+        final GizmoDockerStack app = compose.getService("app");
+        assertEquals(Arrays.asList(db, cache), app.getDependencies());
+        assertEquals(Collections.emptyList(), db.getDependencies());
+        // The app depends on the db being healthy, but only on the cache being started
+        assertEquals(1, db.getWaitingRules().size());
+        assertEquals(0, cache.getWaitingRules().size());
+
+        final ContainerConfig dbConfig = getConfig(db, "db");
+        assertEquals("postgres:9.5.4", dbConfig.image());
+        assertEquals(Collections.singletonList("POSTGRES_PASSWORD=postgres"), dbConfig.env());
+        assertEquals(Collections.singletonList(PortBinding.randomPort("0.0.0.0")), dbConfig.hostConfig().portBindings().get("5432/tcp"));
+        assertTrue(dbConfig.volumes().contains("/var/lib/postgresql/data"));
+        assertTrue(dbConfig.hostConfig().binds().get(0).endsWith("/init.sql:/docker-entrypoint-initdb.d/init.sql:ro"));
+        assertEquals(Arrays.asList("CMD-SHELL", "pg_isready -U postgres"), dbConfig.healthcheck().test());
+        assertEquals(Long.valueOf(TimeUnit.SECONDS.toNanos(90)), dbConfig.healthcheck().timeout());
+        assertEquals(Integer.valueOf(30), dbConfig.healthcheck().retries());
+
+        assertEquals(Arrays.asList("redis-server", "--appendonly", "yes"), getConfig(cache, "cache").cmd());
+
+        final ContainerConfig appConfig = getConfig(app, "app");
+        assertEquals(Collections.singletonList("DB_HOST=db"), appConfig.env());
+        assertEquals(Collections.singletonList(PortBinding.of("127.0.0.1", "8080")), appConfig.hostConfig().portBindings().get("80/tcp"));
+    }
+
+    @Test
+    public void canParseDurations() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), ComposeFileDockerStack.toNanos("500ms"));
+        assertEquals(TimeUnit.SECONDS.toNanos(90), ComposeFileDockerStack.toNanos("1m30s"));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2500), ComposeFileDockerStack.toNanos("2.5s"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsOnInvalidDurations() {
+        ComposeFileDockerStack.toNanos("10 seconds");
+    }
+
+    @Test
+    public void canTokenizeCommands() {
+        assertEquals(Arrays.asList("sh", "-c", "echo a b"), ComposeFileDockerStack.tokenize("sh -c \"echo a b\""));
+        assertEquals(Arrays.asList("sh", "-c", "echo 'a' \"b\""), ComposeFileDockerStack.tokenize("sh -c \"echo 'a' \\\"b\\\"\""));
+        assertEquals(Arrays.asList("echo", "a b", "c d"), ComposeFileDockerStack.tokenize("  echo 'a b' c\\ d  "));
+        assertEquals(Arrays.asList("echo", ""), ComposeFileDockerStack.tokenize("echo ''"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsOnUnterminatedQuotes() {
+        ComposeFileDockerStack.tokenize("sh -c \"echo a b");
+    }
+
+    @Test
+    public void canUnescapeDollarSigns() throws Exception {
+        final ComposeFileDockerStack compose = new ComposeFileDockerStack(write(
+                "services:\n"
+                + "  app:\n"
+                + "    image: alpine:3.8\n"
+                + "    command: sh -c 'echo $$HOME'\n"));
+        assertEquals(Arrays.asList("sh", "-c", "echo $HOME"), getConfig(compose.getService("app"), "app").cmd());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsOnVariableInterpolation() throws Exception {
+        new ComposeFileDockerStack(write(
+                "services:\n"
+                + "  app:\n"
+                + "    image: alpine:${TAG}\n"));
+    }
+
+    private Path write(String compose) throws Exception {
+        final Path composeFile = temporaryFolder.newFile("docker-compose.yml").toPath();
+        Files.write(composeFile, compose.getBytes(StandardCharsets.UTF_8));
+        return composeFile;
+    }
+
+    private static ContainerConfig getConfig(GizmoDockerStack stack, String alias) {
+        return stack.getContainersByAlias().get(alias).apply(null);
+    }
+}
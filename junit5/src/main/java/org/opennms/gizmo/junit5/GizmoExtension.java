@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.junit5;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.opennms.gizmo.GizmoRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JUnit 5 extension that stacks using a {@link GizmoRule}, and shares the stacks
+ * with all of the tests in the selected {@link Scope}.
+ *
+ * The stacks are torn down at the end of the scope, and are considered to have
+ * failed if any of the tests in the scope failed.
+ *
+ * <pre>
+ * &#64;RegisterExtension
+ * static GizmoExtension&lt;GizmoDockerRule&gt; gizmo = GizmoExtension.perClass(() -&gt; GizmoDockerRule.builder()
+ *      .withStack(new OpenNMSStack())
+ *      .build());
+ * </pre>
+ *
+ * The extension must be registered using a static field for the class and suite scopes.
+ * The rule, and its stacker, are resolved as parameters of the tests.
+ */
+public class GizmoExtension<R extends GizmoRule<?, ?>> implements BeforeAllCallback, AfterAllCallback,
+        BeforeEachCallback, AfterEachCallback, ParameterResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(GizmoExtension.class);
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(GizmoExtension.class);
+
+    public enum Scope {
+        /**
+         * Stacked and torn down around every test method.
+         */
+        METHOD,
+        /**
+         * Stacked before the first test of the class, and torn down after the last.
+         */
+        CLASS,
+        /**
+         * Stacked by the first test class that uses the suite key, and torn down once
+         * all of the tests in the test plan, i.e. the {@code @Suite}, have completed.
+         */
+        SUITE
+    }
+
+    /**
+     * Keeps track of a stacked rule, and of whether or not any of the tests using it failed.
+     */
+    private static class StackedRule<R extends GizmoRule<?, ?>> implements ExtensionContext.Store.CloseableResource {
+        private final R rule;
+        private volatile boolean didFail = false;
+
+        private StackedRule(R rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        public void close() {
+            rule.after(didFail);
+        }
+    }
+
+    private final Scope scope;
+    private final String suiteKey;
+    private final Supplier<R> ruleFactory;
+
+    private GizmoExtension(Scope scope, String suiteKey, Supplier<R> ruleFactory) {
+        this.scope = Objects.requireNonNull(scope);
+        this.suiteKey = suiteKey;
+        this.ruleFactory = Objects.requireNonNull(ruleFactory);
+    }
+
+    public static <R extends GizmoRule<?, ?>> GizmoExtension<R> perMethod(Supplier<R> ruleFactory) {
+        return new GizmoExtension<>(Scope.METHOD, null, ruleFactory);
+    }
+
+    public static <R extends GizmoRule<?, ?>> GizmoExtension<R> perClass(Supplier<R> ruleFactory) {
+        return new GizmoExtension<>(Scope.CLASS, null, ruleFactory);
+    }
+
+    /**
+     * Shares the stacks with all of the test classes that use the same key.
+     *
+     * The factory is only called by the first class to use the key.
+     */
+    public static <R extends GizmoRule<?, ?>> GizmoExtension<R> perSuite(String suiteKey, Supplier<R> ruleFactory) {
+        return new GizmoExtension<>(Scope.SUITE, Objects.requireNonNull(suiteKey), ruleFactory);
+    }
+
+    @Override
+    public void beforeAll(ExtensionContext context) throws Exception {
+        if (scope == Scope.CLASS) {
+            // Stored in the store of the class, so that @Nested classes get their own stacks,
+            // and the rule is closed along with the class context
+            context.getStore(NAMESPACE).put(this, stack(context.getRequiredTestClass().getName()));
+        } else if (scope == Scope.SUITE) {
+            // Resources in the root store are closed once the whole test plan has been executed
+            final ExtensionContext.Store store = context.getRoot().getStore(NAMESPACE);
+            synchronized (GizmoExtension.class) {
+                if (store.get(suiteKey, StackedRule.class) != null) {
+                    LOG.info("Reusing stacks for suite: {}", suiteKey);
+                } else {
+                    store.put(suiteKey, stack(suiteKey));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) throws Exception {
+        if (scope == Scope.METHOD) {
+            // Named like the description of a JUnit 4 rule
+            context.getStore(NAMESPACE).put(this, stack(String.format("%s(%s)", context.getRequiredTestMethod().getName(),
+                    context.getRequiredTestClass().getName())));
+        }
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        // The rules are torn down when the store of their scope is closed
+        flagFailure(context);
+    }
+
+    @Override
+    public void afterAll(ExtensionContext context) {
+        flagFailure(context);
+    }
+
+    private void flagFailure(ExtensionContext context) {
+        final StackedRule<R> current = getStacked(context);
+        if (current != null && context.getExecutionException().isPresent()) {
+            current.didFail = true;
+        }
+    }
+
+    /**
+     * @return the rule stacked for the given context, looking up the stores of the enclosing contexts
+     */
+    private StackedRule<R> getStacked(ExtensionContext context) {
+        final ExtensionContext.Store store = scope == Scope.SUITE ? context.getRoot().getStore(NAMESPACE) : context.getStore(NAMESPACE);
+        @SuppressWarnings("unchecked")
+        final StackedRule<R> stacked = store.get(scope == Scope.SUITE ? suiteKey : this, StackedRule.class);
+        return stacked;
+    }
+
+    private StackedRule<R> stack(String name) throws Exception {
+        final R rule = ruleFactory.get();
+        rule.setName(name);
+        try {
+            rule.before();
+        } catch (Exception e) {
+            rule.after(true);
+            throw e;
+        }
+        return new StackedRule<>(rule);
+    }
+
+    /**
+     * Resolves parameters of the rule's type, and of the stacker's type, i.e. GizmoDockerStacker.
+     */
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        final StackedRule<R> current = getStacked(extensionContext);
+        if (current == null) {
+            return false;
+        }
+        final Class<?> type = parameterContext.getParameter().getType();
+        return type.isInstance(current.rule) || type.isInstance(current.rule.getStacker());
+    }
+
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        final StackedRule<R> current = getStacked(extensionContext);
+        if (current == null) {
+            throw new ParameterResolutionException("Nothing is stacked in the current scope.");
+        }
+        return parameterContext.getParameter().getType().isInstance(current.rule) ? current.rule : current.rule.getStacker();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.junit5;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.opennms.gizmo.GizmoRule;
+import org.opennms.gizmo.GizmoStack;
+import org.opennms.gizmo.GizmoStackListener;
+import org.opennms.gizmo.GizmoStackListeners;
+import org.opennms.gizmo.GizmoStacker;
+
+public class GizmoExtensionTest {
+
+    private static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<>());
+    private static final List<MockStacker> STACKERS = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void setUp() {
+        EVENTS.clear();
+        STACKERS.clear();
+    }
+
+    @Test
+    public void canStackPerMethod() {
+        EngineTestKit.engine("junit-jupiter")
+            .selectors(selectClass(PerMethodTestCase.class))
+            .execute()
+            .testEvents()
+            .assertStatistics(stats -> stats.succeeded(2).failed(0));
+
+        final String name = PerMethodTestCase.class.getName();
+        assertEquals(Arrays.asList("started first(" + name + ")", "ended first(" + name + ") didFail=false",
+                "started second(" + name + ")", "ended second(" + name + ") didFail=false"), EVENTS);
+        assertNotSame(STACKERS.get(0), STACKERS.get(1));
+    }
+
+    @Test
+    public void canStackPerClass() {
+        EngineTestKit.engine("junit-jupiter")
+            .selectors(selectClass(PerClassTestCase.class))
+            .execute()
+            .testEvents()
+            .assertStatistics(stats -> stats.succeeded(2).failed(0));
+
+        final String name = PerClassTestCase.class.getName();
+        assertEquals(Arrays.asList("started " + name, "ended " + name + " didFail=false"), EVENTS);
+        assertSame(STACKERS.get(0), STACKERS.get(1));
+    }
+
+    @Test
+    public void canStackNestedClassesSeparately() {
+        EngineTestKit.engine("junit-jupiter")
+            .selectors(selectClass(OuterTestCase.class))
+            .execute()
+            .testEvents()
+            .assertStatistics(stats -> stats.succeeded(2).failed(0));
+
+        // The outer stacks are still torn down once the nested class is done
+        final String outer = OuterTestCase.class.getName();
+        final String inner = OuterTestCase.InnerTestCase.class.getName();
+        assertEquals(Arrays.asList("started " + outer, "started " + inner, "ended " + inner + " didFail=false",
+                "ended " + outer + " didFail=false"), EVENTS);
+        assertNotSame(STACKERS.get(0), STACKERS.get(1));
+    }
+
+    @Test
+    public void canShareStacksPerSuite() {
+        EngineTestKit.engine("junit-jupiter")
+            .selectors(selectClass(PerSuiteTestCase.class), selectClass(OtherPerSuiteTestCase.class))
+            .execute()
+            .testEvents()
+            .assertStatistics(stats -> stats.succeeded(2).failed(0));
+
+        // Stacked once, and torn down once both classes are done
+        assertEquals(Arrays.asList("started suite", "ended suite didFail=false"), EVENTS);
+        assertSame(STACKERS.get(0), STACKERS.get(1));
+    }
+
+    @Test
+    public void canFlagFailures() {
+        EngineTestKit.engine("junit-jupiter")
+            .selectors(selectClass(FailingTestCase.class))
+            .execute()
+            .testEvents()
+            .assertStatistics(stats -> stats.succeeded(1).failed(1));
+
+        final String name = FailingTestCase.class.getName();
+        assertEquals(Arrays.asList("started " + name, "ended " + name + " didFail=true"), EVENTS);
+    }
+
+    @TestMethodOrder(MethodOrderer.MethodName.class)
+    static class PerMethodTestCase {
+        @RegisterExtension
+        GizmoExtension<GizmoRule<MockStack, MockStacker>> gizmo = GizmoExtension.perMethod(GizmoExtensionTest::newRule);
+
+        @Test
+        void first(GizmoRule<?, ?> rule, MockStacker stacker) {
+            assertSame(rule.getStacker(), stacker);
+            STACKERS.add(stacker);
+        }
+
+        @Test
+        void second(GizmoRule<?, ?> rule, MockStacker stacker) {
+            assertSame(rule.getStacker(), stacker);
+            STACKERS.add(stacker);
+        }
+    }
+
+    static class PerClassTestCase {
+        @RegisterExtension
+        static GizmoExtension<GizmoRule<MockStack, MockStacker>> gizmo = GizmoExtension.perClass(GizmoExtensionTest::newRule);
+
+        @Test
+        void first(GizmoRule<?, ?> rule, MockStacker stacker) {
+            assertSame(rule.getStacker(), stacker);
+            STACKERS.add(stacker);
+        }
+
+        @Test
+        void second(GizmoRule<?, ?> rule, MockStacker stacker) {
+            assertSame(rule.getStacker(), stacker);
+            STACKERS.add(stacker);
+        }
+    }
+
+    static class OuterTestCase {
+        @RegisterExtension
+        static GizmoExtension<GizmoRule<MockStack, MockStacker>> gizmo = GizmoExtension.perClass(GizmoExtensionTest::newRule);
+
+        @Test
+        void outer(MockStacker stacker) {
+            STACKERS.add(stacker);
+        }
+
+        @Nested
+        class InnerTestCase {
+            @Test
+            void inner(MockStacker stacker) {
+                STACKERS.add(stacker);
+            }
+        }
+    }
+
+    static class PerSuiteTestCase {
+        @RegisterExtension
+        static GizmoExtension<GizmoRule<MockStack, MockStacker>> gizmo = GizmoExtension.perSuite("suite", GizmoExtensionTest::newRule);
+
+        @Test
+        void test(MockStacker stacker) {
+            STACKERS.add(stacker);
+        }
+    }
+
+    static class OtherPerSuiteTestCase {
+        @RegisterExtension
+        static GizmoExtension<GizmoRule<MockStack, MockStacker>> gizmo = GizmoExtension.perSuite("suite", GizmoExtensionTest::newRule);
+
+        @Test
+        void test(MockStacker stacker) {
+            STACKERS.add(stacker);
+        }
+    }
+
+    static class FailingTestCase {
+        @RegisterExtension
+        static GizmoExtension<GizmoRule<MockStack, MockStacker>> gizmo = GizmoExtension.perClass(GizmoExtensionTest::newRule);
+
+        @Test
+        void passes() {
+            // pass
+        }
+
+        @Test
+        void fails() {
+            throw new AssertionError("Failed.");
+        }
+    }
+
+    private static GizmoRule<MockStack, MockStacker> newRule() {
+        return new GizmoRule<>(new MockStacker(), Collections.singletonList(new MockStack()), false, false);
+    }
+
+    static class MockStack implements GizmoStack<MockStack, MockStacker> {
+        @Override
+        public List<MockStack> getDependencies() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Consumer<MockStacker>> getWaitingRules() {
+            return Collections.emptyList();
+        }
+    }
+
+    static class MockStacker implements GizmoStacker<MockStack> {
+        private final GizmoStackListeners listeners = new GizmoStackListeners(Collections.singletonList(new GizmoStackListener() {
+            @Override
+            public void ruleStarted(String ruleName, long nanoTime) {
+                EVENTS.add("started " + ruleName);
+            }
+
+            @Override
+            public void ruleEnded(String ruleName, long nanoTime, boolean didFail) {
+                EVENTS.add("ended " + ruleName + " didFail=" + didFail);
+            }
+        }));
+
+        @Override
+        public void init() {
+            // pass
+        }
+
+        @Override
+        public void stack(MockStack stack) {
+            // pass
+        }
+
+        @Override
+        public void tearDown() {
+            // pass
+        }
+
+        @Override
+        public void close() {
+            // pass
+        }
+
+        @Override
+        public GizmoStackListeners getListeners() {
+            return listeners;
+        }
+    }
+}
@@ -15,8 +15,14 @@
  */
 package org.opennms.gizmo.k8s;
 
+import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opennms.gizmo.GizmoStackListener;
+import org.opennms.gizmo.graph.StackGraphExecutor;
+import org.opennms.gizmo.k8s.portforward.PortForwardingStrategy;
 
 import io.fabric8.kubernetes.client.KubernetesClient;
 
@@ -26,6 +32,15 @@ public class GizmoK8sRuleBuilder {
     protected final List<GizmoK8sStack> stacks = new LinkedList<>();
     protected boolean skipTearDown = false;
     protected boolean skipTearDownOnFailure = false;
+    protected int stackingParallelism = StackGraphExecutor.DEFAULT_PARALLELISM;
+    protected int creationParallelism = 8;
+    protected long waitingBudgetMs = 0;
+    protected final List<GizmoStackListener> listeners = new LinkedList<>();
+    protected boolean timingReport = false;
+    protected Path manifestPath;
+    protected boolean podCache = false;
+    protected PortForwardingStrategy portForwardingStrategy;
+    protected long portForwardHealthCheckIntervalMs = TimeUnit.SECONDS.toMillis(5);
 
     public GizmoK8sRuleBuilder withKubernetesClient(KubernetesClient kubernetes) {
         this.kubernetes = kubernetes;
@@ -52,6 +67,98 @@ public class GizmoK8sRuleBuilder {
         return this;
     }
 
+    /**
+     * Sets the maximum number of independent stacks that can be stacked
+     * at the same time.
+     */
+    public GizmoK8sRuleBuilder withStackingParallelism(int stackingParallelism) {
+        this.stackingParallelism = stackingParallelism;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of objects that can be created at the same time.
+     */
+    public GizmoK8sRuleBuilder withCreationParallelism(int creationParallelism) {
+        this.creationParallelism = creationParallelism;
+        return this;
+    }
+
+    /**
+     * Sets the overall time budget shared by all of the waiting rules of a stack.
+     *
+     * Rules using {@link org.opennms.gizmo.readiness.Readiness} fail once the budget is spent.
+     */
+    public GizmoK8sRuleBuilder withWaitingBudget(long budget, TimeUnit unit) {
+        this.waitingBudgetMs = unit.toMillis(budget);
+        return this;
+    }
+
+    /**
+     * Sets the path of the stack manifest.
+     *
+     * Once stacked, the namespace, the fingerprints of the stacks, and any forwarded ports that
+     * outlive the JVM, are written to the manifest. If a manifest is already present, its namespace
+     * still exists, the stacks are unchanged and all of their pods are ready, the rule attaches
+     * to it instead of stacking, e.g. after a previous run that used {@link #skipTearDown(boolean)}.
+     */
+    public GizmoK8sRuleBuilder withManifest(Path manifestPath) {
+        this.manifestPath = manifestPath;
+        return this;
+    }
+
+    /**
+     * Registers a listener that is notified as the stacks go through the different phases.
+     */
+    public GizmoK8sRuleBuilder withListener(GizmoStackListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Enables or disables the JSON timing report, disabled by default.
+     *
+     * @see org.opennms.gizmo.timing.TimingReportListener
+     */
+    public GizmoK8sRuleBuilder withTimingReport(boolean timingReport) {
+        this.timingReport = timingReport;
+        return this;
+    }
+
+    /**
+     * Enables or disables the pod cache, disabled by default.
+     *
+     * When enabled, the pods in the namespace are watched, and pod queries
+     * are answered locally instead of calling the API server.
+     *
+     * @see org.opennms.gizmo.k8s.cache.PodCache
+     */
+    public GizmoK8sRuleBuilder withPodCache(boolean podCache) {
+        this.podCache = podCache;
+        return this;
+    }
+
+    /**
+     * Sets the strategy used to forward ports.
+     *
+     * Defaults to the {@link org.opennms.gizmo.k8s.portforward.ClientPortForwardingStrategy}, which forwards ports over
+     * the client's connections. Use the {@link org.opennms.gizmo.k8s.portforward.KubeCtlPortForwardingStrategy} to fork
+     * a kubectl process per forwarded port instead.
+     */
+    public GizmoK8sRuleBuilder withPortForwardingStrategy(PortForwardingStrategy portForwardingStrategy) {
+        this.portForwardingStrategy = portForwardingStrategy;
+        return this;
+    }
+
+    /**
+     * Sets the interval at which forwarded ports are health checked, and re-established
+     * if their pod was restarted. Defaults to 5 seconds, use 0 to disable the health checks.
+     */
+    public GizmoK8sRuleBuilder withPortForwardHealthCheckInterval(long interval, TimeUnit unit) {
+        this.portForwardHealthCheckIntervalMs = unit.toMillis(interval);
+        return this;
+    }
+
     public GizmoK8sRule build() {
         if (stacks.size() < 1) {
             throw new IllegalStateException("One or more stacks are required.");
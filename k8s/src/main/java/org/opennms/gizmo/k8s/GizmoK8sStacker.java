@@ -18,27 +18,57 @@ package org.opennms.gizmo.k8s;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
+import java.net.Socket;
 import java.net.URL;
-import java.util.LinkedList;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.opennms.gizmo.GizmoStackListener;
+import org.opennms.gizmo.GizmoStackListener.Phase;
+import org.opennms.gizmo.GizmoStackListeners;
+import org.opennms.gizmo.GizmoStackListeners.PhaseTimer;
 import org.opennms.gizmo.GizmoStacker;
-import org.opennms.gizmo.k8s.portforward.ForwardedPort;
-import org.opennms.gizmo.k8s.portforward.KubeCtlPortForwardingStrategy;
+import org.opennms.gizmo.graph.StackGraph;
+import org.opennms.gizmo.graph.StackGraphExecutor;
+import org.opennms.gizmo.manifest.StackManifest;
+import org.opennms.gizmo.k8s.cache.PodCache;
+import org.opennms.gizmo.k8s.portforward.ForwardedPortCache;
+import org.opennms.gizmo.k8s.portforward.ClientPortForwardingStrategy;
 import org.opennms.gizmo.k8s.portforward.PortForwardingStrategy;
+import org.opennms.gizmo.k8s.readiness.PodFailureMonitor;
+import org.opennms.gizmo.k8s.readiness.ReadinessWatch;
+import org.opennms.gizmo.k8s.stacks.ComponentBasedK8sStack;
+import org.opennms.gizmo.readiness.Deadline;
+import org.opennms.gizmo.timing.TimingReportListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import io.fabric8.kubernetes.api.KubernetesHelper;
 import io.fabric8.kubernetes.api.model.NamespaceBuilder;
 import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.utils.URLUtils;
@@ -47,16 +77,50 @@ import okhttp3.OkHttpClient;
 public class GizmoK8sStacker implements GizmoStacker<GizmoK8sStack> {
     private static final Logger LOG = LoggerFactory.getLogger(GizmoK8sStacker.class);
 
+    private static final String MANIFEST_NAMESPACE = "namespace";
+    private static final String MANIFEST_NAMESPACE_CREATED = "namespace.created";
+    private static final String MANIFEST_FORWARD = "forward.";
+    private static final String MANIFEST_STACK = "stack.";
+    private static final int FORWARD_LIVENESS_TIMEOUT_MS = 500;
+
     private KubernetesClient kubernetes;
     private String namespace;
     private boolean deleteNamespace = false;
+    private final int stackingParallelism;
+    private final int creationParallelism;
+    private ExecutorService creationExecutor;
+    private final long waitingBudgetMs;
+    private final GizmoStackListeners listeners;
+    private final boolean usePodCache;
+    private PodCache podCache;
+
+    private PortForwardingStrategy portFwdStrategy;
+    private final Map<GizmoK8sStack, List<Map<String, String>>> podSelectorsByStack = new ConcurrentHashMap<>();
+    private final long portForwardHealthCheckIntervalMs;
+    private ForwardedPortCache fwdedPorts;
 
-    private final PortForwardingStrategy portFwdStrategy = new KubeCtlPortForwardingStrategy();
-    private final List<ForwardedPort> fwdedPorts = new LinkedList<>();
+    /**
+     * Manifest used to attach to the namespace and forwarded ports of a previous run.
+     */
+    private final Path manifestPath;
+    private StackManifest manifest;
+    private boolean attached = false;
 
     public GizmoK8sStacker(GizmoK8sRuleBuilder builder) {
         kubernetes = builder.kubernetes;
         namespace = builder.namespace;
+        stackingParallelism = builder.stackingParallelism;
+        creationParallelism = builder.creationParallelism;
+        waitingBudgetMs = builder.waitingBudgetMs;
+        manifestPath = builder.manifestPath;
+        usePodCache = builder.podCache;
+        portFwdStrategy = builder.portForwardingStrategy;
+        portForwardHealthCheckIntervalMs = builder.portForwardHealthCheckIntervalMs;
+        final List<GizmoStackListener> allListeners = new ArrayList<>(builder.listeners);
+        if (builder.timingReport) {
+            allListeners.add(new TimingReportListener());
+        }
+        listeners = GizmoStackListeners.load(allListeners);
     }
 
     @Override
@@ -65,39 +129,280 @@ public class GizmoK8sStacker implements GizmoStacker<GizmoK8sStack> {
             // Initialize the default client
             kubernetes = new DefaultKubernetesClient();
         }
+        if (portFwdStrategy == null) {
+            portFwdStrategy = new ClientPortForwardingStrategy(kubernetes);
+        }
+        fwdedPorts = new ForwardedPortCache(portFwdStrategy, this::getPods, portForwardHealthCheckIntervalMs);
+
+        if (manifestPath != null) {
+            attached = attach();
+        }
 
         if (namespace == null) {
-            // Generate a new namespace with a random UUID
-            namespace = "gizmo-" + UUID.randomUUID().toString();
+            createNamespace();
+        }
+    }
 
-            LOG.info("Creating namespace: {}", namespace);
-            kubernetes.namespaces().create(new NamespaceBuilder().withNewMetadata()
-                    .withName(namespace)
-                    .addToLabels("scope", "test").endMetadata().build());
+    private void createNamespace() {
+        // Generate a new namespace with a random UUID
+        namespace = "gizmo-" + UUID.randomUUID().toString();
 
-            // Only delete the namespace if we created it.
-            deleteNamespace = true;
-        }
+        LOG.info("Creating namespace: {}", namespace);
+        kubernetes.namespaces().create(new NamespaceBuilder().withNewMetadata()
+                .withName(namespace)
+                .addToLabels("scope", "test").endMetadata().build());
+
+        // Only delete the namespace if we created it.
+        deleteNamespace = true;
+    }
+
+    @Override
+    public void stack(GizmoK8sStack stack) throws Exception {
+        stackAll(Collections.singletonList(stack));
     }
 
+    /**
+     * Stacks the given stacks along with all of their dependencies.
+     *
+     * Shared dependencies are only stacked once, and stacks that do not
+     * depend on one another are stacked concurrently.
+     */
     @Override
-    public void stack(GizmoK8sStack stack) {
-        for (GizmoK8sStack dependency : stack.getDependencies()) {
-            LOG.info("Stacking dependency: {}", dependency);
-            stack(dependency);
+    public void stackAll(List<GizmoK8sStack> stacks) throws Exception {
+        final StackGraph<GizmoK8sStack> graph = StackGraph.of(stacks);
+        if (attached) {
+            if (isAttachable(graph)) {
+                LOG.info("Attached to namespace {} using manifest: {}. Skipping stacking.", namespace, manifestPath);
+                return;
+            }
+            detach();
+        }
+        new StackGraphExecutor(stackingParallelism).execute(graph, this::doStack);
+        if (manifestPath != null) {
+            synchronized (this) {
+                manifest = new StackManifest()
+                        .put(MANIFEST_NAMESPACE, namespace)
+                        .put(MANIFEST_NAMESPACE_CREATED, Boolean.toString(deleteNamespace));
+                final List<GizmoK8sStack> sorted = graph.getStacks();
+                for (int i = 0; i < sorted.size(); i++) {
+                    final String fingerprint = StackFingerprint.of(sorted.get(i), this);
+                    if (fingerprint != null) {
+                        manifest.put(MANIFEST_STACK + i + ".fingerprint", fingerprint);
+                    }
+                }
+                manifest.store(manifestPath);
+            }
         }
+    }
 
-        // Create!
-        stack.create(this, kubernetes);
-
-        for (Consumer<GizmoK8sStacker> waitingRule : stack.getWaitingRules()) {
-            try {
-                waitingRule.accept(this);
-            } catch (Throwable t) {
-                LOG.error("waitFor() rule failed. Tearing down.", t);
-                throw Throwables.propagate(t);
+    /**
+     * Verifies that the attached namespace still holds the given stacks, i.e. that the
+     * fingerprints of the stacks match those they were created with, and that all of
+     * their pods and workloads are still ready.
+     *
+     * Stacks are matched to their fingerprints by their position in the stack graph.
+     */
+    private boolean isAttachable(StackGraph<GizmoK8sStack> graph) {
+        final StackManifest existing;
+        synchronized (this) {
+            existing = manifest;
+        }
+        final List<GizmoK8sStack> sorted = graph.getStacks();
+        if (existing.getWithPrefix(MANIFEST_STACK).size() != sorted.size()) {
+            LOG.info("Stacks in manifest {} don't match the stacks being stacked. Stacking from scratch.", manifestPath);
+            return false;
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            final String fingerprint = existing.get(MANIFEST_STACK + i + ".fingerprint");
+            if (fingerprint == null || !Objects.equals(fingerprint, StackFingerprint.of(sorted.get(i), this))) {
+                LOG.info("Definition of {} changed since manifest {} was written. Stacking from scratch.", sorted.get(i), manifestPath);
+                return false;
+            }
+        }
+        final String notReady = getNotReady(sorted);
+        if (notReady != null) {
+            LOG.info("The {} in namespace {} is no longer ready. Stacking from scratch.", notReady, namespace);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a description of the first pod or workload of the stacks that is not ready,
+     * or null if all of them are ready
+     */
+    private String getNotReady(List<GizmoK8sStack> stacks) {
+        for (Pod pod : kubernetes.pods().inNamespace(namespace).list().getItems()) {
+            final String phase = pod.getStatus() != null ? pod.getStatus().getPhase() : null;
+            if (!"Succeeded".equals(phase) && !KubernetesHelper.isPodReady(pod)) {
+                return "pod " + pod.getMetadata().getName();
+            }
+        }
+        for (GizmoK8sStack stack : stacks) {
+            if (!(stack instanceof ComponentBasedK8sStack)) {
+                continue;
             }
+            final ComponentBasedK8sStack components = (ComponentBasedK8sStack)stack;
+            for (StatefulSet statefulSet : components.getStatefulSets(this)) {
+                final String name = statefulSet.getMetadata().getName();
+                final StatefulSet current = kubernetes.apps().statefulSets().inNamespace(namespace).withName(name).get();
+                if (current == null || !ReadinessWatch.isReady(current)) {
+                    return "stateful set " + name;
+                }
+            }
+            for (Deployment deployment : components.getDeployments(this)) {
+                final String name = deployment.getMetadata().getName();
+                final Deployment current = kubernetes.apps().deployments().inNamespace(namespace).withName(name).get();
+                if (current == null || !ReadinessWatch.isReady(current)) {
+                    return "deployment " + name;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discards the attached namespace, so that the stacks can be stacked from scratch.
+     *
+     * Namespaces created by gizmo are deleted and replaced with a new namespace.
+     * Other namespaces are stacked into again.
+     */
+    private void detach() {
+        attached = false;
+        synchronized (this) {
+            manifest = null;
+        }
+        if (deleteNamespace) {
+            LOG.info("Deleting namespace: {}", namespace);
+            kubernetes.namespaces().withName(namespace).delete();
+            createNamespace();
+        } else {
+            LOG.warn("Namespace {} was not created by gizmo, and won't be deleted. Stacking into it again.", namespace);
+        }
+    }
+
+    /**
+     * Attaches to the namespace listed in the manifest, if it still exists.
+     *
+     * The stacks in the namespace are verified once they are known, see {@link #isAttachable(StackGraph)}.
+     */
+    private boolean attach() {
+        final StackManifest existing = StackManifest.load(manifestPath);
+        if (existing == null) {
+            return false;
+        }
+        final String manifestNamespace = existing.get(MANIFEST_NAMESPACE);
+        if (manifestNamespace == null || (namespace != null && !namespace.equals(manifestNamespace))) {
+            return false;
+        }
+        if (kubernetes.namespaces().withName(manifestNamespace).get() == null) {
+            LOG.info("Namespace {} in manifest {} no longer exists. Stacking from scratch.", manifestNamespace, manifestPath);
+            return false;
+        }
+        namespace = manifestNamespace;
+        deleteNamespace = Boolean.parseBoolean(existing.get(MANIFEST_NAMESPACE_CREATED));
+        synchronized (this) {
+            manifest = existing;
+        }
+        return true;
+    }
+
+    private void doStack(GizmoK8sStack stack) {
+        LOG.info("Stacking: {}", stack);
+        try (PhaseTimer timer = listeners.time(stack, Phase.STACK)) {
+            createStack(stack);
+            timer.succeeded();
+        }
+    }
+
+    private void createStack(GizmoK8sStack stack) {
+        // Create!
+        try (PhaseTimer timer = listeners.time(stack, Phase.CREATE).attribute(GizmoStackListener.NAMESPACE, namespace)) {
+            stack.create(this, kubernetes);
+            timer.succeeded();
+        }
+
+        // All of the waiting rules of the stack share the same budget
+        final Deadline deadline = waitingBudgetMs > 0 ? Deadline.after(waitingBudgetMs, TimeUnit.MILLISECONDS) : null;
+        final List<Map<String, String>> podSelectors = podSelectorsByStack.remove(stack);
+        try (PhaseTimer timer = listeners.time(stack, Phase.WAITING_RULES).attribute(GizmoStackListener.NAMESPACE, namespace);
+             PodFailureMonitor monitor = new PodFailureMonitor(kubernetes, namespace,
+                     podSelectors != null ? podSelectors : Collections.emptyList())) {
+            Deadline.runWithin(deadline, () -> {
+                final List<Consumer<GizmoK8sStacker>> waitingRules = stack.getWaitingRules();
+                for (int i = 0; i < waitingRules.size(); i++) {
+                    try (PhaseTimer ruleTimer = listeners.time(stack, Phase.WAITING_RULE, "rule-" + i)
+                            .attribute(GizmoStackListener.NAMESPACE, namespace)) {
+                        waitingRules.get(i).accept(this);
+                        ruleTimer.succeeded();
+                    } catch (Throwable t) {
+                        final IllegalStateException failure = monitor.getFailure();
+                        if (failure != null) {
+                            failure.addSuppressed(t);
+                            LOG.error("Pod failed while running the waitFor() rules. Tearing down.", failure);
+                            throw failure;
+                        }
+                        LOG.error("waitFor() rule failed. Tearing down.", t);
+                        throw Throwables.propagate(t);
+                    }
+                }
+            });
+            timer.succeeded();
+        }
+    }
+
+    /**
+     * Fails the waiting rules of the given stack as soon as one of the pods matching
+     * the given labels enters one of the {@link ReadinessWatch#FAILED_WAITING_REASONS},
+     * instead of waiting for them to time out.
+     *
+     * Must be called from {@link GizmoK8sStack#create(GizmoK8sStacker, KubernetesClient)}.
+     */
+    public void failFastOnPodErrors(GizmoK8sStack stack, Map<String, String> labels) {
+        if (labels.isEmpty()) {
+            return;
+        }
+        podSelectorsByStack.computeIfAbsent(stack, s -> Collections.synchronizedList(new ArrayList<>())).add(labels);
+    }
+
+    /**
+     * Runs the given creations concurrently, using a bounded executor shared by
+     * all of the stacks, and waits for all of them to complete.
+     *
+     * @throws RuntimeException the first failure, once all of the creations have completed
+     */
+    public void createAll(Collection<Runnable> creations) {
+        if (creations.isEmpty()) {
+            return;
+        } else if (creations.size() == 1) {
+            creations.iterator().next().run();
+            return;
+        }
+
+        final ExecutorService executor = getCreationExecutor();
+        final List<CompletableFuture<Void>> futures = creations.stream()
+                .map(creation -> CompletableFuture.runAsync(creation, executor))
+                .collect(Collectors.toList());
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private synchronized ExecutorService getCreationExecutor() {
+        if (creationExecutor == null) {
+            creationExecutor = Executors.newFixedThreadPool(creationParallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("gizmo-k8s-create-%d")
+                    .setDaemon(true)
+                    .build());
         }
+        return creationExecutor;
+    }
+
+    @Override
+    public GizmoStackListeners getListeners() {
+        return listeners;
     }
 
     @Override
@@ -110,20 +415,29 @@ public class GizmoK8sStacker implements GizmoStacker<GizmoK8sStack> {
         if (namespace != null && deleteNamespace) {
             LOG.info("Deleting namespace: {}", namespace);
             kubernetes.namespaces().withName(namespace).delete();
+            if (manifestPath != null) {
+                StackManifest.delete(manifestPath);
+            }
         }
 
-        for (ForwardedPort fwdedPort : fwdedPorts) {
-            try {
-                LOG.info("Closing forwarded port: {}", fwdedPort);
-                fwdedPort.close();
-            } catch (IOException e) {
-                LOG.warn("Failed to close forwarded port: {}", fwdedPort, e);
-            }
+        if (fwdedPorts != null) {
+            fwdedPorts.closeAll();
         }
     }
 
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (creationExecutor != null) {
+                creationExecutor.shutdownNow();
+            }
+            if (podCache != null) {
+                podCache.close();
+            }
+        }
+        if (fwdedPorts != null) {
+            fwdedPorts.close();
+        }
         if (kubernetes == null) {
             LOG.warn("Kubernetes client instance is null. Skipping tear down.");
             return;
@@ -139,30 +453,171 @@ public class GizmoK8sStacker implements GizmoStacker<GizmoK8sStack> {
         return namespace;
     }
 
+    private List<Pod> getPods(String namespace) {
+        if (usePodCache && namespace.equals(this.namespace)) {
+            return getPodCache().getPods();
+        }
+        return kubernetes.pods().inNamespace(namespace).list().getItems();
+    }
+
     public List<Pod> getPodsWithLabel(String key, String value) {
-        return kubernetes.pods().inNamespace(namespace).list().getItems().stream()
-                .filter(pod -> value.equals(pod.getMetadata().getLabels().get(key)))
-                .collect(Collectors.toList());
+        if (usePodCache) {
+            return getPodCache().getPodsWithLabels(Collections.singletonMap(key, value));
+        }
+        return kubernetes.pods().inNamespace(namespace).withLabel(key, value).list().getItems();
     }
 
     public List<Pod> getPodsWithLabels(Map<String, String> labels) {
-        return kubernetes.pods().inNamespace(namespace).list().getItems().stream()
-                .filter(p -> {
-                    final Map<String, String> podLabels = p.getMetadata().getLabels();
-                    for (Entry<String, String> label : labels.entrySet()) {
-                        if (!label.getValue().equals(podLabels.get(label.getKey()))) {
-                            return false;
-                        }
-                    }
-                    return true;
-                })
-                .collect(Collectors.toList());
+        if (usePodCache) {
+            return getPodCache().getPodsWithLabels(labels);
+        }
+        return kubernetes.pods().inNamespace(namespace).withLabels(labels).list().getItems();
+    }
+
+    /**
+     * Returns the pod cache for the namespace, starting it on first use.
+     */
+    private synchronized PodCache getPodCache() {
+        if (podCache == null) {
+            podCache = new PodCache(kubernetes, namespace);
+        }
+        return podCache;
+    }
+
+    /**
+     * @return a future that completes with the first ready pod matching the given labels,
+     * or fails as soon as one of them cannot start
+     */
+    public CompletableFuture<Pod> whenPodReady(Map<String, String> labels) {
+        return ReadinessWatch.whenPodReady(kubernetes, namespace, labels);
+    }
+
+    /**
+     * @return a future that completes once all of the replicas of the stateful set are ready,
+     * or fails as soon as one of its pods cannot start
+     */
+    public CompletableFuture<StatefulSet> whenStatefulSetReady(String name) {
+        return ReadinessWatch.whenStatefulSetReady(kubernetes, namespace, name);
+    }
+
+    /**
+     * @return a future that completes once the rollout of the deployment is complete,
+     * or fails as soon as one of its pods cannot start
+     */
+    public CompletableFuture<Deployment> whenDeploymentReady(String name) {
+        return ReadinessWatch.whenDeploymentReady(kubernetes, namespace, name);
+    }
+
+    public Pod awaitPodReady(long timeout, TimeUnit unit, Map<String, String> labels) {
+        return await(whenPodReady(labels), timeout, unit, "pods with labels " + labels);
+    }
+
+    public StatefulSet awaitStatefulSetReady(long timeout, TimeUnit unit, String name) {
+        return await(whenStatefulSetReady(name), timeout, unit, "stateful set " + name);
+    }
+
+    public Deployment awaitDeploymentReady(long timeout, TimeUnit unit, String name) {
+        return await(whenDeploymentReady(name), timeout, unit, "deployment " + name);
+    }
+
+    private static <T> T await(CompletableFuture<T> future, long timeout, TimeUnit unit, String description) {
+        final Deadline deadline = Deadline.earliest(Deadline.after(timeout, unit), Deadline.current());
+        try {
+            return future.get(deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(String.format("Timed out waiting for %s to be ready.", description));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } finally {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Waiting rule that blocks until one of the pods matching the given labels is ready.
+     */
+    public static Consumer<GizmoK8sStacker> waitForPodReady(long timeout, TimeUnit unit, Map<String, String> labels) {
+        return stacker -> stacker.awaitPodReady(timeout, unit, labels);
+    }
+
+    /**
+     * Waiting rule that blocks until all of the replicas of the stateful set are ready.
+     */
+    public static Consumer<GizmoK8sStacker> waitForStatefulSet(long timeout, TimeUnit unit, String name) {
+        return stacker -> stacker.awaitStatefulSetReady(timeout, unit, name);
     }
 
+    /**
+     * Waiting rule that blocks until the rollout of the deployment is complete.
+     */
+    public static Consumer<GizmoK8sStacker> waitForDeployment(long timeout, TimeUnit unit, String name) {
+        return stacker -> stacker.awaitDeploymentReady(timeout, unit, name);
+    }
+
+    /**
+     * Forwards a local port to the given port on the pod.
+     *
+     * Forwards are cached, and are re-established on the same local port if the pod
+     * restarts, following its labels to the new pod if the name of the pod changes.
+     * When a manifest is used, and the forwards of the strategy outlive the JVM,
+     * forwards recorded by a previous run are reused if they still accept connections.
+     */
     public InetSocketAddress portForward(String pod, int remotePort) {
-        ForwardedPort fwdedPort = portFwdStrategy.portForward(namespace, pod, remotePort);
-        fwdedPorts.add(fwdedPort);
-        return fwdedPort.getAddress();
+        final InetSocketAddress cached = fwdedPorts.get(namespace, pod, remotePort);
+        if (cached != null) {
+            return cached;
+        }
+        return portForward(pod, remotePort, () -> fwdedPorts.portForward(namespace, pod, remotePort));
+    }
+
+    /**
+     * Forwards a local port to the given port on the first ready pod matching the given labels.
+     *
+     * @see #portForward(String, int)
+     */
+    public InetSocketAddress portForward(Map<String, String> labels, int remotePort) {
+        return portForward(labels.toString(), remotePort, () -> fwdedPorts.portForward(namespace, labels, remotePort));
+    }
+
+    private InetSocketAddress portForward(String target, int remotePort, Supplier<InetSocketAddress> forward) {
+        // Forwards that die with the JVM that created them cannot be reused, and
+        // their port may since have been taken by an unrelated process
+        final boolean reusable = portFwdStrategy.forwardsOutliveJvm();
+        final String manifestKey = MANIFEST_FORWARD + target + "." + remotePort;
+        synchronized (this) {
+            final InetSocketAddress existing = manifest != null && reusable ? manifest.getAddress(manifestKey) : null;
+            if (existing != null && isAcceptingConnections(existing)) {
+                LOG.info("Reusing forwarded port {} for {}:{} from manifest.", existing, target, remotePort);
+                return existing;
+            }
+        }
+
+        final InetSocketAddress address;
+        try (PhaseTimer timer = listeners.time(null, Phase.PORT_FORWARD, target + ":" + remotePort)
+                .attribute(GizmoStackListener.NAMESPACE, namespace)
+                .attribute(GizmoStackListener.POD, target)
+                .attribute(GizmoStackListener.PORT, remotePort)) {
+            address = forward.get();
+            timer.succeeded();
+        }
+        synchronized (this) {
+            if (manifest != null && reusable) {
+                manifest.put(manifestKey, address).store(manifestPath);
+            }
+        }
+        return address;
+    }
+
+    private static boolean isAcceptingConnections(InetSocketAddress addr) {
+        try (Socket socket = new Socket()) {
+            socket.connect(addr, FORWARD_LIVENESS_TIMEOUT_MS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     public OkHttpClient getHttpClient() {
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.opennms.gizmo.k8s.stacks.ComponentBasedK8sStack;
+import org.opennms.gizmo.k8s.stacks.EmptyK8sStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.utils.Serialization;
+
+/**
+ * Computes fingerprints used to determine whether or not a stack
+ * would end up with the same objects as when it was created.
+ */
+public class StackFingerprint {
+    private static final Logger LOG = LoggerFactory.getLogger(StackFingerprint.class);
+
+    /**
+     * Fingerprints the stack using its type and all of the objects it declares.
+     *
+     * Only stacks that create exactly what they declare, i.e. that don't override
+     * {@link GizmoK8sStack#create(GizmoK8sStacker, KubernetesClient)}, can be fingerprinted.
+     *
+     * @return the fingerprint, or null if the objects created by the stack can't be determined
+     */
+    public static String of(GizmoK8sStack stack, GizmoK8sStacker stacker) {
+        final Class<?> creator = getCreator(stack);
+        if (creator != EmptyK8sStack.class && creator != ComponentBasedK8sStack.class) {
+            LOG.debug("{} creates its own objects. The stack has no fingerprint.", stack);
+            return null;
+        }
+        final Hasher hasher = Hashing.sha256().newHasher()
+                .putString(stack.getClass().getName(), StandardCharsets.UTF_8);
+        if (creator == ComponentBasedK8sStack.class) {
+            final ComponentBasedK8sStack components = (ComponentBasedK8sStack)stack;
+            try {
+                putAll(hasher, components.getSecrets(stacker));
+                putAll(hasher, components.getConfigMaps(stacker));
+                putAll(hasher, components.getServices(stacker));
+                putAll(hasher, components.getStatefulSets(stacker));
+                putAll(hasher, components.getDeployments(stacker));
+                putAll(hasher, components.getReplicationControllers(stacker));
+                putAll(hasher, components.getPods(stacker));
+            } catch (RuntimeException e) {
+                LOG.debug("Failed to resolve the objects of {}. The stack has no fingerprint.", stack, e);
+                return null;
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static Class<?> getCreator(GizmoK8sStack stack) {
+        try {
+            final Method create = stack.getClass().getMethod("create", GizmoK8sStacker.class, KubernetesClient.class);
+            return create.getDeclaringClass();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void putAll(Hasher hasher, List<?> objects) {
+        hasher.putInt(objects.size());
+        for (Object object : objects) {
+            hasher.putString(Serialization.asJson(object), StandardCharsets.UTF_8);
+        }
+    }
+}
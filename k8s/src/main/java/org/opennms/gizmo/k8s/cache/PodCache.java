@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.cache;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+
+/**
+ * Local cache of the pods in a namespace.
+ *
+ * The cache is populated with a single list call, and kept up to date
+ * by watching for changes from the resource version of that list. If the
+ * watch is closed unexpectedly, the pods are listed and watched again.
+ * Queries are answered from memory, without calling the API server.
+ * Every list populates a new map, which is swapped in once complete, so
+ * that queries never see a partially populated cache while resyncing.
+ */
+public class PodCache implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PodCache.class);
+
+    private static final long RESYNC_DELAY_MS = 1000;
+
+    private final KubernetesClient kubernetes;
+    private final String namespace;
+    private volatile Map<String, Pod> podsByName = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService resyncExecutor;
+    private Watch watch;
+    private volatile boolean closed = false;
+
+    public PodCache(KubernetesClient kubernetes, String namespace) {
+        this.kubernetes = kubernetes;
+        this.namespace = namespace;
+        resyncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("gizmo-pod-cache-" + namespace)
+                .setDaemon(true)
+                .build());
+        sync();
+    }
+
+    private synchronized void sync() {
+        if (closed) {
+            return;
+        }
+        final PodList pods = kubernetes.pods().inNamespace(namespace).list();
+        final Map<String, Pod> synced = new ConcurrentHashMap<>();
+        for (Pod pod : pods.getItems()) {
+            synced.put(pod.getMetadata().getName(), pod);
+        }
+        podsByName = synced;
+        final String resourceVersion = pods.getMetadata().getResourceVersion();
+        LOG.debug("Cached {} pods in namespace {} at resource version {}.", synced.size(), namespace, resourceVersion);
+        watch = kubernetes.pods().inNamespace(namespace).withResourceVersion(resourceVersion).watch(new Watcher<Pod>() {
+            @Override
+            public void eventReceived(Action action, Pod pod) {
+                final String name = pod.getMetadata().getName();
+                if (action == Action.DELETED) {
+                    synced.remove(name);
+                } else if (action == Action.ADDED || action == Action.MODIFIED) {
+                    synced.put(name, pod);
+                }
+            }
+
+            @Override
+            public void onClose(KubernetesClientException cause) {
+                if (closed) {
+                    return;
+                }
+                LOG.info("Pod watch on namespace {} closed. Resyncing.", namespace, cause);
+                resyncExecutor.schedule(PodCache.this::resync, RESYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private void resync() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to resync pods in namespace {}. Retrying.", namespace, e);
+            if (!closed) {
+                resyncExecutor.schedule(this::resync, RESYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public List<Pod> getPods() {
+        return podsByName.values().stream().collect(Collectors.toList());
+    }
+
+    public List<Pod> getPodsWithLabels(Map<String, String> labels) {
+        return podsByName.values().stream()
+                .filter(pod -> hasLabels(pod, labels))
+                .collect(Collectors.toList());
+    }
+
+    private static boolean hasLabels(Pod pod, Map<String, String> labels) {
+        final Map<String, String> podLabels = pod.getMetadata().getLabels();
+        for (Entry<String, String> label : labels.entrySet()) {
+            if (podLabels == null || !label.getValue().equals(podLabels.get(label.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        resyncExecutor.shutdownNow();
+        if (watch != null) {
+            watch.close();
+        }
+        podsByName = new ConcurrentHashMap<>();
+    }
+}
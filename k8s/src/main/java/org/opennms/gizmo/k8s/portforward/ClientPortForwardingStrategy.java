@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.portforward;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.PortForward;
+
+/**
+ * Forwards ports using the websocket port forwarding of the Kubernetes client,
+ * without forking a kubectl process.
+ *
+ * Each forwarded port is a server socket bound to an ephemeral port on the
+ * loopback address. Every connection accepted on it is forwarded over its own
+ * websocket, using the HTTP connection pool of the client. If connections
+ * repeatedly fail to be accepted, i.e. when running out of file descriptors,
+ * the accept loop backs off, and eventually closes the forwarded port.
+ */
+public class ClientPortForwardingStrategy implements PortForwardingStrategy {
+    private static final Logger LOG = LoggerFactory.getLogger(ClientPortForwardingStrategy.class);
+
+    protected static final long INITIAL_ACCEPT_BACKOFF_MS = 10;
+    protected static final long MAX_ACCEPT_BACKOFF_MS = 1000;
+    protected static final int MAX_ACCEPT_FAILURES = 20;
+
+    private final KubernetesClient kubernetes;
+
+    public ClientPortForwardingStrategy(KubernetesClient kubernetes) {
+        this.kubernetes = kubernetes;
+    }
+
+    @Override
+    public ForwardedPort portForward(String namespace, String pod, int remotePort) {
+        return portForward(namespace, pod, remotePort, 0);
+    }
+
+    @Override
+    public ForwardedPort portForward(String namespace, String pod, int remotePort, int localPort) {
+        final ServerSocketChannel serverChannel;
+        try {
+            serverChannel = ServerSocketChannel.open();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        try {
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort));
+        } catch (IOException e) {
+            try {
+                serverChannel.close();
+            } catch (IOException ex) {
+                e.addSuppressed(ex);
+            }
+            throw Throwables.propagate(e);
+        }
+        final ClientForwardedPort fwdedPort = new ClientForwardedPort(namespace, pod, remotePort, serverChannel);
+        final Thread thread = new Thread(fwdedPort::accept, String.format("gizmo-port-forward-%s:%d", pod, remotePort));
+        thread.setDaemon(true);
+        thread.start();
+        return fwdedPort;
+    }
+
+    private class ClientForwardedPort implements ForwardedPort {
+        private final String namespace;
+        private final String pod;
+        private final int remotePort;
+        private final ServerSocketChannel serverChannel;
+        private final InetSocketAddress address;
+        private final List<PortForward> forwards = new LinkedList<>();
+
+        private ClientForwardedPort(String namespace, String pod, int remotePort, ServerSocketChannel serverChannel) {
+            this.namespace = namespace;
+            this.pod = pod;
+            this.remotePort = remotePort;
+            this.serverChannel = serverChannel;
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), serverChannel.socket().getLocalPort());
+        }
+
+        private void accept() {
+            int failures = 0;
+            long backoffMs = INITIAL_ACCEPT_BACKOFF_MS;
+            while (serverChannel.isOpen()) {
+                final SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    if (++failures >= MAX_ACCEPT_FAILURES) {
+                        LOG.error("Failed to accept connection on {} {} times in a row. Closing it.", this, failures, e);
+                        try {
+                            close();
+                        } catch (IOException ex) {
+                            LOG.warn("Failed to close {}.", this, ex);
+                        }
+                        break;
+                    }
+                    LOG.warn("Failed to accept connection on {}. Retrying in {}ms.", this, backoffMs, e);
+                    try {
+                        Thread.sleep(backoffMs);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    backoffMs = Math.min(backoffMs * 2, MAX_ACCEPT_BACKOFF_MS);
+                    continue;
+                }
+                failures = 0;
+                backoffMs = INITIAL_ACCEPT_BACKOFF_MS;
+                try {
+                    final PortForward forward = kubernetes.pods().inNamespace(namespace).withName(pod)
+                            .portForward(remotePort, channel, channel);
+                    synchronized (forwards) {
+                        forwards.removeIf(f -> !f.isAlive());
+                        forwards.add(forward);
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to forward connection on {}.", this, e);
+                    closeQuietly(channel);
+                }
+            }
+        }
+
+        @Override
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return serverChannel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverChannel.close();
+            final List<PortForward> toClose;
+            synchronized (forwards) {
+                toClose = new ArrayList<>(forwards);
+                forwards.clear();
+            }
+            for (PortForward forward : toClose) {
+                try {
+                    forward.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close forwarded connection on {}.", this, e);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ForwardedPort[localPort=%d, pod=%s, remotePort=%d]", address.getPort(), pod, remotePort);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
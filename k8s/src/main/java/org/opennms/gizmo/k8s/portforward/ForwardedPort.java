@@ -22,4 +22,11 @@ public interface ForwardedPort extends Closeable {
 
     InetSocketAddress getAddress();
 
+    /**
+     * @return false if the forward died, and needs to be re-established
+     */
+    default boolean isAlive() {
+        return true;
+    }
+
 }
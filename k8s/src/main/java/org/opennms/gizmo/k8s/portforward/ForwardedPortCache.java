@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.portforward;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.opennms.gizmo.k8s.utils.StackUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.model.Pod;
+
+/**
+ * Cache of forwarded ports, keyed by namespace, pod and port.
+ *
+ * The forwards are health checked in the background, using a single pod listing per
+ * namespace for all of the forwards, which is served from the pod cache when enabled.
+ * A forward is re-established on the same local port when it dies, or when its pod is
+ * gone and a pod matching the labels of the original pod is ready. Pods that still exist
+ * are waited for, so stateful set pods keep their identity across restarts, while the
+ * pods of deployments are followed to their new names.
+ */
+public class ForwardedPortCache implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(ForwardedPortCache.class);
+
+    /**
+     * Labels that differ between the replaceable pods of the same workload.
+     *
+     * The stateful set pod name label is kept, so that the forwards of a stateful
+     * set pod are only ever re-established to the pod with the same identity.
+     */
+    private static final Set<String> POD_SPECIFIC_LABELS = ImmutableSet.of(
+            "pod-template-hash", "controller-revision-hash");
+
+    private final PortForwardingStrategy strategy;
+    private final Function<String, List<Pod>> podLister;
+    private final Map<String, Forward> forwardsByKey = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService healthCheckExecutor;
+
+    private static class Forward {
+        private final String namespace;
+        private final int remotePort;
+        private final Map<String, String> selector;
+        private String pod;
+        private ForwardedPort fwdedPort;
+
+        private Forward(String namespace, String pod, int remotePort, Map<String, String> selector) {
+            this.namespace = namespace;
+            this.pod = pod;
+            this.remotePort = remotePort;
+            this.selector = selector;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Forward[namespace=%s, pod=%s, remotePort=%d, selector=%s, fwdedPort=%s]",
+                    namespace, pod, remotePort, selector, fwdedPort);
+        }
+    }
+
+    /**
+     * @param podLister lists the pods in the given namespace
+     * @param healthCheckIntervalMs interval between the health checks, or 0 to disable them
+     */
+    public ForwardedPortCache(PortForwardingStrategy strategy, Function<String, List<Pod>> podLister, long healthCheckIntervalMs) {
+        this.strategy = strategy;
+        this.podLister = podLister;
+        if (healthCheckIntervalMs > 0) {
+            healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("gizmo-port-forward-health-%d")
+                    .setDaemon(true)
+                    .build());
+            healthCheckExecutor.scheduleWithFixedDelay(this::checkAll, healthCheckIntervalMs,
+                    healthCheckIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            healthCheckExecutor = null;
+        }
+    }
+
+    /**
+     * @return the address of the cached forward, or null if the port is not forwarded yet
+     */
+    public InetSocketAddress get(String namespace, String pod, int remotePort) {
+        final Forward forward = forwardsByKey.get(toKey(namespace, pod, remotePort));
+        if (forward == null) {
+            return null;
+        }
+        synchronized (forward) {
+            return forward.fwdedPort != null ? forward.fwdedPort.getAddress() : null;
+        }
+    }
+
+    /**
+     * Forwards a local port to the given port on the pod, reusing the cached forward if present.
+     */
+    public InetSocketAddress portForward(String namespace, String pod, int remotePort) {
+        final Forward forward = forwardsByKey.computeIfAbsent(toKey(namespace, pod, remotePort),
+                key -> new Forward(namespace, pod, remotePort, getSelector(namespace, pod)));
+        synchronized (forward) {
+            if (forward.fwdedPort == null) {
+                forward.fwdedPort = strategy.portForward(namespace, pod, remotePort);
+                LOG.info("Forwarded {}:{} to {}.", pod, remotePort, forward.fwdedPort.getAddress());
+            }
+            return forward.fwdedPort.getAddress();
+        }
+    }
+
+    /**
+     * Forwards a local port to the given port on the first ready pod matching the given labels.
+     */
+    public InetSocketAddress portForward(String namespace, Map<String, String> labels, int remotePort) {
+        final Pod pod = getFirstReadyPod(podLister.apply(namespace), labels);
+        if (pod == null) {
+            throw new IllegalStateException(String.format("No ready pods found with labels: %s", labels));
+        }
+        final String key = toKey(namespace, labels.toString(), remotePort);
+        final Forward forward = forwardsByKey.computeIfAbsent(key,
+                k -> new Forward(namespace, pod.getMetadata().getName(), remotePort, labels));
+        synchronized (forward) {
+            if (forward.fwdedPort == null) {
+                forward.fwdedPort = strategy.portForward(namespace, forward.pod, remotePort);
+                LOG.info("Forwarded {}:{} to {}.", forward.pod, remotePort, forward.fwdedPort.getAddress());
+            }
+            return forward.fwdedPort.getAddress();
+        }
+    }
+
+    protected void checkAll() {
+        final Map<String, List<Forward>> forwardsByNamespace = forwardsByKey.values().stream()
+                .collect(Collectors.groupingBy(f -> f.namespace));
+        for (Entry<String, List<Forward>> entry : forwardsByNamespace.entrySet()) {
+            final List<Pod> pods;
+            try {
+                pods = podLister.apply(entry.getKey());
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to list the pods in namespace {}. Skipping health checks.", entry.getKey(), e);
+                continue;
+            }
+            for (Forward forward : entry.getValue()) {
+                try {
+                    check(forward, pods);
+                } catch (RuntimeException e) {
+                    LOG.warn("Health check of {} failed.", forward, e);
+                }
+            }
+        }
+    }
+
+    private void check(Forward forward, List<Pod> pods) {
+        synchronized (forward) {
+            if (forward.fwdedPort == null) {
+                return;
+            }
+            final Pod current = pods.stream()
+                    .filter(p -> forward.pod.equals(p.getMetadata().getName()))
+                    .findFirst().orElse(null);
+            final boolean podReady = current != null && KubernetesHelper.isPodReady(current);
+            if (podReady && forward.fwdedPort.isAlive()) {
+                return;
+            }
+
+            final String target;
+            if (podReady) {
+                // The pod is fine, but the forward died
+                target = forward.pod;
+            } else if (current != null) {
+                LOG.debug("Pod of {} is not ready. Waiting.", forward);
+                return;
+            } else {
+                // The pod is gone, follow the selector to its replacement
+                final Pod pod = forward.selector != null ? getFirstReadyPod(pods, forward.selector) : null;
+                if (pod == null) {
+                    LOG.debug("No ready pods for {}. Waiting.", forward);
+                    return;
+                }
+                target = pod.getMetadata().getName();
+            }
+
+            LOG.info("Re-establishing {} to pod {}.", forward, target);
+            final int localPort = forward.fwdedPort.getAddress().getPort();
+            try {
+                forward.fwdedPort.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close forwarded port: {}", forward.fwdedPort, e);
+            }
+            forward.fwdedPort = strategy.portForward(forward.namespace, target, forward.remotePort, localPort);
+            forward.pod = target;
+        }
+    }
+
+    /**
+     * @return the labels of the given pod that are shared with the pods that may replace it,
+     * or null if the pod cannot be found or has no labels
+     */
+    private Map<String, String> getSelector(String namespace, String pod) {
+        final Pod existing = podLister.apply(namespace).stream()
+                .filter(p -> pod.equals(p.getMetadata().getName()))
+                .findFirst().orElse(null);
+        if (existing == null || existing.getMetadata().getLabels() == null) {
+            return null;
+        }
+        final Map<String, String> selector = new HashMap<>(existing.getMetadata().getLabels());
+        selector.keySet().removeAll(POD_SPECIFIC_LABELS);
+        return selector.isEmpty() ? null : Collections.unmodifiableMap(selector);
+    }
+
+    private static Pod getFirstReadyPod(List<Pod> pods, Map<String, String> labels) {
+        return StackUtils.getFirstReadyPod(pods.stream()
+                .filter(p -> p.getMetadata().getLabels() != null
+                        && p.getMetadata().getLabels().entrySet().containsAll(labels.entrySet()))
+                .collect(Collectors.toList()));
+    }
+
+    private static String toKey(String namespace, String target, int remotePort) {
+        return namespace + "/" + target + ":" + remotePort;
+    }
+
+    /**
+     * Closes all of the forwarded ports.
+     */
+    public void closeAll() {
+        final List<Forward> forwards = new ArrayList<>(forwardsByKey.values());
+        forwardsByKey.clear();
+        for (Forward forward : forwards) {
+            synchronized (forward) {
+                if (forward.fwdedPort == null) {
+                    continue;
+                }
+                try {
+                    LOG.info("Closing forwarded port: {}", forward.fwdedPort);
+                    forward.fwdedPort.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close forwarded port: {}", forward.fwdedPort, e);
+                }
+                forward.fwdedPort = null;
+            }
+        }
+    }
+
+    /**
+     * Stops the health checks. Forwards that do not outlive the JVM are closed
+     * as well, since they can no longer be used once the client is closed.
+     */
+    @Override
+    public void close() {
+        if (healthCheckExecutor != null) {
+            healthCheckExecutor.shutdownNow();
+        }
+        if (!strategy.forwardsOutliveJvm()) {
+            closeAll();
+        }
+    }
+}
@@ -58,17 +58,32 @@ public class KubeCtlPortForwardingStrategy implements PortForwardingStrategy {
         throw new RuntimeException(String.format("Process execution failed. Stdout: %s Stderr: %s", out, err));
     }
 
+    /**
+     * The kubectl processes are not destroyed when the JVM exits, but their output
+     * is piped into the JVM, so they die on their next write once it is gone.
+     */
+    @Override
+    public boolean forwardsOutliveJvm() {
+        return false;
+    }
+
     @Override
     public ForwardedPort portForward(String namespace, String pod, int remotePort) {
+        return portForward(namespace, pod, remotePort, 0);
+    }
+
+    @Override
+    public ForwardedPort portForward(String namespace, String pod, int remotePort, int requestedLocalPort) {
         CommandLine cmdLine = new CommandLine("kubectl");
         cmdLine.addArgument("--namespace=${namespace}");
         cmdLine.addArgument("port-forward");
         cmdLine.addArgument("${pod}");
-        cmdLine.addArgument(":${remotePort}");
+        cmdLine.addArgument("${localPort}:${remotePort}");
 
         HashMap<String, String> map = new HashMap<>();
         map.put("namespace", namespace);
         map.put("pod", pod);
+        map.put("localPort", requestedLocalPort > 0 ? Integer.toString(requestedLocalPort) : "");
         map.put("remotePort", Integer.toString(remotePort));
         cmdLine.setSubstitutionMap(map);
 
@@ -95,6 +110,11 @@ public class KubeCtlPortForwardingStrategy implements PortForwardingStrategy {
                 return new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort);
             }
 
+            @Override
+            public boolean isAlive() {
+                return wd.isWatching();
+            }
+
             @Override
             public void close() throws IOException {
                 wd.destroyProcess();
@@ -19,4 +19,22 @@ public interface PortForwardingStrategy {
 
     public ForwardedPort portForward(String namespace, String pod, int remotePort);
 
+    /**
+     * Forwards the given local port to the given port on the pod, used to re-establish
+     * a forward on the same address.
+     *
+     * Strategies that cannot choose the local port forward an ephemeral port instead.
+     */
+    default ForwardedPort portForward(String namespace, String pod, int remotePort, int localPort) {
+        return portForward(namespace, pod, remotePort);
+    }
+
+    /**
+     * @return true if the forwards keep working after the JVM that created them exits,
+     * so that they can be reused by later runs
+     */
+    default boolean forwardsOutliveJvm() {
+        return false;
+    }
+
 }
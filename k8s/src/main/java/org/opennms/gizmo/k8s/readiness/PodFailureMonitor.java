@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.readiness;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+/**
+ * Interrupts the thread running the waiting rules of a stack as soon as
+ * one of its pods fails, so that the rules do not wait for an application
+ * that will never come up, i.e. when its image cannot be pulled.
+ */
+public class PodFailureMonitor implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PodFailureMonitor.class);
+
+    private final Thread waitingThread = Thread.currentThread();
+    private final List<CompletableFuture<Pod>> futures = new ArrayList<>();
+    private IllegalStateException failure;
+    private boolean waiting = true;
+
+    /**
+     * Starts monitoring the pods matching any of the given selectors on behalf of the current thread.
+     */
+    public PodFailureMonitor(KubernetesClient kubernetes, String namespace, Collection<Map<String, String>> selectors) {
+        for (Map<String, String> labels : selectors) {
+            final CompletableFuture<Pod> future = ReadinessWatch.whenPodFailed(kubernetes, namespace, labels);
+            futures.add(future);
+            future.thenAccept(this::failed);
+        }
+    }
+
+    private synchronized void failed(Pod pod) {
+        if (failure != null) {
+            return;
+        }
+        failure = new IllegalStateException(ReadinessWatch.getFailureReason(pod));
+        if (waiting) {
+            LOG.error("{}. Interrupting the waiting rules.", failure.getMessage());
+            waitingThread.interrupt();
+        }
+    }
+
+    /**
+     * @return the failure of the first pod that failed, or null if none have failed
+     */
+    public synchronized IllegalStateException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void close() {
+        final boolean interrupted;
+        synchronized (this) {
+            waiting = false;
+            interrupted = failure != null;
+        }
+        futures.forEach(future -> future.cancel(false));
+        if (interrupted && Thread.currentThread() == waitingThread) {
+            // Clear the interrupt, the failure is reported instead
+            Thread.interrupted();
+        }
+    }
+}
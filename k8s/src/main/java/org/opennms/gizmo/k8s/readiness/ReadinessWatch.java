@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.readiness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+import io.fabric8.kubernetes.api.KubernetesHelper;
+import io.fabric8.kubernetes.api.model.ContainerStateWaiting;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.LabelSelector;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodTemplateSpec;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.Watchable;
+
+/**
+ * Readiness futures driven by the watch API.
+ *
+ * Each future completes on the watch event that makes the object ready,
+ * and fails as soon as one of the pods involved enters one of the
+ * {@link #FAILED_WAITING_REASONS}. The watches are closed once the
+ * futures complete, or are cancelled.
+ */
+public class ReadinessWatch {
+    private static final Logger LOG = LoggerFactory.getLogger(ReadinessWatch.class);
+
+    /**
+     * Container waiting reasons from which the pod will not recover on its own.
+     */
+    public static final Set<String> FAILED_WAITING_REASONS = ImmutableSet.of(
+            "CrashLoopBackOff", "ImagePullBackOff", "ErrImagePull");
+
+    /**
+     * @return a future that completes with the first ready pod matching the given labels
+     */
+    public static CompletableFuture<Pod> whenPodReady(KubernetesClient kubernetes, String namespace, Map<String, String> labels) {
+        return watch(kubernetes.pods().inNamespace(namespace).withLabels(labels),
+                () -> kubernetes.pods().inNamespace(namespace).withLabels(labels).list().getItems(),
+                (pod, future) -> {
+                    failIfFailed(pod, future);
+                    if (KubernetesHelper.isPodReady(pod)) {
+                        LOG.info("{} is ready.", pod.getMetadata().getName());
+                        future.complete(pod);
+                    }
+                });
+    }
+
+    /**
+     * @return a future that completes with the first pod matching the given labels that
+     * has a container in one of the {@link #FAILED_WAITING_REASONS}
+     */
+    public static CompletableFuture<Pod> whenPodFailed(KubernetesClient kubernetes, String namespace, Map<String, String> labels) {
+        return watch(kubernetes.pods().inNamespace(namespace).withLabels(labels),
+                () -> kubernetes.pods().inNamespace(namespace).withLabels(labels).list().getItems(),
+                (pod, future) -> {
+                    if (getFailureReason(pod) != null) {
+                        future.complete(pod);
+                    }
+                });
+    }
+
+    /**
+     * @return a future that completes once all of the replicas of the stateful set are ready
+     */
+    public static CompletableFuture<StatefulSet> whenStatefulSetReady(KubernetesClient kubernetes, String namespace, String name) {
+        final CompletableFuture<StatefulSet> future = watch(kubernetes.apps().statefulSets().inNamespace(namespace).withName(name),
+                () -> nullToEmpty(kubernetes.apps().statefulSets().inNamespace(namespace).withName(name).get()),
+                (statefulSet, f) -> {
+                    if (isReady(statefulSet)) {
+                        LOG.info("Stateful set {} is ready with {} replicas.", name, statefulSet.getStatus().getReadyReplicas());
+                        f.complete(statefulSet);
+                    }
+                });
+        return failFast(kubernetes, namespace, future,
+                () -> kubernetes.apps().statefulSets().inNamespace(namespace).withName(name).get(),
+                s -> getSelector(s.getSpec().getSelector(), s.getSpec().getTemplate()));
+    }
+
+    /**
+     * @return a future that completes once the rollout of the deployment is complete,
+     * and all of its replicas are available
+     */
+    public static CompletableFuture<Deployment> whenDeploymentReady(KubernetesClient kubernetes, String namespace, String name) {
+        final CompletableFuture<Deployment> future = watch(kubernetes.apps().deployments().inNamespace(namespace).withName(name),
+                () -> nullToEmpty(kubernetes.apps().deployments().inNamespace(namespace).withName(name).get()),
+                (deployment, f) -> {
+                    if (isReady(deployment)) {
+                        LOG.info("Deployment {} is ready with {} replicas.", name, deployment.getStatus().getAvailableReplicas());
+                        f.complete(deployment);
+                    }
+                });
+        return failFast(kubernetes, namespace, future,
+                () -> kubernetes.apps().deployments().inNamespace(namespace).withName(name).get(),
+                d -> getSelector(d.getSpec().getSelector(), d.getSpec().getTemplate()));
+    }
+
+    /**
+     * @return true if all of the replicas of the stateful set are ready
+     */
+    public static boolean isReady(StatefulSet statefulSet) {
+        if (statefulSet.getStatus() == null) {
+            return false;
+        }
+        return Objects.equals(getReplicas(statefulSet.getSpec().getReplicas()), statefulSet.getStatus().getReadyReplicas());
+    }
+
+    /**
+     * @return true if the rollout of the deployment is complete, and all of its replicas are available
+     */
+    public static boolean isReady(Deployment deployment) {
+        if (deployment.getStatus() == null) {
+            return false;
+        }
+        final Long generation = deployment.getMetadata().getGeneration();
+        final Long observedGeneration = deployment.getStatus().getObservedGeneration();
+        if (generation != null && (observedGeneration == null || observedGeneration < generation)) {
+            // The controller has not seen the latest spec yet
+            return false;
+        }
+        final int replicas = getReplicas(deployment.getSpec().getReplicas());
+        return Objects.equals(replicas, deployment.getStatus().getUpdatedReplicas())
+                && Objects.equals(replicas, deployment.getStatus().getAvailableReplicas());
+    }
+
+    /**
+     * @return a description of why the pod failed, or null if none of its
+     * containers are in one of the {@link #FAILED_WAITING_REASONS}
+     */
+    public static String getFailureReason(Pod pod) {
+        if (pod.getStatus() == null) {
+            return null;
+        }
+        final List<ContainerStatus> statuses = new ArrayList<>();
+        if (pod.getStatus().getInitContainerStatuses() != null) {
+            statuses.addAll(pod.getStatus().getInitContainerStatuses());
+        }
+        if (pod.getStatus().getContainerStatuses() != null) {
+            statuses.addAll(pod.getStatus().getContainerStatuses());
+        }
+        for (ContainerStatus status : statuses) {
+            final ContainerStateWaiting waiting = status.getState() != null ? status.getState().getWaiting() : null;
+            if (waiting != null && FAILED_WAITING_REASONS.contains(waiting.getReason())) {
+                return String.format("Container %s of pod %s is in %s: %s", status.getName(),
+                        pod.getMetadata().getName(), waiting.getReason(), waiting.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the labels used to select the pods of a workload, falling back
+     * to the labels of its pod template when it has no match labels
+     */
+    public static Map<String, String> getSelector(LabelSelector selector, PodTemplateSpec template) {
+        if (selector != null && selector.getMatchLabels() != null && !selector.getMatchLabels().isEmpty()) {
+            return selector.getMatchLabels();
+        } else if (template != null && template.getMetadata() != null && template.getMetadata().getLabels() != null) {
+            return template.getMetadata().getLabels();
+        }
+        return Collections.emptyMap();
+    }
+
+    private static void failIfFailed(Pod pod, CompletableFuture<?> future) {
+        final String reason = getFailureReason(pod);
+        if (reason != null) {
+            future.completeExceptionally(new IllegalStateException(reason));
+        }
+    }
+
+    /**
+     * Fails the given future as soon as one of the workload's pods fails.
+     */
+    private static <T> CompletableFuture<T> failFast(KubernetesClient kubernetes, String namespace, CompletableFuture<T> future,
+            Supplier<T> workload, Function<T, Map<String, String>> selector) {
+        final T current;
+        try {
+            current = workload.get();
+        } catch (RuntimeException e) {
+            future.cancel(false);
+            throw e;
+        }
+        if (current == null || future.isDone()) {
+            return future;
+        }
+        final Map<String, String> labels = selector.apply(current);
+        if (labels.isEmpty()) {
+            return future;
+        }
+        final CompletableFuture<Pod> failed = whenPodFailed(kubernetes, namespace, labels);
+        failed.thenAccept(pod -> future.completeExceptionally(new IllegalStateException(getFailureReason(pod))));
+        future.whenComplete((r, t) -> failed.cancel(false));
+        return future;
+    }
+
+    private static <T> List<T> nullToEmpty(T object) {
+        return object != null ? Collections.singletonList(object) : Collections.emptyList();
+    }
+
+    private static int getReplicas(Integer replicas) {
+        // The replicas default to 1 when not set
+        return replicas != null ? replicas : 1;
+    }
+
+    /**
+     * Opens a watch, and then checks the current state, so that a state reached
+     * before the watch was opened is not missed. The watch is closed once the
+     * future completes.
+     */
+    private static <T, R> CompletableFuture<R> watch(Watchable<Watch, Watcher<T>> watchable, Supplier<List<T>> current,
+            BiConsumer<T, CompletableFuture<R>> onUpdate) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        final Watch watch = watchable.watch(new Watcher<T>() {
+            @Override
+            public void eventReceived(Action action, T resource) {
+                if (action == Action.ADDED || action == Action.MODIFIED) {
+                    onUpdate.accept(resource, future);
+                }
+            }
+
+            @Override
+            public void onClose(KubernetesClientException cause) {
+                if (cause != null) {
+                    future.completeExceptionally(cause);
+                }
+            }
+        });
+        future.whenComplete((r, t) -> watch.close());
+        try {
+            for (T resource : current.get()) {
+                onUpdate.accept(resource, future);
+            }
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
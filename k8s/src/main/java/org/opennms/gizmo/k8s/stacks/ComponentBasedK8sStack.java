@@ -15,12 +15,14 @@
  */
 package org.opennms.gizmo.k8s.stacks;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
 
 import org.opennms.gizmo.k8s.GizmoK8sStack;
 import org.opennms.gizmo.k8s.GizmoK8sStacker;
+import org.opennms.gizmo.k8s.readiness.ReadinessWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,45 +38,58 @@ import io.fabric8.kubernetes.client.KubernetesClient;
 public class ComponentBasedK8sStack extends EmptyK8sStack {
     private static final Logger LOG = LoggerFactory.getLogger(YamlBasedK8sStack.class);
 
+    /**
+     * Creates all of the objects of the stack.
+     *
+     * Secrets, config maps and services are created concurrently first, since
+     * workloads may mount or reference these. The workloads are then all
+     * created concurrently, and the waiting rules are failed as soon as one of
+     * their pods cannot start.
+     */
     @Override
     public void create(GizmoK8sStacker stacker, KubernetesClient kubernetes) {
-        for (Secret secret : getSecrets(stacker)) {
-            LOG.info("Creating secret: {}", secret);
-            kubernetes.secrets().inNamespace(stacker.getNamespace()).create(secret);
-        }
-
-        for (ConfigMap configMap : getConfigMaps(stacker)) {
-            LOG.info("Creating config map: {}", configMap);
-            kubernetes.configMaps().inNamespace(stacker.getNamespace()).create(configMap);
-        }
-
-        for (Service svc : getServices(stacker)) {
-            LOG.info("Creating service: {}", svc);
-            kubernetes.services().inNamespace(stacker.getNamespace()).create(svc);
-        }
-
-        for (StatefulSet statefulSet : getStatefulSets(stacker)) {
-            LOG.info("Creating stateful sets: {}", statefulSet);
-            kubernetes.apps().statefulSets().inNamespace(stacker.getNamespace()).create(statefulSet);
-        }
-
-        for (Deployment deployment : getDeployments(stacker)) {
-            LOG.info("Creating deployment: {}", deployment);
-            kubernetes.extensions().deployments().inNamespace(stacker.getNamespace()).create(deployment);
-        }
-
-        for (ReplicationController rc : getReplicationControllers(stacker)) {
-            LOG.info("Creating replication controller: {}", rc);
-            kubernetes.replicationControllers().inNamespace(stacker.getNamespace()).create(rc);
-        }
+        final String namespace = stacker.getNamespace();
+
+        final List<Runnable> config = new ArrayList<>();
+        addAll(config, "secret", getSecrets(stacker), secret -> kubernetes.secrets().inNamespace(namespace).create(secret));
+        addAll(config, "config map", getConfigMaps(stacker), configMap -> kubernetes.configMaps().inNamespace(namespace).create(configMap));
+        addAll(config, "service", getServices(stacker), svc -> kubernetes.services().inNamespace(namespace).create(svc));
+        stacker.createAll(config);
+
+        // The workloads are only resolved once, so that the pods being monitored are those of the created objects
+        final List<StatefulSet> statefulSets = getStatefulSets(stacker);
+        final List<Deployment> deployments = getDeployments(stacker);
+        final List<ReplicationController> replicationControllers = getReplicationControllers(stacker);
+        final List<Pod> pods = getPods(stacker);
+
+        final List<Runnable> workloads = new ArrayList<>();
+        addAll(workloads, "stateful set", statefulSets,
+                statefulSet -> kubernetes.apps().statefulSets().inNamespace(namespace).create(statefulSet));
+        addAll(workloads, "deployment", deployments,
+                deployment -> kubernetes.extensions().deployments().inNamespace(namespace).create(deployment));
+        addAll(workloads, "replication controller", replicationControllers,
+                rc -> kubernetes.replicationControllers().inNamespace(namespace).create(rc));
+        addAll(workloads, "pod", pods, pod -> kubernetes.pods().inNamespace(namespace).create(pod));
+        stacker.createAll(workloads);
+
+        statefulSets.forEach(s -> stacker.failFastOnPodErrors(this,
+                ReadinessWatch.getSelector(s.getSpec().getSelector(), s.getSpec().getTemplate())));
+        deployments.forEach(d -> stacker.failFastOnPodErrors(this,
+                ReadinessWatch.getSelector(d.getSpec().getSelector(), d.getSpec().getTemplate())));
+        replicationControllers.forEach(rc -> stacker.failFastOnPodErrors(this,
+                rc.getSpec().getSelector() != null ? rc.getSpec().getSelector()
+                        : ReadinessWatch.getSelector(null, rc.getSpec().getTemplate())));
+        pods.forEach(pod -> stacker.failFastOnPodErrors(this,
+                pod.getMetadata().getLabels() != null ? pod.getMetadata().getLabels() : Collections.emptyMap()));
+    }
 
-        for (Pod pod : getPods(stacker)) {
-            LOG.info("Creating pod: {}", pod);
-            kubernetes.pods().inNamespace(stacker.getNamespace()).create(pod);
+    private static <T> void addAll(List<Runnable> creations, String kind, List<T> objects, Consumer<T> create) {
+        for (T object : objects) {
+            creations.add(() -> {
+                LOG.info("Creating {}: {}", kind, object);
+                create.accept(object);
+            });
         }
-
-        // TODO: Verify service and pod status'es before firing off the waiting rules
-        // i.e. avoid waiting for L7 check if application image cannot be found
     }
 
     public List<Secret> getSecrets(GizmoK8sStacker stacker) {
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.gizmo.k8s.stacks.ComponentBasedK8sStack;
+import org.opennms.gizmo.k8s.stacks.EmptyK8sStack;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+
+public class StackFingerprintTest {
+
+    @Test
+    public void canFingerprintDeclaredObjects() {
+        final String fingerprint = StackFingerprint.of(new DeploymentStack("opennms:1"), null);
+        assertNotNull(fingerprint);
+        assertEquals(fingerprint, StackFingerprint.of(new DeploymentStack("opennms:1"), null));
+        assertNotEquals(fingerprint, StackFingerprint.of(new DeploymentStack("opennms:2"), null));
+    }
+
+    @Test
+    public void cannotFingerprintCustomCreation() {
+        assertNotNull(StackFingerprint.of(new EmptyK8sStack(), null));
+        assertNull(StackFingerprint.of(new EmptyK8sStack() {
+            @Override
+            public void create(GizmoK8sStacker stacker, KubernetesClient kubernetes) {
+                // Creates objects we know nothing about
+            }
+        }, null));
+    }
+
+    private static class DeploymentStack extends ComponentBasedK8sStack {
+        private final String image;
+
+        private DeploymentStack(String image) {
+            this.image = image;
+        }
+
+        @Override
+        public List<Deployment> getDeployments(GizmoK8sStacker stacker) {
+            return Collections.singletonList(new DeploymentBuilder()
+                    .withNewMetadata().withName("opennms").endMetadata()
+                    .withNewSpec()
+                        .withNewTemplate()
+                            .withNewSpec().addNewContainer().withName("opennms").withImage(image).endContainer().endSpec()
+                        .endTemplate()
+                    .endSpec()
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.ListMetaBuilder;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.Watcher.Action;
+import io.fabric8.kubernetes.client.dsl.NonNamespaceOperation;
+import io.fabric8.kubernetes.client.dsl.Watchable;
+
+public class PodCacheTest {
+
+    @Test
+    public void canListAndWatchPods() {
+        final FakePods pods = new FakePods("1", pod("a-0", "a"), pod("b-0", "b"));
+        try (PodCache cache = new PodCache(pods.getClient(), "ns")) {
+            assertEquals(Arrays.asList("a-0", "b-0"), names(cache.getPods()));
+            assertEquals(Arrays.asList("a-0"), names(cache.getPodsWithLabels(ImmutableMap.of("app", "a"))));
+
+            // The watch starts from the version of the list, so no changes are missed
+            assertEquals(Arrays.asList("1"), pods.watchedVersions);
+
+            final Watcher<Pod> watcher = pods.getWatcher();
+            watcher.eventReceived(Action.ADDED, pod("a-1", "a"));
+            watcher.eventReceived(Action.MODIFIED, pod("b-0", "a"));
+            watcher.eventReceived(Action.DELETED, pod("a-0", "a"));
+            assertEquals(Arrays.asList("a-1", "b-0"), names(cache.getPodsWithLabels(ImmutableMap.of("app", "a"))));
+        }
+        assertEquals(1, pods.closedWatches);
+    }
+
+    @Test(timeout = 10000)
+    public void canResyncWhenWatchCloses() throws Exception {
+        final FakePods pods = new FakePods("1", pod("a-0", "a"));
+        try (PodCache cache = new PodCache(pods.getClient(), "ns")) {
+            final Watcher<Pod> staleWatcher = pods.getWatcher();
+            pods.setPods("2", pod("b-0", "b"));
+            staleWatcher.onClose(new KubernetesClientException("Gone"));
+
+            while (pods.watchedVersions.size() < 2) {
+                Thread.sleep(50);
+            }
+            assertEquals(Arrays.asList("1", "2"), pods.watchedVersions);
+            assertEquals(Arrays.asList("b-0"), names(cache.getPods()));
+
+            // Events for the previous watch no longer affect the cache
+            staleWatcher.eventReceived(Action.ADDED, pod("a-1", "a"));
+            assertEquals(Arrays.asList("b-0"), names(cache.getPods()));
+            pods.getWatcher().eventReceived(Action.ADDED, pod("b-1", "b"));
+            assertEquals(Arrays.asList("b-0", "b-1"), names(cache.getPods()));
+        }
+    }
+
+    @Test
+    public void canClose() throws Exception {
+        final FakePods pods = new FakePods("1", pod("a-0", "a"));
+        final PodCache cache = new PodCache(pods.getClient(), "ns");
+        cache.close();
+
+        assertTrue(cache.getPods().isEmpty());
+        assertEquals(1, pods.closedWatches);
+        // Closing the watch does not resync once the cache is closed
+        pods.getWatcher().onClose(null);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(2));
+        assertEquals(Arrays.asList("1"), pods.watchedVersions);
+    }
+
+    private static Pod pod(String name, String app) {
+        return new PodBuilder()
+                .withNewMetadata()
+                    .withName(name)
+                    .withLabels(Collections.singletonMap("app", app))
+                .endMetadata()
+                .build();
+    }
+
+    private static List<String> names(List<Pod> pods) {
+        return pods.stream()
+                .map(pod -> pod.getMetadata().getName())
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Answers the list and watch calls made by the cache, ignoring namespaces.
+     */
+    private static class FakePods {
+        private volatile PodList list;
+        private final List<Watcher<Pod>> watchers = new CopyOnWriteArrayList<>();
+        private final List<String> watchedVersions = new CopyOnWriteArrayList<>();
+        private volatile String resourceVersion;
+        private volatile int closedWatches = 0;
+
+        private FakePods(String resourceVersion, Pod... pods) {
+            setPods(resourceVersion, pods);
+        }
+
+        private void setPods(String resourceVersion, Pod... pods) {
+            final PodList list = new PodList();
+            list.setItems(new ArrayList<>(Arrays.asList(pods)));
+            list.setMetadata(new ListMetaBuilder().withResourceVersion(resourceVersion).build());
+            this.list = list;
+        }
+
+        private Watcher<Pod> getWatcher() {
+            return watchers.get(watchers.size() - 1);
+        }
+
+        private KubernetesClient getClient() {
+            return proxy(KubernetesClient.class);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T proxy(Class<?>... ifaces) {
+            return (T)Proxy.newProxyInstance(getClass().getClassLoader(), ifaces, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "list":
+                    return list;
+                case "withResourceVersion":
+                    resourceVersion = (String)args[0];
+                    return proxy(Watchable.class);
+                case "watch":
+                    watchedVersions.add(resourceVersion);
+                    watchers.add((Watcher<Pod>)args[0]);
+                    return (Watch)() -> closedWatches++;
+                default:
+                    return next(method);
+                }
+            });
+        }
+
+        private Object next(Method method) {
+            if (method.getReturnType() == Object.class) {
+                // Generic operations, i.e. inNamespace(), are erased
+                return proxy(NonNamespaceOperation.class);
+            } else if (method.getReturnType().isInterface()) {
+                return proxy(method.getReturnType());
+            }
+            throw new UnsupportedOperationException(method.toString());
+        }
+    }
+}
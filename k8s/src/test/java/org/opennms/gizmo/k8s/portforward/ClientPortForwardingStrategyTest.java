@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.portforward;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.PortForward;
+import io.fabric8.kubernetes.client.dsl.NonNamespaceOperation;
+import io.fabric8.kubernetes.client.dsl.PodResource;
+
+public class ClientPortForwardingStrategyTest {
+
+    private final List<String> forwards = new CopyOnWriteArrayList<>();
+    private volatile boolean failForwards = false;
+
+    @Test(timeout = 10000)
+    public void canForwardConnections() throws Exception {
+        final ClientPortForwardingStrategy strategy = new ClientPortForwardingStrategy(newEchoingClient());
+        try (ForwardedPort fwdedPort = strategy.portForward("ns", "app-0", 8980)) {
+            assertTrue(fwdedPort.isAlive());
+            // Every connection is forwarded separately
+            assertEquals("hello", echo(fwdedPort, "hello"));
+            assertEquals("world", echo(fwdedPort, "world"));
+            assertEquals(2, forwards.size());
+            assertEquals("8980", forwards.get(0));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void canCloseConnectionsThatFailToBeForwarded() throws Exception {
+        final ClientPortForwardingStrategy strategy = new ClientPortForwardingStrategy(newEchoingClient());
+        try (ForwardedPort fwdedPort = strategy.portForward("ns", "app-0", 8980)) {
+            failForwards = true;
+            try (Socket socket = new Socket(fwdedPort.getAddress().getAddress(), fwdedPort.getAddress().getPort())) {
+                assertEquals(-1, socket.getInputStream().read());
+            }
+            // The forward keeps accepting connections
+            failForwards = false;
+            assertEquals("hello", echo(fwdedPort, "hello"));
+        }
+    }
+
+    @Test(timeout = 10000, expected = ConnectException.class)
+    public void canClosePorts() throws Exception {
+        final ClientPortForwardingStrategy strategy = new ClientPortForwardingStrategy(newEchoingClient());
+        final ForwardedPort fwdedPort = strategy.portForward("ns", "app-0", 8980);
+        fwdedPort.close();
+        assertFalse(fwdedPort.isAlive());
+        new Socket(fwdedPort.getAddress().getAddress(), fwdedPort.getAddress().getPort()).close();
+    }
+
+    private static String echo(ForwardedPort fwdedPort, String message) throws Exception {
+        try (Socket socket = new Socket(fwdedPort.getAddress().getAddress(), fwdedPort.getAddress().getPort())) {
+            final OutputStream out = socket.getOutputStream();
+            out.write(message.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            final InputStream in = socket.getInputStream();
+            final byte[] buffer = new byte[message.length()];
+            int read = 0;
+            while (read < buffer.length) {
+                read += in.read(buffer, read, buffer.length - read);
+            }
+            return new String(buffer, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Stands in for pods().inNamespace().withName().portForward(), echoing everything
+     * written to the connection back, as if forwarded to an echo server in the pod.
+     */
+    private KubernetesClient newEchoingClient() {
+        return (KubernetesClient)newProxy(KubernetesClient.class);
+    }
+
+    private Object newProxy(Class<?>... ifaces) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), ifaces, (proxy, method, args) -> {
+            if ("portForward".equals(method.getName()) && args.length == 3) {
+                if (failForwards) {
+                    throw new IllegalStateException("Forward failed.");
+                }
+                forwards.add(args[0].toString());
+                return echo((ReadableByteChannel)args[1], (WritableByteChannel)args[2]);
+            } else if (method.getReturnType().isInterface()) {
+                return newProxy(method.getReturnType());
+            } else if (method.getReturnType() == Object.class) {
+                // Generic operations, i.e. inNamespace() and withName(), are erased
+                return newProxy(NonNamespaceOperation.class, PodResource.class);
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    private static PortForward echo(ReadableByteChannel in, WritableByteChannel out) {
+        final Thread thread = new Thread(() -> {
+            final ByteBuffer buffer = ByteBuffer.allocate(1024);
+            try {
+                while (in.read(buffer) >= 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            } catch (Exception e) {
+                // Closed
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return new PortForward() {
+            @Override
+            public boolean isAlive() {
+                return thread.isAlive();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    in.close();
+                } catch (Exception e) {
+                    // Ignore
+                }
+            }
+        };
+    }
+}
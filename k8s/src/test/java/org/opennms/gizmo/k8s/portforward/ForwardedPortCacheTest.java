@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.portforward;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+
+public class ForwardedPortCacheTest {
+
+    private final List<Pod> pods = new CopyOnWriteArrayList<>();
+    private final List<String> forwardedTo = new ArrayList<>();
+    private final List<TestForwardedPort> fwdedPorts = new ArrayList<>();
+
+    private final PortForwardingStrategy strategy = new PortForwardingStrategy() {
+        @Override
+        public ForwardedPort portForward(String namespace, String pod, int remotePort) {
+            return portForward(namespace, pod, remotePort, 40000 + fwdedPorts.size());
+        }
+
+        @Override
+        public ForwardedPort portForward(String namespace, String pod, int remotePort, int localPort) {
+            forwardedTo.add(pod);
+            final TestForwardedPort fwdedPort = new TestForwardedPort(localPort);
+            fwdedPorts.add(fwdedPort);
+            return fwdedPort;
+        }
+    };
+
+    @Test
+    public void canCacheForwards() {
+        pods.add(pod("app-0", true, "app", "web"));
+        try (ForwardedPortCache cache = new ForwardedPortCache(strategy, ns -> pods, 0)) {
+            final InetSocketAddress addr = cache.portForward("ns", "app-0", 8980);
+            assertEquals(addr, cache.portForward("ns", "app-0", 8980));
+            assertEquals(addr, cache.get("ns", "app-0", 8980));
+            assertEquals(Arrays.asList("app-0"), forwardedTo);
+        }
+    }
+
+    @Test
+    public void canReestablishDeadForwards() {
+        pods.add(pod("app-0", true, "app", "web"));
+        try (ForwardedPortCache cache = new ForwardedPortCache(strategy, ns -> pods, 0)) {
+            final InetSocketAddress addr = cache.portForward("ns", "app-0", 8980);
+            cache.checkAll();
+            assertEquals(1, forwardedTo.size());
+
+            fwdedPorts.get(0).alive = false;
+            cache.checkAll();
+            assertEquals(Arrays.asList("app-0", "app-0"), forwardedTo);
+            assertEquals(addr, cache.get("ns", "app-0", 8980));
+        }
+    }
+
+    @Test
+    public void waitsForRestartingPodsToKeepTheirIdentity() {
+        pods.add(pod("app-0", true, "app", "db", "statefulset.kubernetes.io/pod-name", "app-0"));
+        pods.add(pod("app-1", true, "app", "db", "statefulset.kubernetes.io/pod-name", "app-1"));
+        try (ForwardedPortCache cache = new ForwardedPortCache(strategy, ns -> pods, 0)) {
+            cache.portForward("ns", "app-0", 5432);
+
+            // Restarting
+            pods.set(0, pod("app-0", false, "app", "db", "statefulset.kubernetes.io/pod-name", "app-0"));
+            cache.checkAll();
+            // Gone, but app-1 has a different identity
+            pods.remove(0);
+            cache.checkAll();
+            assertEquals(Arrays.asList("app-0"), forwardedTo);
+
+            // Back, with the forward having died along with the pod
+            fwdedPorts.get(0).alive = false;
+            pods.add(pod("app-0", true, "app", "db", "statefulset.kubernetes.io/pod-name", "app-0"));
+            cache.checkAll();
+            assertEquals(Arrays.asList("app-0", "app-0"), forwardedTo);
+        }
+    }
+
+    @Test
+    public void canFollowReplacedPods() {
+        pods.add(pod("web-abc", true, "app", "web", "pod-template-hash", "abc"));
+        try (ForwardedPortCache cache = new ForwardedPortCache(strategy, ns -> pods, 0)) {
+            final InetSocketAddress addr = cache.portForward("ns", "web-abc", 8080);
+
+            pods.clear();
+            pods.add(pod("web-def", true, "app", "web", "pod-template-hash", "def"));
+            cache.checkAll();
+            assertEquals(Arrays.asList("web-abc", "web-def"), forwardedTo);
+            assertEquals(addr, cache.get("ns", "web-abc", 8080));
+        }
+    }
+
+    private static Pod pod(String name, boolean ready, String... labels) {
+        final ImmutableMap.Builder<String, String> labelMap = ImmutableMap.builder();
+        for (int i = 0; i < labels.length; i += 2) {
+            labelMap.put(labels[i], labels[i + 1]);
+        }
+        return new PodBuilder()
+                .withNewMetadata().withName(name).withLabels(labelMap.build()).endMetadata()
+                .withNewStatus()
+                    .withPhase("Running")
+                    .addNewCondition().withType("Ready").withStatus(ready ? "True" : "False").endCondition()
+                .endStatus()
+                .build();
+    }
+
+    private static class TestForwardedPort implements ForwardedPort {
+        private final InetSocketAddress address;
+        private boolean alive = true;
+
+        private TestForwardedPort(int localPort) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort);
+        }
+
+        @Override
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+
+        @Override
+        public void close() {
+            alive = false;
+        }
+    }
+}
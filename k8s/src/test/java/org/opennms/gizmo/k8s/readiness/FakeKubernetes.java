@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.readiness;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodList;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.Watcher.Action;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
+import io.fabric8.kubernetes.client.dsl.NonNamespaceOperation;
+import io.fabric8.kubernetes.client.dsl.PodResource;
+import io.fabric8.kubernetes.client.dsl.RollableScalableResource;
+
+/**
+ * In-memory stand-in for the client's pod, stateful set and deployment operations.
+ *
+ * Lists and gets return the current resources of the matching type, and watches
+ * receive the resources passed to {@link #update(HasMetadata)}. Namespaces, names
+ * and labels are ignored.
+ */
+class FakeKubernetes {
+    private static final Map<String, Class<?>> TYPES_BY_OPERATION = ImmutableMap.of(
+            "pods", Pod.class,
+            "statefulSets", StatefulSet.class,
+            "deployments", Deployment.class);
+
+    private static final Class<?>[] OPERATIONS = new Class<?>[] { NonNamespaceOperation.class,
+        FilterWatchListDeletable.class, PodResource.class, RollableScalableResource.class };
+
+    private static class Watching {
+        private final Class<?> type;
+        private final Watcher<Object> watcher;
+
+        private Watching(Class<?> type, Watcher<Object> watcher) {
+            this.type = type;
+            this.watcher = watcher;
+        }
+    }
+
+    private final List<HasMetadata> resources = new CopyOnWriteArrayList<>();
+    private final List<Watching> watches = new CopyOnWriteArrayList<>();
+    private final AtomicInteger closedWatches = new AtomicInteger();
+
+    public KubernetesClient getClient() {
+        return (KubernetesClient)proxy(null, KubernetesClient.class);
+    }
+
+    /**
+     * Adds or replaces the resource with the same name and type, and notifies the watches.
+     */
+    public void update(HasMetadata resource) {
+        final boolean existed = resources.removeIf(r -> r.getClass() == resource.getClass()
+                && r.getMetadata().getName().equals(resource.getMetadata().getName()));
+        resources.add(resource);
+        for (Watching watching : watches) {
+            if (watching.type.isInstance(resource)) {
+                watching.watcher.eventReceived(existed ? Action.MODIFIED : Action.ADDED, resource);
+            }
+        }
+    }
+
+    public int getOpenWatches() {
+        return watches.size();
+    }
+
+    public int getClosedWatches() {
+        return closedWatches.get();
+    }
+
+    private Object proxy(Class<?> type, Class<?>... ifaces) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), ifaces, new Handler(type));
+    }
+
+    private class Handler implements InvocationHandler {
+        private final Class<?> type;
+
+        private Handler(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+            case "watch":
+                final Watching watching = new Watching(type, (Watcher<Object>)args[args.length - 1]);
+                watches.add(watching);
+                return (Watch)() -> {
+                    if (watches.remove(watching)) {
+                        closedWatches.incrementAndGet();
+                    }
+                };
+            case "list":
+                final PodList list = new PodList();
+                list.setItems(getResources().stream().map(Pod.class::cast).collect(Collectors.toList()));
+                return list;
+            case "get":
+                return getResources().stream().findFirst().orElse(null);
+            case "toString":
+                return "FakeKubernetes";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                final Class<?> nextType = TYPES_BY_OPERATION.getOrDefault(method.getName(), type);
+                if (method.getReturnType().isInterface()) {
+                    return proxy(nextType, method.getReturnType());
+                } else if (method.getReturnType() == Object.class) {
+                    // Generic operations, i.e. inNamespace() and withName(), are erased
+                    return proxy(nextType, OPERATIONS);
+                }
+                throw new UnsupportedOperationException(method.toString());
+            }
+        }
+
+        private List<HasMetadata> getResources() {
+            return resources.stream().filter(type::isInstance).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.k8s.readiness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.api.model.apps.StatefulSet;
+import io.fabric8.kubernetes.api.model.apps.StatefulSetBuilder;
+
+public class ReadinessWatchTest {
+
+    private static final Map<String, String> LABELS = ImmutableMap.of("app", "app");
+
+    @Test
+    public void canDetectFailedPods() {
+        assertNull(ReadinessWatch.getFailureReason(pod("ContainerCreating", "Creating container")));
+        assertEquals("Container app of pod app-0 is in ImagePullBackOff: Back-off pulling image",
+                ReadinessWatch.getFailureReason(pod("ImagePullBackOff", "Back-off pulling image")));
+        assertEquals("Container app of pod app-0 is in CrashLoopBackOff: Back-off restarting failed container",
+                ReadinessWatch.getFailureReason(pod("CrashLoopBackOff", "Back-off restarting failed container")));
+    }
+
+    @Test
+    public void canWaitForPodReady() throws Exception {
+        final FakeKubernetes kubernetes = new FakeKubernetes();
+        kubernetes.update(pod(false));
+
+        final CompletableFuture<Pod> future = ReadinessWatch.whenPodReady(kubernetes.getClient(), "ns", LABELS);
+        assertFalse(future.isDone());
+
+        final Pod ready = pod(true);
+        kubernetes.update(ready);
+        assertSame(ready, future.getNow(null));
+        // The watch is closed once the future completes
+        assertEquals(0, kubernetes.getOpenWatches());
+        assertEquals(1, kubernetes.getClosedWatches());
+    }
+
+    @Test
+    public void canCompleteWithPodsReadyBeforeTheWatch() throws Exception {
+        final FakeKubernetes kubernetes = new FakeKubernetes();
+        final Pod ready = pod(true);
+        kubernetes.update(ready);
+
+        assertSame(ready, ReadinessWatch.whenPodReady(kubernetes.getClient(), "ns", LABELS).getNow(null));
+        assertEquals(0, kubernetes.getOpenWatches());
+    }
+
+    @Test
+    public void canFailFastOnFailedPods() throws Exception {
+        final FakeKubernetes kubernetes = new FakeKubernetes();
+        final CompletableFuture<Pod> future = ReadinessWatch.whenPodReady(kubernetes.getClient(), "ns", LABELS);
+        kubernetes.update(pod("ImagePullBackOff", "Back-off pulling image"));
+        assertFailed(future, "Container app of pod app-0 is in ImagePullBackOff: Back-off pulling image");
+    }
+
+    @Test
+    public void canWaitForStatefulSetReady() throws Exception {
+        final FakeKubernetes kubernetes = new FakeKubernetes();
+        kubernetes.update(statefulSet(0));
+
+        final CompletableFuture<StatefulSet> future = ReadinessWatch.whenStatefulSetReady(kubernetes.getClient(), "ns", "app");
+        kubernetes.update(statefulSet(1));
+        assertFalse(future.isDone());
+
+        final StatefulSet ready = statefulSet(2);
+        kubernetes.update(ready);
+        assertSame(ready, future.getNow(null));
+        // Both the stateful set watch, and the pod watch used to fail fast are closed
+        assertEquals(0, kubernetes.getOpenWatches());
+    }
+
+    @Test
+    public void canFailFastOnFailedStatefulSetPods() throws Exception {
+        final FakeKubernetes kubernetes = new FakeKubernetes();
+        kubernetes.update(statefulSet(0));
+
+        final CompletableFuture<StatefulSet> future = ReadinessWatch.whenStatefulSetReady(kubernetes.getClient(), "ns", "app");
+        kubernetes.update(pod("CrashLoopBackOff", "Back-off restarting failed container"));
+        assertFailed(future, "Container app of pod app-0 is in CrashLoopBackOff: Back-off restarting failed container");
+        assertEquals(0, kubernetes.getOpenWatches());
+    }
+
+    @Test
+    public void canWaitForDeploymentReady() throws Exception {
+        final FakeKubernetes kubernetes = new FakeKubernetes();
+        kubernetes.update(deployment(2L, 1L, 2, 2));
+
+        final CompletableFuture<Deployment> future = ReadinessWatch.whenDeploymentReady(kubernetes.getClient(), "ns", "app");
+        // All replicas are available, but the controller has yet to observe the latest generation
+        assertFalse(future.isDone());
+        kubernetes.update(deployment(2L, 2L, 1, 2));
+        assertFalse(future.isDone());
+
+        final Deployment ready = deployment(2L, 2L, 2, 2);
+        kubernetes.update(ready);
+        assertSame(ready, future.getNow(null));
+        assertEquals(0, kubernetes.getOpenWatches());
+    }
+
+    private static void assertFailed(CompletableFuture<?> future, String reason) throws InterruptedException {
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("Expected the future to fail.");
+        } catch (ExecutionException e) {
+            assertEquals(reason, e.getCause().getMessage());
+        }
+    }
+
+    private static Pod pod(boolean ready) {
+        return new PodBuilder()
+                .withNewMetadata().withName("app-0").withLabels(LABELS).endMetadata()
+                .withNewStatus()
+                    .withPhase("Running")
+                    .addNewCondition().withType("Ready").withStatus(ready ? "True" : "False").endCondition()
+                .endStatus()
+                .build();
+    }
+
+    private static Pod pod(String waitingReason, String message) {
+        return new PodBuilder()
+                .withNewMetadata().withName("app-0").withLabels(LABELS).endMetadata()
+                .withNewStatus()
+                    .addNewContainerStatus()
+                        .withName("app")
+                        .withNewState()
+                            .withNewWaiting().withReason(waitingReason).withMessage(message).endWaiting()
+                        .endState()
+                    .endContainerStatus()
+                .endStatus()
+                .build();
+    }
+
+    private static StatefulSet statefulSet(int readyReplicas) {
+        return new StatefulSetBuilder()
+                .withNewMetadata().withName("app").endMetadata()
+                .withNewSpec()
+                    .withReplicas(2)
+                    .withNewSelector().withMatchLabels(LABELS).endSelector()
+                .endSpec()
+                .withNewStatus().withReadyReplicas(readyReplicas).endStatus()
+                .build();
+    }
+
+    private static Deployment deployment(long generation, long observedGeneration, int updatedReplicas, int availableReplicas) {
+        return new DeploymentBuilder()
+                .withNewMetadata().withName("app").withGeneration(generation).endMetadata()
+                .withNewSpec()
+                    .withReplicas(2)
+                    .withNewSelector().withMatchLabels(LABELS).endSelector()
+                .endSpec()
+                .withNewStatus()
+                    .withObservedGeneration(observedGeneration)
+                    .withUpdatedReplicas(updatedReplicas)
+                    .withAvailableReplicas(availableReplicas)
+                .endStatus()
+                .build();
+    }
+}
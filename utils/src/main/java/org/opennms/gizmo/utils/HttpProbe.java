@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * HTTP readiness check.
+ *
+ * The response body is streamed, and matched using a sliding window,
+ * so it is never buffered in full. Probes are callables, so they can be
+ * used directly in awaitility conditions:
+ *
+ * <pre>
+ * await().until(HttpProbe.builder(addr, "/opennms/rest/info")
+ *      .withCredentials("admin", "admin")
+ *      .expectBodyContaining("opennms")
+ *      .build());
+ * </pre>
+ */
+public class HttpProbe implements Callable<Boolean> {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpProbe.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InetSocketAddress httpAddr;
+    private final String path;
+    private final String username;
+    private final String password;
+    private final IntPredicate statusPredicate;
+    private final List<HeaderPredicate> headerPredicates;
+    private final String bodyNeedle;
+
+    private static class HeaderPredicate {
+        private final String name;
+        private final Predicate<String> predicate;
+
+        private HeaderPredicate(String name, Predicate<String> predicate) {
+            this.name = name;
+            this.predicate = predicate;
+        }
+    }
+
+    public static class Builder {
+        private final InetSocketAddress httpAddr;
+        private final String path;
+        private String username;
+        private String password;
+        private IntPredicate statusPredicate = status -> status >= 200 && status < 300;
+        private final List<HeaderPredicate> headerPredicates = new ArrayList<>();
+        private String bodyNeedle;
+
+        private Builder(InetSocketAddress httpAddr, String path) {
+            this.httpAddr = Objects.requireNonNull(httpAddr);
+            this.path = Objects.requireNonNull(path);
+        }
+
+        public Builder withCredentials(String username, String password) {
+            this.username = username;
+            this.password = password;
+            return this;
+        }
+
+        public Builder expectStatus(int status) {
+            return expectStatus(s -> s == status);
+        }
+
+        public Builder expectStatus(IntPredicate statusPredicate) {
+            this.statusPredicate = Objects.requireNonNull(statusPredicate);
+            return this;
+        }
+
+        /**
+         * Expects the response to have the given header, with a value matching the predicate.
+         * The probe fails if the header is missing.
+         */
+        public Builder expectHeader(String name, Predicate<String> predicate) {
+            headerPredicates.add(new HeaderPredicate(Objects.requireNonNull(name), Objects.requireNonNull(predicate)));
+            return this;
+        }
+
+        public Builder expectBodyContaining(String needle) {
+            if (needle.isEmpty()) {
+                throw new IllegalArgumentException("Needle must not be empty.");
+            }
+            this.bodyNeedle = needle;
+            return this;
+        }
+
+        public HttpProbe build() {
+            return new HttpProbe(this);
+        }
+    }
+
+    public static Builder builder(InetSocketAddress httpAddr, String path) {
+        return new Builder(httpAddr, path);
+    }
+
+    private HttpProbe(Builder builder) {
+        httpAddr = builder.httpAddr;
+        path = builder.path;
+        username = builder.username;
+        password = builder.password;
+        statusPredicate = builder.statusPredicate;
+        headerPredicates = new ArrayList<>(builder.headerPredicates);
+        bodyNeedle = builder.bodyNeedle;
+    }
+
+    /**
+     * Performs the check.
+     *
+     * @return true if all of the expectations are met, false otherwise
+     */
+    public boolean check() {
+        final Request request = HttpUtils.buildRequest(httpAddr, username, password, path);
+        try (Response response = HttpUtils.getClient().newCall(request).execute()) {
+            if (!statusPredicate.test(response.code())) {
+                LOG.debug("Probe of {} failed. Got status: {}", request.url(), response.code());
+                return false;
+            }
+            for (HeaderPredicate headerPredicate : headerPredicates) {
+                final String value = response.header(headerPredicate.name);
+                if (value == null) {
+                    LOG.debug("Probe of {} failed. Header {} is missing.", request.url(), headerPredicate.name);
+                    return false;
+                }
+                if (!headerPredicate.predicate.test(value)) {
+                    LOG.debug("Probe of {} failed. Header {} did not match.", request.url(), headerPredicate.name);
+                    return false;
+                }
+            }
+            if (bodyNeedle != null && !contains(response.body().charStream(), bodyNeedle)) {
+                LOG.debug("Probe of {} failed. Body does not contain: {}", request.url(), bodyNeedle);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.debug("Probe of {} failed: {}", request.url(), e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public Boolean call() {
+        return check();
+    }
+
+    /**
+     * Searches the stream for the given needle, keeping at most one
+     * buffer's worth of characters, plus the length of the needle, in memory.
+     */
+    protected static boolean contains(Reader reader, String needle) throws IOException {
+        final char[] buffer = new char[BUFFER_SIZE];
+        final StringBuilder window = new StringBuilder();
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+            window.append(buffer, 0, n);
+            if (window.indexOf(needle) >= 0) {
+                return true;
+            }
+            // Keep the tail, in case the needle spans multiple reads
+            final int keep = Math.min(window.length(), needle.length() - 1);
+            window.delete(0, window.length() - keep);
+        }
+        return false;
+    }
+}
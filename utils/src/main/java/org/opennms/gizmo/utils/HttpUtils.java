@@ -16,21 +16,61 @@
 package org.opennms.gizmo.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Credentials;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
+/**
+ * HTTP utilities.
+ *
+ * All of the calls share the same client, and hence the same connection pool
+ * and dispatcher, so that repeated calls (i.e. readiness checks) reuse connections.
+ */
 public class HttpUtils {
     private static final Logger LOG = LoggerFactory.getLogger(HttpUtils.class);
 
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 2000;
+    public static final long DEFAULT_READ_TIMEOUT_MS = 10000;
+
+    private static volatile OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(DEFAULT_CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .readTimeout(DEFAULT_READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+    @FunctionalInterface
+    public interface BodyHandler<T> {
+        T handle(InputStream body) throws IOException;
+    }
+
+    public static OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Changes the timeouts used by all subsequent calls.
+     *
+     * The connection pool and dispatcher are preserved.
+     */
+    public static void setTimeouts(long connectTimeoutMs, long readTimeoutMs) {
+        client = client.newBuilder()
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     public static URL toHttpUrl(InetSocketAddress addr) {
         try {
             return new URL(String.format("http://%s:%d/", addr.getHostString(), addr.getPort()));
@@ -44,21 +84,75 @@ public class HttpUtils {
     }
 
     public static String get(InetSocketAddress httpAddr, String username, String password, String path) throws IOException {
-        try {
-            final OkHttpClient client = new OkHttpClient();
-            Request.Builder builder = new Request.Builder();
-            if (username != null && password != null) {
-                builder.header("Authorization", Credentials.basic(username, password));
-            }
-            Request request = builder.url(String.format("http://%s:%d%s",
-                    httpAddr.getHostString(), httpAddr.getPort(), path))
-                .build();
-            LOG.info("Calling URL: {}", request.url());
-            Response response = client.newCall(request).execute();
+        final Request request = buildRequest(httpAddr, username, password, path);
+        LOG.info("Calling URL: {}", request.url());
+        try (Response response = client.newCall(request).execute()) {
             return response.isSuccessful() ? response.body().string() : null;
         } catch (IOException e) {
             LOG.info("Calling URL failed: {}", e.getMessage());
             return null;
         }
     }
+
+    /**
+     * Streams the body of the response to the given handler, avoiding the need
+     * to buffer large payloads in memory.
+     *
+     * @return the value returned by the handler, or null if the call failed or was unsuccessful
+     */
+    public static <T> T get(InetSocketAddress httpAddr, String username, String password, String path, BodyHandler<T> handler) throws IOException {
+        final Request request = buildRequest(httpAddr, username, password, path);
+        LOG.info("Calling URL: {}", request.url());
+        try (Response response = client.newCall(request).execute()) {
+            return response.isSuccessful() ? handler.handle(response.body().byteStream()) : null;
+        } catch (IOException e) {
+            LOG.info("Calling URL failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #get(InetSocketAddress, String, String, String)}.
+     *
+     * The future completes with null if the call failed or was unsuccessful.
+     */
+    public static CompletableFuture<String> getAsync(InetSocketAddress httpAddr, String username, String password, String path) {
+        final Request request = buildRequest(httpAddr, username, password, path);
+        LOG.info("Calling URL asynchronously: {}", request.url());
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final Call call = client.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LOG.info("Calling URL failed: {}", e.getMessage());
+                future.complete(null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    future.complete(r.isSuccessful() ? r.body().string() : null);
+                } catch (IOException e) {
+                    LOG.info("Calling URL failed: {}", e.getMessage());
+                    future.complete(null);
+                }
+            }
+        });
+        // Cancelling the future cancels the call
+        future.whenComplete((v, t) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    protected static Request buildRequest(InetSocketAddress httpAddr, String username, String password, String path) {
+        final Request.Builder builder = new Request.Builder();
+        if (username != null && password != null) {
+            builder.header("Authorization", Credentials.basic(username, password));
+        }
+        return builder.url(String.format("http://%s:%d%s", httpAddr.getHostString(), httpAddr.getPort(), path))
+            .build();
+    }
 }
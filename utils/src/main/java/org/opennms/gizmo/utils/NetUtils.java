@@ -18,7 +18,10 @@ package org.opennms.gizmo.utils;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Utilities for testing network connectivity.
@@ -50,6 +53,35 @@ public class NetUtils {
         }
     }
 
+    /**
+     * Completes once all of the given addresses accept TCP connections.
+     *
+     * The addresses are probed concurrently by a single, shared, non-blocking {@link TcpProber}.
+     * Cancelling the future, or completing it exceptionally, i.e. on timeout, stops all of the probes.
+     */
+    public static CompletableFuture<Void> whenTcpPortsOpen(InetSocketAddress... addrs) {
+        return whenTcpPortsOpen(Arrays.asList(addrs));
+    }
+
+    public static CompletableFuture<Void> whenTcpPortsOpen(Collection<InetSocketAddress> addrs) {
+        return whenTcpPortsOpen(SharedProber.INSTANCE, addrs);
+    }
+
+    /**
+     * Completes once all of the given addresses accept TCP connections, as probed by the given prober.
+     */
+    public static CompletableFuture<Void> whenTcpPortsOpen(TcpProber prober, Collection<InetSocketAddress> addrs) {
+        final Collection<CompletableFuture<InetSocketAddress>> probes = prober.probeAll(addrs).values();
+        final CompletableFuture<Void> future = CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0]));
+        // allOf() does not propagate cancellation to its components
+        future.whenComplete((r, t) -> {
+            if (t != null) {
+                probes.forEach(probe -> probe.cancel(false));
+            }
+        });
+        return future;
+    }
+
     public static Callable<Boolean> isTcpPortOpenCallable(final int port) {
         return isTcpPortOpenCallable(port, DEFAULT_CONNECT_TIMEOUT_MS);
     }
@@ -61,4 +93,8 @@ public class NetUtils {
             }
         };
     }
+
+    private static class SharedProber {
+        private static final TcpProber INSTANCE = new TcpProber();
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking TCP prober.
+ *
+ * Any number of endpoints are probed concurrently using a single {@link Selector}
+ * and a single thread. Each probe returns a future that completes on the first
+ * successful connect. Failed attempts are retried with an exponential backoff
+ * until the future is completed or cancelled.
+ */
+public class TcpProber implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(TcpProber.class);
+
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 50;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 1000;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 1000;
+
+    private static class Probe {
+        private final InetSocketAddress addr;
+        private final CompletableFuture<InetSocketAddress> future = new CompletableFuture<>();
+        private long backoffMs;
+        private long nextAttemptNanos;
+        private SocketChannel channel;
+        private long connectDeadlineNanos;
+
+        private Probe(InetSocketAddress addr, long initialBackoffMs) {
+            this.addr = addr;
+            this.backoffMs = initialBackoffMs;
+        }
+    }
+
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final long connectTimeoutMs;
+    private final Selector selector;
+    private final Queue<Probe> newProbes = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Probe> scheduledProbes = new PriorityQueue<>((a, b) -> Long.compare(a.nextAttemptNanos, b.nextAttemptNanos));
+    private final List<Probe> connectingProbes = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    public TcpProber() {
+        this(DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_MAX_BACKOFF_MS, DEFAULT_CONNECT_TIMEOUT_MS);
+    }
+
+    public TcpProber(long initialBackoffMs, long maxBackoffMs, long connectTimeoutMs) {
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open selector.", e);
+        }
+        final Thread thread = new Thread(this::run, "gizmo-tcp-prober");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Probes the given address until it accepts a connection.
+     *
+     * Cancelling the future stops the probe.
+     */
+    public CompletableFuture<InetSocketAddress> probe(InetSocketAddress addr) {
+        if (closed) {
+            throw new IllegalStateException("The prober is closed.");
+        }
+        final Probe probe = new Probe(addr, initialBackoffMs);
+        newProbes.add(probe);
+        selector.wakeup();
+        return probe.future;
+    }
+
+    /**
+     * Probes all of the given addresses at once.
+     *
+     * @return a future per address
+     */
+    public Map<InetSocketAddress, CompletableFuture<InetSocketAddress>> probeAll(Collection<InetSocketAddress> addrs) {
+        final Map<InetSocketAddress, CompletableFuture<InetSocketAddress>> futuresByAddr = new LinkedHashMap<>();
+        for (InetSocketAddress addr : addrs) {
+            futuresByAddr.put(addr, probe(addr));
+        }
+        return futuresByAddr;
+    }
+
+    private void run() {
+        try {
+            doRun();
+        } finally {
+            cancelAll();
+        }
+    }
+
+    private void doRun() {
+        while (!closed) {
+            try {
+                Probe probe;
+                while ((probe = newProbes.poll()) != null) {
+                    connect(probe);
+                }
+                startScheduledProbes();
+                expireConnectingProbes();
+
+                selector.select(getSelectTimeoutMs());
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    finishConnect((Probe)key.attachment());
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unexpected error while probing.", e);
+            }
+        }
+    }
+
+    private void connect(Probe probe) {
+        if (probe.future.isDone()) {
+            return;
+        }
+        try {
+            probe.channel = SocketChannel.open();
+            probe.channel.configureBlocking(false);
+            if (probe.channel.connect(probe.addr)) {
+                succeed(probe);
+            } else {
+                probe.connectDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connectTimeoutMs);
+                probe.channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                connectingProbes.add(probe);
+            }
+        } catch (IOException e) {
+            retry(probe);
+        }
+    }
+
+    private void finishConnect(Probe probe) {
+        connectingProbes.remove(probe);
+        try {
+            if (probe.channel.finishConnect()) {
+                succeed(probe);
+                return;
+            }
+        } catch (IOException e) {
+            LOG.trace("Connect to {} failed.", probe.addr, e);
+        }
+        retry(probe);
+    }
+
+    private void succeed(Probe probe) {
+        closeChannel(probe);
+        LOG.debug("{} is accepting connections.", probe.addr);
+        probe.future.complete(probe.addr);
+    }
+
+    private void retry(Probe probe) {
+        closeChannel(probe);
+        if (probe.future.isDone()) {
+            return;
+        }
+        probe.nextAttemptNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probe.backoffMs);
+        probe.backoffMs = Math.min(probe.backoffMs * 2, maxBackoffMs);
+        scheduledProbes.add(probe);
+    }
+
+    private void startScheduledProbes() {
+        final long now = System.nanoTime();
+        while (!scheduledProbes.isEmpty() && scheduledProbes.peek().nextAttemptNanos - now <= 0) {
+            connect(scheduledProbes.poll());
+        }
+    }
+
+    private void expireConnectingProbes() {
+        final long now = System.nanoTime();
+        for (Probe probe : new ArrayList<>(connectingProbes)) {
+            if (probe.future.isDone() || probe.connectDeadlineNanos - now <= 0) {
+                connectingProbes.remove(probe);
+                retry(probe);
+            }
+        }
+    }
+
+    private long getSelectTimeoutMs() {
+        long timeoutNanos = Long.MAX_VALUE;
+        final long now = System.nanoTime();
+        if (!scheduledProbes.isEmpty()) {
+            timeoutNanos = scheduledProbes.peek().nextAttemptNanos - now;
+        }
+        for (Probe probe : connectingProbes) {
+            timeoutNanos = Math.min(timeoutNanos, probe.connectDeadlineNanos - now);
+        }
+        if (timeoutNanos == Long.MAX_VALUE) {
+            // Nothing to do until a new probe is added
+            return 0;
+        }
+        // A timeout of 0 blocks indefinitely, so wait for at least 1ms
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+    }
+
+    private static void closeChannel(Probe probe) {
+        if (probe.channel != null) {
+            try {
+                probe.channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            probe.channel = null;
+        }
+    }
+
+    private void cancelAll() {
+        final List<Probe> probes = new ArrayList<>(connectingProbes);
+        probes.addAll(scheduledProbes);
+        probes.addAll(newProbes);
+        for (Probe probe : probes) {
+            closeChannel(probe);
+            probe.future.cancel(false);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close selector.", e);
+        }
+    }
+
+    /**
+     * Stops the prober, cancelling any outstanding probes.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.utils;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpProbeTest {
+
+    private HttpServer server;
+    private InetSocketAddress addr;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ok", exchange -> {
+            final byte[] body = "{\"name\":\"opennms\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.createContext("/unavailable", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        server.start();
+        addr = server.getAddress();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void canCheckStatus() {
+        assertTrue(HttpProbe.builder(addr, "/ok").build().check());
+        assertFalse(HttpProbe.builder(addr, "/unavailable").build().check());
+        assertTrue(HttpProbe.builder(addr, "/unavailable").expectStatus(503).build().check());
+        assertFalse(HttpProbe.builder(addr, "/missing").build().check());
+    }
+
+    @Test
+    public void canCheckHeaders() {
+        assertTrue(HttpProbe.builder(addr, "/ok")
+                .expectHeader("Content-Type", v -> v.startsWith("application/json"))
+                .build().check());
+        assertFalse(HttpProbe.builder(addr, "/ok")
+                .expectHeader("Content-Type", v -> v.startsWith("text/html"))
+                .build().check());
+        // Missing headers fail the probe, without calling the predicate
+        assertFalse(HttpProbe.builder(addr, "/ok")
+                .expectHeader("X-Missing", v -> v.isEmpty())
+                .build().check());
+    }
+
+    @Test
+    public void canCheckBody() {
+        assertTrue(HttpProbe.builder(addr, "/ok").expectBodyContaining("opennms").build().check());
+        assertFalse(HttpProbe.builder(addr, "/ok").expectBodyContaining("horizon").build().check());
+    }
+
+    @Test
+    public void canFindNeedleSpanningReads() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("lorem ipsum ");
+        }
+        sb.append("\"name\":\"opennms\"");
+
+        assertTrue(HttpProbe.contains(new ChunkedReader(sb.toString(), 3), "\"name\":\"opennms\""));
+        assertTrue(HttpProbe.contains(new ChunkedReader("opennms", 1), "opennms"));
+        assertFalse(HttpProbe.contains(new ChunkedReader(sb.toString(), 5), "horizon"));
+        assertFalse(HttpProbe.contains(new StringReader("open"), "opennms"));
+    }
+
+    /**
+     * Returns at most n characters per read.
+     */
+    private static class ChunkedReader extends Reader {
+        private final StringReader delegate;
+        private final int n;
+
+        private ChunkedReader(String s, int n) {
+            this.delegate = new StringReader(s);
+            this.n = n;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return delegate.read(cbuf, off, Math.min(len, n));
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
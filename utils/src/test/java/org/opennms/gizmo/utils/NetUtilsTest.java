@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class NetUtilsTest {
+
+    @Test(timeout = 10000)
+    public void canCancelProbesWhenCancelled() throws Exception {
+        try (RecordingProber prober = new RecordingProber()) {
+            final CompletableFuture<Void> future = NetUtils.whenTcpPortsOpen(prober, Arrays.asList(getUnusedAddress(), getUnusedAddress()));
+            assertEquals(2, prober.probes.size());
+            assertTrue(future.cancel(false));
+            prober.probes.forEach(probe -> assertTrue(probe.isCancelled()));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void canCancelProbesOnFailure() throws Exception {
+        try (RecordingProber prober = new RecordingProber()) {
+            final CompletableFuture<Void> future = NetUtils.whenTcpPortsOpen(prober, Arrays.asList(getUnusedAddress()));
+            future.completeExceptionally(new IllegalStateException("Timed out."));
+            prober.probes.forEach(probe -> assertTrue(probe.isCancelled()));
+        }
+    }
+
+    private static class RecordingProber extends TcpProber {
+        private final List<CompletableFuture<InetSocketAddress>> probes = new ArrayList<>();
+
+        @Override
+        public Map<InetSocketAddress, CompletableFuture<InetSocketAddress>> probeAll(Collection<InetSocketAddress> addrs) {
+            final Map<InetSocketAddress, CompletableFuture<InetSocketAddress>> futuresByAddr = super.probeAll(addrs);
+            probes.addAll(futuresByAddr.values());
+            return futuresByAddr;
+        }
+    }
+
+    private static InetSocketAddress getUnusedAddress() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+}
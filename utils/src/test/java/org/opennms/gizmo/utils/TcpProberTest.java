@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016, The OpenNMS Group
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opennms.gizmo.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TcpProberTest {
+
+    @Test(timeout = 10000)
+    public void canProbeManyEndpoints() throws Exception {
+        try (TcpProber prober = new TcpProber(10, 100, 1000);
+             ServerSocket open = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            final InetSocketAddress openAddr = new InetSocketAddress(InetAddress.getLoopbackAddress(), open.getLocalPort());
+            final InetSocketAddress closedAddr = getUnusedAddress();
+
+            final Map<InetSocketAddress, CompletableFuture<InetSocketAddress>> futures = prober.probeAll(Arrays.asList(openAddr, closedAddr));
+            assertEquals(openAddr, futures.get(openAddr).get(5, TimeUnit.SECONDS));
+            Thread.sleep(200);
+            assertFalse(futures.get(closedAddr).isDone());
+
+            // The probe should complete once something starts listening on the port
+            try (ServerSocket listening = new ServerSocket(closedAddr.getPort(), 50, closedAddr.getAddress())) {
+                assertEquals(listening.getLocalSocketAddress(), futures.get(closedAddr).get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void canCancelProbes() throws Exception {
+        final CompletableFuture<InetSocketAddress> future;
+        try (TcpProber prober = new TcpProber(10, 100, 1000)) {
+            future = prober.probe(getUnusedAddress());
+            assertTrue(future.cancel(false));
+        }
+        assertTrue(future.isCancelled());
+    }
+
+    private static InetSocketAddress getUnusedAddress() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+}